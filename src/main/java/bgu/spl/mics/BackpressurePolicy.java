@@ -0,0 +1,15 @@
+package bgu.spl.mics;
+
+/**
+ * What a bounded mailbox does when a message arrives while the mailbox already holds
+ * its configured capacity of messages of that type.
+ * <p>
+ * - BLOCK: the sender waits until the receiver takes a message of that type; if the sender is
+ *   interrupted meanwhile, the arriving message is discarded instead.
+ * - DROP_OLDEST: the oldest queued message of that type is discarded to make room.
+ * - DROP_NEWEST: the arriving message is discarded.
+ * - COALESCE: every queued message of that type is discarded and only the arriving one is kept.
+ */
+public enum BackpressurePolicy {
+    BLOCK, DROP_OLDEST, DROP_NEWEST, COALESCE
+}
@@ -0,0 +1,20 @@
+package bgu.spl.mics;
+
+/**
+ * Decides, at publish time, whether a subscriber wants a broadcast. Broadcasts it rejects are
+ * never queued for that subscriber, so it is not woken for them at all.
+ * <p>
+ * Filters run on the publisher's thread, once per subscriber per broadcast, so they should be
+ * cheap and must not block. They may only read state that is safe to read from another thread.
+ *
+ * @param <B> The broadcast type the filter applies to.
+ */
+@FunctionalInterface
+public interface BroadcastFilter<B extends Broadcast> {
+
+    /**
+     * @param broadcast The broadcast being published.
+     * @return true if the subscriber should receive {@code broadcast}.
+     */
+    boolean accepts(B broadcast);
+}
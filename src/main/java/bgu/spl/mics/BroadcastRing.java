@@ -0,0 +1,165 @@
+package bgu.spl.mics;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A shared fan-out channel for one {@link Broadcast} type.
+ * <p>
+ * Instead of copying every broadcast into each subscriber's mailbox, the broadcast is written
+ * once into a fixed-size ring and every subscribed {@link Mailbox} reads it through its own
+ * {@link Cursor}. Publishing is a single slot write followed by a wakeup of the subscribers
+ * that are parked waiting for messages. No entry is overwritten before every subscriber has
+ * read it: when the slowest subscriber is a full ring behind, the ring's
+ * {@link BackpressurePolicy} applies to the publisher. Under BLOCK it waits for a free slot;
+ * under DROP_NEWEST the broadcast is not published. The other policies would drop entries for
+ * some subscribers only, which a shared ring cannot do.
+ */
+final class BroadcastRing {
+
+    /**
+     * A subscriber's read position in the ring.
+     */
+    static final class Cursor {
+        private final BroadcastRing ring;
+        private final Mailbox owner;
+        private volatile long next;
+
+        private Cursor(BroadcastRing ring, Mailbox owner, long next) {
+            this.ring = ring;
+            this.owner = owner;
+            this.next = next;
+        }
+
+        /**
+         * @return true if there is a published entry this cursor has not read yet.
+         */
+        boolean available() {
+            return next < ring.published;
+        }
+
+        /**
+         * @return how many published entries this cursor has not read yet.
+         */
+        long backlog() {
+            return ring.published - next;
+        }
+
+        /**
+         * @return the publish time of the next unread entry; only valid if {@link #available()}.
+         */
+        long peekStamp() {
+            return ring.stamps[(int) (next & ring.mask)];
+        }
+
+        /**
+         * Reads the next entry and moves past it; only valid if {@link #available()}.
+         */
+        Broadcast advance() {
+            long position = next;
+            Broadcast b = ring.slots[(int) (position & ring.mask)];
+            next = position + 1;
+            return b;
+        }
+    }
+
+    private static final Cursor[] NO_CURSORS = new Cursor[0];
+
+    private final Broadcast[] slots;
+    private final long[] stamps;
+    private final int mask;
+    private final BackpressurePolicy whenFull;
+    private volatile long published;
+    private volatile Cursor[] cursors = NO_CURSORS;
+    // Guards changes to cursors; separate from the publish monitor so a publisher waiting for a
+    // slow subscriber never blocks that subscriber from leaving
+    private final Object membership = new Object();
+    private final Quiescence quiescence;
+
+    /**
+     * @param capacity   the number of slots, rounded up to a power of two.
+     * @param whenFull   what a publisher does when the ring is full: BLOCK or DROP_NEWEST.
+     * @param quiescence counts every published entry once per subscriber until read and handled.
+     */
+    BroadcastRing(int capacity, BackpressurePolicy whenFull, Quiescence quiescence) {
+        this.quiescence = quiescence;
+        if (capacity < 1)
+            throw new IllegalArgumentException("Ring capacity must be positive: " + capacity);
+        if (whenFull != BackpressurePolicy.BLOCK && whenFull != BackpressurePolicy.DROP_NEWEST)
+            throw new IllegalArgumentException("A ring can only BLOCK or DROP_NEWEST when full: " + whenFull);
+        this.whenFull = whenFull;
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        this.slots = new Broadcast[size];
+        this.stamps = new long[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Writes {@code b} into the next slot and wakes waiting subscribers. Concurrent publishers
+     * are serialized; with a single publisher (e.g. the TimeService) the monitor is uncontended.
+     * <p>
+     * @return false if the ring was full and its policy dropped {@code b}.
+     */
+    synchronized boolean publish(Broadcast b) {
+        long position = published;
+        while (position - slowest() >= slots.length) {
+            if (whenFull == BackpressurePolicy.DROP_NEWEST)
+                return false;
+            LockSupport.parkNanos(1_000L); // Wait for the slowest subscriber to free a slot
+        }
+        int slot = (int) (position & mask);
+        slots[slot] = b;
+        stamps[slot] = System.nanoTime();
+        Cursor[] readers;
+        synchronized (membership) { // Count exactly the subscribers that will read this entry
+            readers = cursors;
+            quiescence.added(readers.length);
+            published = position + 1;
+        }
+        for (Cursor cursor : readers)
+            cursor.owner.ringPublished();
+        return true;
+    }
+
+    /**
+     * Starts delivering entries published from now on to {@code mailbox}.
+     */
+    void subscribe(Mailbox mailbox) {
+        synchronized (membership) {
+            Cursor cursor = new Cursor(this, mailbox, published);
+            Cursor[] current = cursors;
+            Cursor[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = cursor;
+            cursors = updated;
+            mailbox.attach(cursor);
+        }
+    }
+
+    /**
+     * Stops delivering to {@code mailbox}; it no longer holds back the publisher.
+     */
+    void unsubscribe(Mailbox mailbox) {
+        synchronized (membership) {
+            Cursor[] current = cursors;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].owner == mailbox) {
+                    quiescence.removed((int) current[i].backlog()); // Entries it will never read
+                    Cursor[] updated = new Cursor[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    cursors = updated;
+                    return;
+                }
+            }
+        }
+    }
+
+    private long slowest() {
+        long min = published;
+        for (Cursor cursor : cursors)
+            min = Math.min(min, cursor.next);
+        return min;
+    }
+}
@@ -0,0 +1,103 @@
+package bgu.spl.mics;
+
+import java.util.Objects;
+
+/**
+ * Configures the {@link MessageBusImpl}: mailbox limits, broadcast rings, dispatch policies,
+ * service capacities and quiescence tracking. The bus keeps its public methods to messaging, so
+ * the runner applies the configuration file through this class, before the services start.
+ */
+public final class BusConfigurator {
+
+    private final MessageBusImpl bus;
+
+    private BusConfigurator(MessageBusImpl bus) {
+        this.bus = bus;
+    }
+
+    /**
+     * @param bus The message bus to configure.
+     * @return A configurator of {@code bus}.
+     */
+    public static BusConfigurator of(MessageBusImpl bus) {
+        return new BusConfigurator(Objects.requireNonNull(bus, "bus"));
+    }
+
+    /**
+     * Bounds the mailboxes of services named {@code serviceName} to {@code capacity} queued
+     * messages of type {@code type}. When full, {@code policy} decides what happens to the
+     * next message of that type. Applies to services registered after this call.
+     *
+     * @param serviceName The {@link MicroService#getName()} of the services to limit.
+     * @param type        The message type to limit.
+     * @param capacity    The maximal number of queued messages of {@code type}.
+     * @param policy      What to do with a message arriving at a full mailbox.
+     */
+    public void setMailboxLimit(String serviceName, Class<? extends Message> type, int capacity, BackpressurePolicy policy) {
+        bus.setMailboxLimit(serviceName, type, capacity, policy);
+    }
+
+    /**
+     * Delivers broadcasts of type {@code type} through a shared ring of {@code capacity} slots
+     * instead of copying them into every subscriber's mailbox. Subscribers read the ring with
+     * their own cursor, still in send order with the rest of their messages; a publisher waits
+     * when the slowest subscriber is {@code capacity} broadcasts behind. Mailbox limits do not
+     * apply to ring broadcasts. Must be called before any service subscribes to {@code type}.
+     * {@link ControlMessage} types cannot use a ring, since they must skip ahead of ring entries.
+     *
+     * @param type     The broadcast type to deliver through a ring.
+     * @param capacity The number of ring slots (rounded up to a power of two).
+     */
+    public void enableBroadcastRing(Class<? extends Broadcast> type, int capacity) {
+        bus.enableBroadcastRing(type, capacity, BackpressurePolicy.BLOCK);
+    }
+
+    /**
+     * Like {@link #enableBroadcastRing(Class, int)}, with what a publisher does when the slowest
+     * subscriber is {@code capacity} broadcasts behind: wait for it ({@link BackpressurePolicy#BLOCK}),
+     * or discard the broadcast ({@link BackpressurePolicy#DROP_NEWEST}, counted in
+     * {@link MessageBusImpl#getBackpressureCount}). A publisher running on a shared pool should
+     * not wait, since the subscribers it waits for may need its thread.
+     *
+     * @param type     The broadcast type to deliver through a ring.
+     * @param capacity The number of ring slots (rounded up to a power of two).
+     * @param whenFull BLOCK or DROP_NEWEST; the other policies would drop for some subscribers only.
+     */
+    public void enableBroadcastRing(Class<? extends Broadcast> type, int capacity, BackpressurePolicy whenFull) {
+        bus.enableBroadcastRing(type, capacity, whenFull);
+    }
+
+    /**
+     * Selects how events of type {@code type} are spread over their subscribers.
+     * The default is {@link DispatchPolicy#ROUND_ROBIN}.
+     *
+     * @param type   The event type.
+     * @param policy The dispatch policy to use from now on.
+     */
+    public void setDispatchPolicy(Class<? extends Event<?>> type, DispatchPolicy policy) {
+        bus.setDispatchPolicy(type, policy);
+    }
+
+    /**
+     * Declares the relative processing capacity of {@code m}, used by
+     * {@link DispatchPolicy#WEIGHTED} (a service with capacity 2 receives about twice as many
+     * events as one with capacity 1). Applies to subscriptions made after this call; the
+     * default capacity is 1.
+     *
+     * @param m        The micro-service.
+     * @param capacity Its relative capacity, at least 1.
+     */
+    public void setServiceCapacity(MicroService m, int capacity) {
+        bus.setServiceCapacity(m, capacity);
+    }
+
+    /**
+     * Starts counting the messages in flight (queued, or taken by a service and not handled
+     * yet) from zero, for {@link MessageBusImpl#whenQuiescent()}. Call while the bus is idle,
+     * before services start sending; counting costs a shared atomic update per message from
+     * then on.
+     */
+    public void enableQuiescenceTracking() {
+        bus.enableQuiescenceTracking();
+    }
+}
@@ -0,0 +1,163 @@
+package bgu.spl.mics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Instrumentation of the {@link MessageBusImpl}: per message type, how many messages were sent,
+ * how long they waited in mailboxes and how long their callbacks ran; per service, the deepest
+ * its mailbox ever got. Recording is lock-free and allocation-free once a type has been seen.
+ */
+public final class BusMetrics {
+
+    /**
+     * Count, mean, percentiles and maximum of a duration histogram, in microseconds.
+     */
+    public static final class Summary {
+        private final long count;
+        private final double mean;
+        private final double p50;
+        private final double p90;
+        private final double p99;
+        private final double max;
+
+        Summary(long count, double mean, double p50, double p90, double p99, double max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP90() {
+            return p90;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getMax() {
+            return max;
+        }
+    }
+
+    /**
+     * A point-in-time copy of all metrics, keyed by message type or service name. Serializes to
+     * JSON as is.
+     */
+    public static final class Snapshot {
+        private final Map<String, Long> sent = new TreeMap<>();
+        private final Map<String, Integer> queueHighWater = new TreeMap<>();
+        private final Map<String, Summary> queueWaitMicros = new TreeMap<>();
+        private final Map<String, Summary> handlingMicros = new TreeMap<>();
+
+        public Map<String, Long> getSent() {
+            return sent;
+        }
+
+        public Map<String, Integer> getQueueHighWater() {
+            return queueHighWater;
+        }
+
+        public Map<String, Summary> getQueueWaitMicros() {
+            return queueWaitMicros;
+        }
+
+        public Map<String, Summary> getHandlingMicros() {
+            return handlingMicros;
+        }
+    }
+
+    private static final class TypeMetrics {
+        private final LongAdder sent = new LongAdder();
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private final LatencyHistogram handling = new LatencyHistogram();
+    }
+
+    private final Map<Class<?>, TypeMetrics> types = new ConcurrentHashMap<>();
+    // Cached on the class itself, so the hot path skips hashing; registered in types for snapshots
+    private final ClassValue<TypeMetrics> byType = new ClassValue<TypeMetrics>() {
+        @Override
+        protected TypeMetrics computeValue(Class<?> type) {
+            return types.computeIfAbsent(type, k -> new TypeMetrics());
+        }
+    };
+    private final Map<String, Integer> retiredHighWater = new ConcurrentHashMap<>();
+
+    BusMetrics() {
+    }
+
+    void recordSend(Class<? extends Message> type) {
+        of(type).sent.increment();
+    }
+
+    void recordQueueWait(Class<? extends Message> type, long nanos) {
+        of(type).queueWait.record(nanos);
+    }
+
+    void recordHandling(Class<? extends Message> type, long nanos) {
+        of(type).handling.record(nanos);
+    }
+
+    /**
+     * Keeps the mailbox high-water mark of a service that unregistered. Services sharing a name
+     * are told apart by a " #n" suffix.
+     */
+    void retire(String serviceName, int highWater) {
+        String key = serviceName;
+        for (int n = 2; retiredHighWater.putIfAbsent(key, highWater) != null; n++)
+            key = serviceName + " #" + n;
+    }
+
+    /**
+     * @param live the mailboxes of the currently registered services.
+     */
+    Snapshot snapshot(Map<MicroService, Mailbox> live) {
+        Snapshot snapshot = new Snapshot();
+        types.forEach((type, metrics) -> {
+            String name = nameOf(type);
+            long sent = metrics.sent.sum();
+            if (sent > 0)
+                snapshot.sent.put(name, sent);
+            Summary queueWait = metrics.queueWait.summarize();
+            if (queueWait.count > 0)
+                snapshot.queueWaitMicros.put(name, queueWait);
+            Summary handling = metrics.handling.summarize();
+            if (handling.count > 0)
+                snapshot.handlingMicros.put(name, handling);
+        });
+        snapshot.queueHighWater.putAll(retiredHighWater);
+        live.forEach((service, mailbox) -> {
+            String key = service.getName();
+            for (int n = 2; snapshot.queueHighWater.containsKey(key); n++)
+                key = service.getName() + " #" + n;
+            snapshot.queueHighWater.put(key, mailbox.highWater());
+        });
+        return snapshot;
+    }
+
+    private TypeMetrics of(Class<? extends Message> type) {
+        return byType.get(type);
+    }
+
+    private static String nameOf(Class<?> type) {
+        String name = type.getSimpleName();
+        return name.isEmpty() ? type.getName() : name;
+    }
+}
@@ -0,0 +1,10 @@
+package bgu.spl.mics;
+
+/**
+ * A "Marker" interface extending {@link Message} for messages that change how a micro-service
+ * runs rather than feeding it data, such as a crash notification. Control messages skip ahead
+ * of the data messages waiting in a mailbox; among themselves they keep their send order.
+ */
+public interface ControlMessage extends Message {
+
+}
@@ -0,0 +1,17 @@
+package bgu.spl.mics;
+
+/**
+ * How the {@link MessageBusImpl} picks which subscriber of an event type receives the next event.
+ * <p>
+ * - ROUND_ROBIN: subscribers take turns, regardless of how busy they are.
+ * - LEAST_QUEUED: the subscriber with the fewest queued messages (ties rotate).
+ * - POWER_OF_TWO: the less loaded of two subscribers picked at random.
+ * - WEIGHTED: a random subscriber, with odds proportional to its declared capacity
+ *   (see {@link BusConfigurator#setServiceCapacity(MicroService, int)}).
+ * - CONSISTENT_HASH: the owner of the event's {@link KeyedEvent#getRoutingKey() key} on a
+ *   consistent-hash ring, so equal keys stick to one subscriber and only about 1/n of the keys
+ *   move when a subscriber joins or leaves. Unkeyed events fall back to ROUND_ROBIN.
+ */
+public enum DispatchPolicy {
+    ROUND_ROBIN, LEAST_QUEUED, POWER_OF_TWO, WEIGHTED, CONSISTENT_HASH
+}
@@ -4,8 +4,8 @@ package bgu.spl.mics;
  * A "Marker" interface extending {@link Message}. A micro-service that sends an
  * Event message expects to receive a result of type {@code <T>} when a
  * micro-service that received the request has completed handling it.
- * When sending an event, it will be received only by a single subscriber in a
- * Round-Robin fashion.
+ * When sending an event, it will be received only by a single subscriber, chosen
+ * by the {@link DispatchPolicy} of its type (Round-Robin by default).
  */
 public interface Event<T> extends Message {
 
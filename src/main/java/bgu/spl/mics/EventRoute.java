@@ -0,0 +1,264 @@
+package bgu.spl.mics;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dispatch state of a single event type: an immutable snapshot of its subscribers, the
+ * {@link DispatchPolicy} used to pick among them and a shared cursor. Senders only read the
+ * snapshot (and for some policies bump the cursor), so events of different types never contend
+ * and events of the same type share at most a single atomic counter. Subscription changes copy
+ * the snapshot under the route's own monitor.
+ * <p>
+ * Broadcast types keep their subscribers in a route as well, and {@link #broadcast(Broadcast)}
+ * delivers to each of them whose {@link BroadcastFilter} accepts; the policy is not used for them.
+ */
+final class EventRoute {
+
+    /**
+     * The subscribers at one point in time, with their mailboxes and running capacity totals.
+     */
+    private static final class Subscribers {
+        private final MicroService[] services;
+        private final Mailbox[] mailboxes;
+        private final int[] cumulativeCapacity;
+        private final BroadcastFilter<Broadcast>[] filters; // null where a subscriber takes everything
+        private final long[] seeds; // Where each subscriber's ring points go, fixed when it joined
+        private volatile HashRing ring; // Built on first keyed send; racing builders produce equal rings
+
+        private Subscribers(MicroService[] services, Mailbox[] mailboxes, int[] cumulativeCapacity,
+                            BroadcastFilter<Broadcast>[] filters, long[] seeds) {
+            this.services = services;
+            this.mailboxes = mailboxes;
+            this.cumulativeCapacity = cumulativeCapacity;
+            this.filters = filters;
+            this.seeds = seeds;
+        }
+    }
+
+    /**
+     * Consistent-hash ring over a subscriber snapshot: sorted points and the mailbox owning each.
+     * Every subscriber gets {@link #POINTS_PER_CAPACITY} points per unit of capacity, placed by
+     * its seed: its name and the order in which it joined the route. Services share names (every
+     * camera is "CameraService"), but no two subscribers share a seed, and a seed never changes
+     * while its subscriber stays, so a subscriber's points do not depend on who else is
+     * subscribed. Placement is reproducible when the services subscribe in the same order.
+     */
+    private static final class HashRing {
+        private static final int POINTS_PER_CAPACITY = 64;
+
+        private final int[] points;
+        private final Mailbox[] owners;
+
+        private HashRing(Subscribers s) {
+            int total = 0;
+            for (int i = 0; i < s.services.length; i++)
+                total += capacityAt(s, i) * POINTS_PER_CAPACITY;
+            long[] entries = new long[total]; // point in the high half, subscriber index in the low half
+            int next = 0;
+            for (int i = 0; i < s.services.length; i++) {
+                for (int v = 0; v < capacityAt(s, i) * POINTS_PER_CAPACITY; v++)
+                    entries[next++] = ((long) (int) mix(s.seeds[i] + v * 0x9e3779b97f4a7c15L) << 32) | i;
+            }
+            Arrays.sort(entries);
+            points = new int[total];
+            owners = new Mailbox[total];
+            for (int p = 0; p < total; p++) {
+                points[p] = (int) (entries[p] >> 32);
+                owners[p] = s.mailboxes[(int) entries[p]];
+            }
+        }
+
+        // The first point clockwise from the key's hash owns the key.
+        private Mailbox ownerOf(Object key) {
+            int hash = (int) mix(key.hashCode());
+            int index = Arrays.binarySearch(points, hash);
+            if (index < 0)
+                index = -index - 1;
+            return owners[index == points.length ? 0 : index];
+        }
+
+        // Murmur3 64-bit finalizer.
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+
+    private static final Subscribers EMPTY = new Subscribers(new MicroService[0], new Mailbox[0], new int[0],
+            newFilters(0), new long[0]);
+
+    private volatile Subscribers subscribers = EMPTY;
+    private volatile DispatchPolicy policy = DispatchPolicy.ROUND_ROBIN;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private int joined; // Subscribers ever added, guarded by the route's monitor
+
+    void setPolicy(DispatchPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Adds {@code m}, whose messages go to {@code mailbox}, with the given capacity weight.
+     */
+    void add(MicroService m, Mailbox mailbox, int capacity) {
+        add(m, mailbox, capacity, null);
+    }
+
+    /**
+     * Adds {@code m} like {@link #add(MicroService, Mailbox, int)}, with a filter that decides
+     * which broadcasts it receives (null for all of them).
+     */
+    @SuppressWarnings("unchecked")
+    synchronized void add(MicroService m, Mailbox mailbox, int capacity, BroadcastFilter<?> filter) {
+        Subscribers current = subscribers;
+        int n = current.services.length;
+        MicroService[] services = Arrays.copyOf(current.services, n + 1);
+        Mailbox[] mailboxes = Arrays.copyOf(current.mailboxes, n + 1);
+        int[] cumulative = Arrays.copyOf(current.cumulativeCapacity, n + 1);
+        BroadcastFilter<Broadcast>[] filters = Arrays.copyOf(current.filters, n + 1);
+        long[] seeds = Arrays.copyOf(current.seeds, n + 1);
+        services[n] = m;
+        mailboxes[n] = mailbox;
+        cumulative[n] = (n == 0 ? 0 : cumulative[n - 1]) + capacity;
+        filters[n] = (BroadcastFilter<Broadcast>) filter; // Only ever applied to broadcasts of the route's type
+        seeds[n] = HashRing.mix((long) m.getName().hashCode() << 32 | (joined++ & 0xffffffffL));
+        subscribers = new Subscribers(services, mailboxes, cumulative, filters, seeds);
+    }
+
+    synchronized void remove(MicroService m) {
+        Subscribers current = subscribers;
+        int index = indexOf(current, m);
+        if (index < 0)
+            return;
+        int n = current.services.length - 1;
+        MicroService[] services = new MicroService[n];
+        Mailbox[] mailboxes = new Mailbox[n];
+        int[] cumulative = new int[n];
+        BroadcastFilter<Broadcast>[] filters = newFilters(n);
+        long[] seeds = new long[n];
+        for (int from = 0, to = 0; from <= n; from++) {
+            if (from == index)
+                continue;
+            int capacity = capacityAt(current, from);
+            services[to] = current.services[from];
+            mailboxes[to] = current.mailboxes[from];
+            filters[to] = current.filters[from];
+            seeds[to] = current.seeds[from];
+            cumulative[to] = (to == 0 ? 0 : cumulative[to - 1]) + capacity;
+            to++;
+        }
+        subscribers = new Subscribers(services, mailboxes, cumulative, filters, seeds);
+    }
+
+    // Java has no generic array creation; the array only ever holds filters of the route's broadcast type.
+    @SuppressWarnings("unchecked")
+    private static BroadcastFilter<Broadcast>[] newFilters(int n) {
+        return (BroadcastFilter<Broadcast>[]) new BroadcastFilter<?>[n];
+    }
+
+    /**
+     * Offers {@code b} to every current subscriber whose filter accepts it. Subscribers it
+     * rejects are skipped without touching their mailbox. An indexed loop over the snapshot, so
+     * a broadcast per tick allocates no iterator.
+     */
+    void broadcast(Broadcast b) {
+        Subscribers s = subscribers;
+        for (int i = 0; i < s.mailboxes.length; i++) {
+            BroadcastFilter<Broadcast> filter = s.filters[i];
+            if (filter == null || filter.accepts(b))
+                s.mailboxes[i].offer(b); // Subject to its backpressure policy; refused once the owner unregistered
+        }
+    }
+
+    /**
+     * Picks the mailbox that should receive {@code e} according to the route's policy.
+     * <p>
+     * @return the chosen subscriber's mailbox, or null if there are no subscribers.
+     */
+    Mailbox select(Event<?> e) {
+        Subscribers s = subscribers;
+        int n = s.mailboxes.length;
+        if (n == 0)
+            return null;
+        if (n == 1)
+            return s.mailboxes[0];
+        switch (policy) {
+            case LEAST_QUEUED:
+                return leastQueued(s);
+            case POWER_OF_TWO:
+                return powerOfTwo(s);
+            case WEIGHTED:
+                return weighted(s);
+            case CONSISTENT_HASH:
+                Object key = e instanceof KeyedEvent ? ((KeyedEvent<?>) e).getRoutingKey() : null;
+                return key != null ? ringOf(s).ownerOf(key) : roundRobin(s); // Unkeyed events go round-robin
+            default:
+                return roundRobin(s);
+        }
+    }
+
+    private Mailbox roundRobin(Subscribers s) {
+        return s.mailboxes[Math.floorMod(cursor.getAndIncrement(), s.mailboxes.length)];
+    }
+
+    private Mailbox leastQueued(Subscribers s) {
+        int n = s.mailboxes.length;
+        int start = Math.floorMod(cursor.getAndIncrement(), n); // Rotate the starting point to spread ties
+        Mailbox best = s.mailboxes[start];
+        int bestDepth = best.size();
+        for (int i = 1; i < n && bestDepth > 0; i++) {
+            Mailbox candidate = s.mailboxes[(start + i) % n];
+            int depth = candidate.size();
+            if (depth < bestDepth) {
+                best = candidate;
+                bestDepth = depth;
+            }
+        }
+        return best;
+    }
+
+    private static Mailbox powerOfTwo(Subscribers s) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int n = s.mailboxes.length;
+        int first = random.nextInt(n);
+        int second = random.nextInt(n - 1);
+        if (second >= first)
+            second++;
+        Mailbox a = s.mailboxes[first];
+        Mailbox b = s.mailboxes[second];
+        return a.size() <= b.size() ? a : b;
+    }
+
+    private static Mailbox weighted(Subscribers s) {
+        int[] cumulative = s.cumulativeCapacity;
+        int ticket = ThreadLocalRandom.current().nextInt(cumulative[cumulative.length - 1]);
+        int index = Arrays.binarySearch(cumulative, ticket + 1);
+        if (index < 0)
+            index = -index - 1; // First subscriber whose running total exceeds the ticket
+        return s.mailboxes[index];
+    }
+
+    private static HashRing ringOf(Subscribers s) {
+        HashRing ring = s.ring;
+        if (ring == null)
+            s.ring = ring = new HashRing(s);
+        return ring;
+    }
+
+    private static int capacityAt(Subscribers s, int index) {
+        return s.cumulativeCapacity[index] - (index == 0 ? 0 : s.cumulativeCapacity[index - 1]);
+    }
+
+    private static int indexOf(Subscribers s, MicroService m) {
+        for (int i = 0; i < s.services.length; i++) {
+            if (s.services[i] == m)
+                return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,14 @@
+package bgu.spl.mics;
+
+/**
+ * How a {@link ServiceExecutor} runs micro-services.
+ * <p>
+ * - THREADS: one platform thread per service, blocked in its mailbox between messages.
+ * - POOLED: services are actors multiplexed onto a small fixed pool of threads; each service
+ *   still handles its messages one at a time and in order.
+ * - VIRTUAL: one virtual thread per service, where the JDK provides them (Java 21+);
+ *   otherwise the same as THREADS.
+ */
+public enum ExecutionMode {
+    THREADS, POOLED, VIRTUAL
+}
@@ -1,5 +1,7 @@
 package bgu.spl.mics;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * A Future object represents a promised result - an object that will
@@ -10,16 +12,44 @@ import java.util.concurrent.TimeUnit;
  * No public constructor is allowed except for the empty constructor.
  */
 public class Future<T> {
-	private T result; // Holds the result when resolved
-	private boolean isResolved; // Tracks if the result is resolved
-	private final Object lock = new Object();
+	/**
+	 * A parked thread or a completion callback waiting for the result. Waiters form a
+	 * stack that is replaced by the {@link Outcome} when the future is resolved. A thread
+	 * that stops waiting before then clears its node and unlinks it (see {@link #removeWaiter}).
+	 */
+	private static final class Waiter {
+		private volatile Thread thread;
+		private final Callback<Object> callback;
+		private volatile Waiter next;
+
+		private Waiter(Thread thread, Callback<Object> callback, Waiter next) {
+			this.thread = thread;
+			this.callback = callback;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * The resolved result (which may be null).
+	 */
+	private static final class Outcome {
+		private final Object value;
+
+		private Outcome(Object value) {
+			this.value = value;
+		}
+	}
+
+	private static final Waiter NO_WAITERS = new Waiter(null, null, null);
+
+	// Either the top of the waiter stack (unresolved) or the Outcome (resolved)
+	private final AtomicReference<Object> state;
 	/**
 	 * This should be the the only public constructor in this class.
 	 */
 
 	public Future() {
-		this.result = null;
-		this.isResolved = false;
+		this.state = new AtomicReference<>(NO_WAITERS);
 	}
 
 	/**
@@ -30,35 +60,45 @@ public class Future<T> {
 	 * @return return the result of type T if it is available, if not wait until it is available.
 	 */
 	public T get() {
-		while (!isResolved) {
-			synchronized (lock) {
-				try {
-					wait(); // Wait until the result is resolved
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt(); // Restore interrupted status
-				}
+		boolean interrupted = false;
+		boolean enqueued = false;
+		Object current;
+		while (!((current = state.get()) instanceof Outcome)) {
+			if (!enqueued) {
+				enqueued = state.compareAndSet(current, new Waiter(Thread.currentThread(), null, (Waiter) current));
+				continue; // Re-check the state before parking
 			}
+			LockSupport.park(this);
+			if (Thread.interrupted())
+				interrupted = true; // Keep waiting, restore the status once resolved
 		}
-		return result;
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		return resultOf(current);
 	}
 
 	/**
 	 * Resolves the result of this Future object.
+	 * Completion callbacks registered with {@link #onComplete(Callback)} run on the calling
+	 * thread, in registration order, once every waiting thread has been woken. A callback that
+	 * throws does not keep the later ones from running; the first exception is rethrown after
+	 * all of them have run. Only the first call has an effect.
 	 */
 	public void resolve(T result) {
-		if (!isResolved) {
-			this.result = result;
-			this.isResolved = true;
-			synchronized (lock) {
-				notifyAll(); // Notify all threads waiting for the result
-			}
-		}
+		Outcome outcome = new Outcome(result);
+		Object current;
+		do {
+			current = state.get();
+			if (current instanceof Outcome)
+				return; // Already resolved
+		} while (!state.compareAndSet(current, outcome));
+		release((Waiter) current, result);
 	}
 	/**
 	 * @return true if this object has been resolved, false otherwise
 	 */
-	public synchronized boolean isDone() {
-		return isResolved;
+	public boolean isDone() {
+		return state.get() instanceof Outcome;
 	}
 
 	/**
@@ -73,15 +113,108 @@ public class Future<T> {
 	 *         elapsed, return null.
 	 */
 	public T get(long timeout, TimeUnit unit) {
-		while (!isResolved) {
-			synchronized (lock) {
-				try {
-					wait(unit.toMillis(timeout));
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt(); // Restore interrupted status
-				}
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		Waiter node = null;
+		boolean enqueued = false;
+		Object current;
+		while (!((current = state.get()) instanceof Outcome)) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				if (enqueued)
+					removeWaiter(node);
+				return null;
+			}
+			if (!enqueued) {
+				if (node == null)
+					node = new Waiter(Thread.currentThread(), null, (Waiter) current);
+				else
+					node.next = (Waiter) current;
+				enqueued = state.compareAndSet(current, node);
+				continue; // Re-check the state before parking
+			}
+			LockSupport.parkNanos(this, remaining);
+			if (Thread.interrupted()) {
+				Thread.currentThread().interrupt(); // Restore interrupted status and give up waiting
+				removeWaiter(node);
+				return isDone() ? resultOf(state.get()) : null;
+			}
+		}
+		return resultOf(current);
+	}
+
+	/**
+	 * Registers {@code callback} to be called with the result once this future is resolved.
+	 * The callback runs on the resolving thread, or immediately on the calling thread if the
+	 * future is already resolved. It must not block.
+	 * <p>
+	 * @param callback The continuation to run with the result.
+	 */
+	@SuppressWarnings("unchecked")
+	public void onComplete(Callback<T> callback) {
+		Callback<Object> untyped = (Callback<Object>) callback;
+		Object current;
+		while (!((current = state.get()) instanceof Outcome)) {
+			if (state.compareAndSet(current, new Waiter(null, untyped, (Waiter) current)))
+				return;
+		}
+		callback.call(resultOf(current));
+	}
+
+	@SuppressWarnings("unchecked")
+	private T resultOf(Object outcome) {
+		return (T) ((Outcome) outcome).value;
+	}
+
+	// Wakes every parked thread, then runs the callbacks, oldest registration first.
+	private void release(Waiter top, T result) {
+		Waiter callbacks = null;
+		for (Waiter w = top; w != NO_WAITERS; w = w.next) {
+			Thread thread = w.thread;
+			if (thread != null)
+				LockSupport.unpark(thread);
+			else if (w.callback != null)
+				callbacks = new Waiter(null, w.callback, callbacks);
+		}
+		RuntimeException failure = null;
+		for (Waiter w = callbacks; w != null; w = w.next) {
+			try {
+				w.callback.call(result);
+			} catch (RuntimeException e) {
+				if (failure == null)
+					failure = e;
+				else
+					failure.addSuppressed(e);
+			}
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * Clears {@code node}, whose thread stopped waiting, and unlinks every cleared node from
+	 * the stack, so threads that time out or are interrupted do not pile up on it. A node
+	 * unlinked by a racing removal may be reached again, so the walk restarts when it loses one.
+	 */
+	private void removeWaiter(Waiter node) {
+		node.thread = null;
+		retry:
+		for (;;) {
+			Object current = state.get();
+			if (current instanceof Outcome)
+				return; // The stack is gone already
+			Waiter pred = null;
+			for (Waiter q = (Waiter) current, s; q != NO_WAITERS; q = s) {
+				s = q.next;
+				if (q.thread != null || q.callback != null)
+					pred = q;
+				else if (pred != null) {
+					pred.next = s;
+					if (pred.thread == null && pred.callback == null)
+						continue retry; // pred was removed meanwhile
+				} else if (!state.compareAndSet(q, s))
+					continue retry;
 			}
+			return;
 		}
-		return isResolved ? result : null;
 	}
 }
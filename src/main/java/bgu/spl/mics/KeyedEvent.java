@@ -0,0 +1,14 @@
+package bgu.spl.mics;
+
+/**
+ * An {@link Event} that carries a routing key. When its type is dispatched with
+ * {@link DispatchPolicy#CONSISTENT_HASH}, all events with equal keys reach the same subscriber
+ * for as long as the set of subscribers does not change.
+ */
+public interface KeyedEvent<T> extends Event<T> {
+
+    /**
+     * @return the key this event is routed by, or null to route it like an unkeyed event.
+     */
+    Object getRoutingKey();
+}
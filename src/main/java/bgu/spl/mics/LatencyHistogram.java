@@ -0,0 +1,78 @@
+package bgu.spl.mics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations in nanoseconds. Buckets are logarithmic with four
+ * sub-buckets per power of two, so reported percentiles are within 25% of the true value;
+ * recording is a handful of atomic increments and never allocates.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = SUB_BUCKETS * 62; // Enough for any positive long
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        counts.incrementAndGet(indexOf(nanos));
+        sum.add(nanos);
+        long current;
+        while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+            // Lost a race with another larger value; re-check
+        }
+    }
+
+    /**
+     * @return count, mean, percentiles and maximum in microseconds. Percentiles are the upper
+     *         bound of the bucket they fall in, capped at the maximum.
+     */
+    BusMetrics.Summary summarize() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            count += counts.get(i);
+        if (count == 0)
+            return new BusMetrics.Summary(0, 0, 0, 0, 0, 0);
+        long maxNanos = max.get();
+        return new BusMetrics.Summary(count, micros(sum.sum() / (double) count),
+                micros(percentile(count, 0.50, maxNanos)), micros(percentile(count, 0.90, maxNanos)),
+                micros(percentile(count, 0.99, maxNanos)), micros(maxNanos));
+    }
+
+    private long percentile(long count, double p, long maxNanos) {
+        long rank = (long) Math.ceil(p * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(upperBound(i), maxNanos);
+        }
+        return maxNanos;
+    }
+
+    // Values below 4 get exact buckets; [2^e, 2^(e+1)) is split into four equal sub-buckets.
+    private static int indexOf(long nanos) {
+        if (nanos < SUB_BUCKETS)
+            return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS * (exponent - 1) + sub;
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int exponent = index / SUB_BUCKETS + 1;
+        long width = 1L << (exponent - 2);
+        return (SUB_BUCKETS + index % SUB_BUCKETS) * width + width - 1;
+    }
+
+    private static double micros(double nanos) {
+        return Math.round(nanos / 10.0) / 100.0; // Two decimals
+    }
+}
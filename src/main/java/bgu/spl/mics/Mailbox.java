@@ -0,0 +1,447 @@
+package bgu.spl.mics;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * The message queue of a single registered {@link MicroService}.
+ * <p>
+ * Unbounded by default. Message types may be given a capacity and a {@link BackpressurePolicy};
+ * once the mailbox holds that many messages of the type, the policy decides what happens to the
+ * next one. Messages discarded by a policy are handed to the {@code onDiscard} callback so the
+ * bus can release whatever it keeps for them (e.g. the {@link Future} of a dropped event).
+ * <p>
+ * Besides its own queue, a mailbox may read broadcasts from shared {@link BroadcastRing}s. Every
+ * queued message and ring entry carries the time it was sent, and reads always return the oldest
+ * one, so both sources are consumed in send order. The same stamps feed the queue-wait
+ * histograms of {@link BusMetrics}.
+ * <p>
+ * {@link ControlMessage}s are kept in a separate lane that is always read first, so they skip
+ * ahead of any data waiting in the mailbox. Each lane is FIFO.
+ * <p>
+ * The mailbox is guarded by its own monitor rather than a {@code ReentrantLock}: waiting on a
+ * {@code Condition} allocates a queue node per wait, which the owner would pay on every tick.
+ * Senders only notify when the owner or a blocked sender is actually waiting.
+ */
+final class Mailbox {
+
+    /**
+     * Capacity and policy for one message type.
+     */
+    static final class Limit {
+        private final int capacity;
+        private final BackpressurePolicy policy;
+
+        Limit(int capacity, BackpressurePolicy policy) {
+            if (capacity < 1)
+                throw new IllegalArgumentException("Mailbox capacity must be positive: " + capacity);
+            this.capacity = capacity;
+            this.policy = policy;
+        }
+    }
+
+    /**
+     * Circular queue of messages and their send times; capacity is always a power of two.
+     * Guarded by the mailbox lock.
+     */
+    private static final class Lane {
+        private Message[] items = new Message[16];
+        private long[] stamps = new long[16];
+        private int head;
+        private volatile int count; // Read without the lock by hasControl()
+
+        private void push(Message m, long stamp) {
+            if (count == items.length)
+                grow();
+            int tail = (head + count) & (items.length - 1);
+            items[tail] = m;
+            stamps[tail] = stamp;
+            count++;
+        }
+
+        private long headStamp() {
+            return count > 0 ? stamps[head] : Long.MAX_VALUE;
+        }
+
+        private Message pollHead() {
+            Message m = items[head];
+            items[head] = null;
+            head = (head + 1) & (items.length - 1);
+            count--;
+            return m;
+        }
+
+        private void clear() {
+            Arrays.fill(items, null);
+            head = 0;
+            count = 0;
+        }
+
+        private void grow() {
+            Message[] grownItems = new Message[items.length << 1];
+            long[] grownStamps = new long[stamps.length << 1];
+            for (int i = 0; i < count; i++) {
+                int from = (head + i) & (items.length - 1);
+                grownItems[i] = items[from];
+                grownStamps[i] = stamps[from];
+            }
+            items = grownItems;
+            stamps = grownStamps;
+            head = 0;
+        }
+
+        // Removes up to max messages of the given type, oldest first, into removed.
+        private void removeQueued(Class<? extends Message> type, int max, List<Message> removed) {
+            int mask = items.length - 1;
+            int kept = 0;
+            int taken = 0;
+            for (int i = 0; i < count; i++) {
+                int from = (head + i) & mask;
+                Message m = items[from];
+                if (m.getClass() == type && taken < max) {
+                    removed.add(m);
+                    taken++;
+                    continue;
+                }
+                int to = (head + kept) & mask;
+                items[to] = m;
+                stamps[to] = stamps[from];
+                kept++;
+            }
+            for (int i = kept; i < count; i++)
+                items[(head + i) & mask] = null;
+            count = kept;
+        }
+    }
+
+    private static final BroadcastRing.Cursor[] NO_CURSORS = new BroadcastRing.Cursor[0];
+
+    private final Lane control = new Lane();
+    private final Lane data = new Lane();
+    private volatile int count; // Messages in both lanes; written under the lock, read without it by dispatch policies
+    private final Map<Class<? extends Message>, Limit> limits;
+    private final Map<Class<? extends Message>, int[]> queuedPerType;
+    private final AtomicLongArray policyCounters;
+    private final BusMetrics metrics;
+    private final Quiescence quiescence;
+    private final Consumer<Message> onDiscard;
+    private volatile BroadcastRing.Cursor[] cursors = NO_CURSORS;
+    private volatile boolean waiting; // The owner is waiting for a message
+    private int blockedSenders; // Senders waiting for room under BLOCK
+    private volatile Runnable listener;
+    private volatile int highWater; // Written under the lock
+    private final Set<Event<?>> pendingEvents = ConcurrentHashMap.newKeySet();
+    private boolean closed;
+
+    /**
+     * @param limits         per-type capacities; types missing from the map are unbounded.
+     * @param policyCounters shared counters indexed by {@link BackpressurePolicy#ordinal()}.
+     * @param metrics        where queue-wait times are recorded.
+     * @param quiescence     counts the messages queued here until they are handled or discarded.
+     * @param onDiscard      called (outside the mailbox lock) with every message a policy discards.
+     */
+    Mailbox(Map<Class<? extends Message>, Limit> limits, AtomicLongArray policyCounters, BusMetrics metrics,
+            Quiescence quiescence, Consumer<Message> onDiscard) {
+        this.limits = limits;
+        this.queuedPerType = new HashMap<>();
+        this.policyCounters = policyCounters;
+        this.metrics = metrics;
+        this.quiescence = quiescence;
+        this.onDiscard = onDiscard;
+        for (Class<? extends Message> type : limits.keySet())
+            queuedPerType.put(type, new int[1]);
+    }
+
+    /**
+     * Adds {@code m} to the mailbox, applying the backpressure policy of its type if the
+     * type is at capacity. May block when the policy is {@link BackpressurePolicy#BLOCK}; a
+     * sender interrupted while blocked gives up, keeping its interrupted status, and {@code m}
+     * is dropped and counted as {@link BackpressurePolicy#DROP_NEWEST} would drop it.
+     * <p>
+     * @return true if {@code m} was queued, false if it was dropped or the mailbox is closed.
+     */
+    boolean offer(Message m) {
+        Limit limit = limits.get(m.getClass());
+        List<Message> discarded = null;
+        boolean queued = false;
+        synchronized (this) {
+            if (limit != null) {
+                int[] queuedOfType = queuedPerType.get(m.getClass());
+                if (queuedOfType[0] >= limit.capacity && !closed) {
+                    policyCounters.incrementAndGet(limit.policy.ordinal());
+                    switch (limit.policy) {
+                        case BLOCK:
+                            blockedSenders++;
+                            try {
+                                while (queuedOfType[0] >= limit.capacity && !closed)
+                                    wait();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt(); // Restore the status and drop m
+                                policyCounters.incrementAndGet(BackpressurePolicy.DROP_NEWEST.ordinal());
+                                return false;
+                            } finally {
+                                blockedSenders--;
+                            }
+                            break;
+                        case DROP_NEWEST:
+                            return false;
+                        case DROP_OLDEST:
+                            discarded = removeQueued(m.getClass(), 1);
+                            break;
+                        case COALESCE:
+                            discarded = removeQueued(m.getClass(), Integer.MAX_VALUE);
+                            break;
+                    }
+                }
+                if (!closed)
+                    queuedOfType[0]++;
+            }
+            if (!closed) {
+                push(m, System.nanoTime());
+                queued = true;
+                if (waiting)
+                    notifyAll();
+            }
+        }
+        if (discarded != null) {
+            quiescence.removed(discarded.size());
+            discarded.forEach(onDiscard);
+        }
+        Runnable l = listener;
+        if (queued && l != null)
+            l.run();
+        return queued;
+    }
+
+    /**
+     * Takes the next message, waiting until one is available.
+     */
+    synchronized Message take() throws InterruptedException {
+        return awaitNext();
+    }
+
+    /**
+     * Moves up to {@code max} queued messages into {@code into}, oldest first, waiting until
+     * at least one is available.
+     * <p>
+     * @return the number of messages moved.
+     */
+    synchronized int drainTo(Collection<? super Message> into, int max) throws InterruptedException {
+        into.add(awaitNext());
+        int moved = 1;
+        long now = System.nanoTime(); // One clock read for the rest of the batch
+        Message m;
+        while (moved < max && (m = poll(now)) != null) {
+            into.add(m);
+            moved++;
+        }
+        return moved;
+    }
+
+    /**
+     * Moves up to {@code max} available messages into {@code into}, oldest first, without waiting.
+     * <p>
+     * @return the number of messages moved, possibly zero.
+     */
+    synchronized int pollTo(Collection<? super Message> into, int max) {
+        int moved = 0;
+        long now = System.nanoTime();
+        Message m;
+        while (moved < max && (m = poll(now)) != null) {
+            into.add(m);
+            moved++;
+        }
+        return moved;
+    }
+
+    /**
+     * Sets a callback run (on the sender's thread, outside the lock) after each message or ring
+     * entry becomes available. Used to schedule the owner instead of parking it in {@link #take()}.
+     */
+    void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Reports that {@code messages} taken from this mailbox have been handled, or dropped by
+     * the owner, and are no longer in flight.
+     */
+    void finished(int messages) {
+        quiescence.removed(messages);
+    }
+
+    /**
+     * @return true if a {@link ControlMessage} is waiting. Does not lock.
+     */
+    boolean hasControl() {
+        return control.count > 0;
+    }
+
+    /**
+     * Takes the oldest waiting {@link ControlMessage} without waiting.
+     * <p>
+     * @return the message, or null if there is none.
+     */
+    synchronized Message pollControl() {
+        if (control.count == 0)
+            return null;
+        long stamp = control.headStamp();
+        return dequeued(control.pollHead(), System.nanoTime() - stamp);
+    }
+
+    /**
+     * @return the number of messages waiting to be taken, including unread ring entries.
+     *         Read without locking, so it may be slightly stale.
+     */
+    int size() {
+        long backlog = count;
+        for (BroadcastRing.Cursor cursor : cursors)
+            backlog += cursor.backlog();
+        return (int) Math.min(Integer.MAX_VALUE, backlog);
+    }
+
+    /**
+     * Records that {@code e} was dispatched to this mailbox and its future is not resolved yet.
+     */
+    void addPending(Event<?> e) {
+        pendingEvents.add(e);
+    }
+
+    void removePending(Event<?> e) {
+        pendingEvents.remove(e);
+    }
+
+    /**
+     * @return the events dispatched here whose futures are still unresolved; a live view.
+     */
+    Set<Event<?>> pendingEvents() {
+        return pendingEvents;
+    }
+
+    /**
+     * @return the largest number of messages this mailbox's own queue has held at once.
+     */
+    int highWater() {
+        return highWater;
+    }
+
+    /**
+     * Starts reading broadcasts through {@code cursor}.
+     */
+    synchronized void attach(BroadcastRing.Cursor cursor) {
+        BroadcastRing.Cursor[] current = cursors;
+        BroadcastRing.Cursor[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = cursor;
+        cursors = updated;
+    }
+
+    /**
+     * Called by a {@link BroadcastRing} after publishing; wakes the owner only if it is parked.
+     */
+    void ringPublished() {
+        Runnable l = listener;
+        if (l != null)
+            l.run();
+        if (waiting) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Discards all queued messages and refuses new ones. Senders blocked on a full
+     * type are released.
+     */
+    void close() {
+        int cleared;
+        synchronized (this) {
+            closed = true;
+            listener = null;
+            cleared = control.count + data.count;
+            control.clear();
+            data.clear();
+            count = 0;
+            cursors = NO_CURSORS;
+            for (int[] queuedOfType : queuedPerType.values())
+                queuedOfType[0] = 0;
+            notifyAll();
+        }
+        quiescence.removed(cleared);
+    }
+
+    // Caller holds the lock.
+    private Message awaitNext() throws InterruptedException {
+        Message m;
+        while ((m = poll(System.nanoTime())) == null) {
+            // Publish the intent to park before re-checking, so a ring publisher either sees it or we see its entry
+            waiting = true;
+            try {
+                if ((m = poll(System.nanoTime())) != null)
+                    return m;
+                wait();
+            } finally {
+                waiting = false;
+            }
+        }
+        return m;
+    }
+
+    // Removes and returns the oldest available message, or null, recording its wait until now.
+    // Caller holds the lock.
+    private Message poll(long now) {
+        if (control.count > 0) {
+            long stamp = control.headStamp();
+            return dequeued(control.pollHead(), now - stamp);
+        }
+        BroadcastRing.Cursor oldest = null;
+        long oldestStamp = data.headStamp();
+        for (BroadcastRing.Cursor cursor : cursors) {
+            if (cursor.available() && cursor.peekStamp() < oldestStamp) {
+                oldest = cursor;
+                oldestStamp = cursor.peekStamp();
+            }
+        }
+        if (oldest != null) {
+            Message m = oldest.advance();
+            metrics.recordQueueWait(m.getClass(), now - oldestStamp);
+            return m;
+        }
+        if (data.count == 0)
+            return null;
+        return dequeued(data.pollHead(), now - oldestStamp);
+    }
+
+    // Bookkeeping for a message just taken off a lane. Caller holds the lock.
+    private Message dequeued(Message m, long waitNanos) {
+        metrics.recordQueueWait(m.getClass(), waitNanos);
+        count--;
+        int[] queuedOfType = queuedPerType.get(m.getClass());
+        if (queuedOfType != null) {
+            queuedOfType[0]--;
+            if (blockedSenders > 0)
+                notifyAll();
+        }
+        return m;
+    }
+
+    // Caller holds the lock.
+    private void push(Message m, long stamp) {
+        (m instanceof ControlMessage ? control : data).push(m, stamp);
+        quiescence.added(1); // Before the owner can take it, since we hold the lock
+        count++;
+        if (count > highWater)
+            highWater = count;
+    }
+
+    // Removes up to max queued messages of the given type, oldest first. Caller holds the lock.
+    private List<Message> removeQueued(Class<? extends Message> type, int max) {
+        List<Message> removed = new ArrayList<>();
+        (ControlMessage.class.isAssignableFrom(type) ? control : data).removeQueued(type, max, removed);
+        count -= removed.size();
+        queuedPerType.get(type)[0] -= removed.size();
+        return removed;
+    }
+}
@@ -2,17 +2,49 @@ package bgu.spl.mics;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
 /**
  * The {@link MessageBusImpl class is the implementation of the MessageBus interface.
  * Write your implementation here!
  * Only one public method (in addition to getters which can be public solely for unit testing) may be added to this class
  * All other methods and members you add the class must be private.
+ * <p>
+ * The one public method added is {@link #whenQuiescent()}, which a virtual clock needs; the
+ * backpressure and metrics getters are public as well. The rest of what services use (batch
+ * receives, one-way and expiring sends, filtered subscriptions) is package-private and reached
+ * through {@link MicroService}, and the bus is configured through {@link BusConfigurator}.
  */
 public class MessageBusImpl implements MessageBus {
-	private final Map<MicroService, BlockingQueue<Message>> microServiceQueues;
-	private final Map<Class<? extends Message>, Queue<MicroService>> eventSubscribers;
-	private final Map<Class<? extends Broadcast>, List<MicroService>> broadcastSubscribers;
-	private final ConcurrentHashMap<Event<?>, Future<?>> eventFutureMap;
+	/**
+	 * The future of a dispatched event and the mailbox it was sent to, so unregistering a
+	 * service finds exactly the events still pending on it.
+	 */
+	private static final class Dispatch {
+		private final Future<?> future;
+		private final Mailbox mailbox;
+		private volatile ScheduledFuture<?> expiry; // Set for sends with a timeout
+
+		private Dispatch(Future<?> future, Mailbox mailbox) {
+			this.future = future;
+			this.mailbox = mailbox;
+		}
+	}
+
+	// Started on the first send with a timeout
+	private static class ExpiryHolder {
+		private static final ScheduledThreadPoolExecutor EXPIRY = newExpiryScheduler();
+	}
+
+	private final Map<MicroService, Mailbox> microServiceQueues;
+	private final Map<Class<? extends Message>, EventRoute> eventRoutes;
+	private final Map<Class<? extends Broadcast>, EventRoute> broadcastSubscribers;
+	private final Map<Class<? extends Broadcast>, BroadcastRing> broadcastRings;
+	private final ConcurrentHashMap<Event<?>, Dispatch> eventFutureMap;
+	private final Map<String, Map<Class<? extends Message>, Mailbox.Limit>> mailboxLimits;
+	private final AtomicLongArray backpressureCounters;
+	private final Map<MicroService, Integer> serviceCapacities;
+	private final BusMetrics metrics;
+	private final Quiescence quiescence;
 
 	private static class SingletonHolder{
 		private static final MessageBusImpl INSTANCE = new MessageBusImpl();
@@ -20,9 +52,15 @@ public class MessageBusImpl implements MessageBus {
 
 	private MessageBusImpl() {
 		microServiceQueues = new ConcurrentHashMap<>();
-		eventSubscribers = new ConcurrentHashMap<>();
+		eventRoutes = new ConcurrentHashMap<>();
 		broadcastSubscribers = new ConcurrentHashMap<>();
+		broadcastRings = new ConcurrentHashMap<>();
 		eventFutureMap = new ConcurrentHashMap<>();
+		mailboxLimits = new ConcurrentHashMap<>();
+		backpressureCounters = new AtomicLongArray(BackpressurePolicy.values().length);
+		serviceCapacities = new ConcurrentHashMap<>();
+		metrics = new BusMetrics();
+		quiescence = new Quiescence();
 	}
 
 	public static MessageBusImpl getInstance() {
@@ -31,93 +69,341 @@ public class MessageBusImpl implements MessageBus {
 
 	@Override
 	public <T> void subscribeEvent(Class<? extends Event<T>> type, MicroService m) {
-		eventSubscribers.computeIfAbsent(type, k -> new LinkedBlockingQueue<>()).add(m);
+		register(m); // Subscribing implies a queue; no-op if m is already registered
+		eventRoutes.computeIfAbsent(type, k -> new EventRoute())
+				.add(m, microServiceQueues.get(m), serviceCapacities.getOrDefault(m, 1));
 	}
 
 	@Override
 	public void subscribeBroadcast(Class<? extends Broadcast> type, MicroService m) {
-		broadcastSubscribers.computeIfAbsent(type, k -> new CopyOnWriteArrayList <>()).add(m);
+		subscribeBroadcast(type, m, null);
+	}
+
+	/**
+	 * Subscribes {@code m} to the broadcasts of type {@code type} that {@code filter} accepts.
+	 * The filter is evaluated when a broadcast is sent, so rejected broadcasts never reach
+	 * {@code m}'s mailbox. A ring cannot skip entries for a single reader, so a filtered
+	 * subscriber of a ring type gets its broadcasts through its mailbox instead of the ring.
+	 * <p>
+	 * @param type   The type to subscribe to.
+	 * @param m      The subscribing micro-service.
+	 * @param filter Decides which broadcasts {@code m} receives; null for all of them.
+	 */
+	<B extends Broadcast> void subscribeBroadcast(Class<B> type, MicroService m, BroadcastFilter<? super B> filter) {
+		register(m);
+		BroadcastRing ring = broadcastRings.get(type);
+		if (ring != null && filter == null) {
+			Mailbox queue = microServiceQueues.get(m);
+			if (queue != null)
+				ring.subscribe(queue);
+			return;
+		}
+		broadcastSubscribers.computeIfAbsent(type, k -> new EventRoute())
+				.add(m, microServiceQueues.get(m), 1, filter);
 	}
 
 	@Override
 	public <T> void complete(Event<T> e, T result) {
-		Future<T> future = (Future<T>) eventFutureMap.remove(e);
-		if (future != null) {
+		Dispatch dispatch = eventFutureMap.remove(e); // Only one of complete, expiry and unregister wins
+		if (dispatch != null) {
+			dispatch.mailbox.removePending(e);
+			ScheduledFuture<?> expiry = dispatch.expiry;
+			if (expiry != null)
+				expiry.cancel(false);
+			@SuppressWarnings("unchecked") // Created by sendEvent for e, an Event<T>
+			Future<T> future = (Future<T>) dispatch.future;
 			future.resolve(result);
 		}
 	}
 
 	@Override
 	public void sendBroadcast(Broadcast b) {
-		// Log the broadcast being sent
-		// Retrieve the list of services subscribed to this broadcast type
-		List<MicroService> msList = broadcastSubscribers.get(b.getClass());
+		metrics.recordSend(b.getClass());
+		BroadcastRing ring = broadcastRings.get(b.getClass());
+		if (ring != null && !ring.publish(b)) // One shared write, read by every unfiltered subscriber through its own cursor
+			backpressureCounters.incrementAndGet(BackpressurePolicy.DROP_NEWEST.ordinal());
+		// Retrieve the services subscribed to this broadcast type (for a ring type, the filtered ones)
+		EventRoute route = broadcastSubscribers.get(b.getClass());
 		// If there are no services subscribed, return early (nothing to send)
-		if (msList == null || msList.isEmpty()) {
+		if (route == null) {
 			return;
 		}
-		// Add the broadcast to the queues of all subscribed services
-		for (MicroService ms : msList) {
-			BlockingQueue<Message> queue = microServiceQueues.get(ms);
-			if (queue != null) {
-				queue.add(b); // Add the broadcast to the queue
-			}
-		}
+		// Add the broadcast to the queues of the subscribed services that want it
+		route.broadcast(b);
 	}
 
 	@Override
 	public <T> Future<T> sendEvent(Event<T> e) {
-		MicroService ms =null;
-		synchronized (eventSubscribers) {
-			Queue<MicroService> queue = eventSubscribers.get(e.getClass());
-			if (queue == null || queue.isEmpty())
-				return null;
-			ms = queue.poll(); // Get the next MicroService
-			queue.add(ms); // Add it back to the end of the queue for round-robin
-		}
-		// Make sure the queue for the selected service exists before sending the event
-		BlockingQueue<Message> queue = microServiceQueues.get(ms);
-		if (queue != null) {
-			queue.add(e);
-		} else {
+		Dispatch dispatch = dispatch(e);
+		if (dispatch == null)
 			return null;
-		}
+		@SuppressWarnings("unchecked") // Created by dispatch for e, an Event<T>
+		Future<T> future = (Future<T>) dispatch.future;
+		return future;
+	}
 
-		Future<T> future = new Future<>();
-		eventFutureMap.put(e, future);
+	/**
+	 * Like {@link #sendEvent(Event)}, but the returned future expires: if {@code e} is not
+	 * completed within {@code timeout}, its future is resolved with null and forgotten.
+	 * <p>
+	 * @return the future, or null if nobody is subscribed or the event was dropped.
+	 */
+	<T> Future<T> sendEvent(Event<T> e, long timeout, TimeUnit unit) {
+		Dispatch dispatch = dispatch(e);
+		if (dispatch == null)
+			return null;
+		dispatch.expiry = ExpiryHolder.EXPIRY.schedule(() -> expire(e, dispatch), timeout, unit);
+		if (dispatch.future.isDone())
+			dispatch.expiry.cancel(false); // Completed before the expiry was set
+		@SuppressWarnings("unchecked") // Created by dispatch for e, an Event<T>
+		Future<T> future = (Future<T>) dispatch.future;
 		return future;
 	}
 
+	/**
+	 * Sends {@code e} to one of its subscribers without creating a {@link Future}: nothing is
+	 * tracked for it, and {@link #complete(Event, Object)} on it has no effect. For events whose
+	 * result nobody reads.
+	 * <p>
+	 * @return true if the event was queued, false if nobody is subscribed or it was dropped.
+	 */
+	boolean sendEventOneWay(Event<?> e) {
+		metrics.recordSend(e.getClass());
+		Mailbox queue = select(e);
+		return queue != null && queue.offer(e);
+	}
+
+	// Picks the receiving mailbox from the type's subscriber snapshot per its dispatch policy.
+	private Mailbox select(Event<?> e) {
+		EventRoute route = eventRoutes.get(e.getClass());
+		return route == null ? null : route.select(e);
+	}
+
+	private Dispatch dispatch(Event<?> e) {
+		metrics.recordSend(e.getClass());
+		Mailbox queue = select(e);
+		if (queue == null)
+			return null;
+
+		// Register the future first so a policy evicting the event can still resolve it
+		Dispatch dispatch = new Dispatch(new Future<>(), queue);
+		eventFutureMap.put(e, dispatch);
+		queue.addPending(e); // Before offering, so an unregister that closes the queue sees it
+		if (!queue.offer(e)) {
+			eventFutureMap.remove(e, dispatch);
+			queue.removePending(e);
+			return null; // Dropped by the receiver's backpressure policy
+		}
+		return dispatch;
+	}
+
+	// Resolves an event's future with null if it is still the one dispatched and unresolved.
+	private void expire(Event<?> e, Dispatch dispatch) {
+		if (eventFutureMap.remove(e, dispatch)) {
+			dispatch.mailbox.removePending(e);
+			@SuppressWarnings("unchecked") // null resolves a future of any result type
+			Future<Object> future = (Future<Object>) dispatch.future;
+			future.resolve(null);
+		}
+	}
+
+	private static ScheduledThreadPoolExecutor newExpiryScheduler() {
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, task -> {
+			Thread thread = new Thread(task, "future-expiry");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.setRemoveOnCancelPolicy(true); // Completed events do not linger in the queue
+		return scheduler;
+	}
+
 	@Override
 	public void register(MicroService m) {
-		microServiceQueues.putIfAbsent(m, new LinkedBlockingQueue<Message>());
+		Map<Class<? extends Message>, Mailbox.Limit> limits = mailboxLimits.getOrDefault(m.getName(), Collections.emptyMap());
+		microServiceQueues.putIfAbsent(m, new Mailbox(limits, backpressureCounters, metrics, quiescence, this::discarded));
+	}
+
+	// The configuration methods below are applied through BusConfigurator, which documents them.
+	void setMailboxLimit(String serviceName, Class<? extends Message> type, int capacity, BackpressurePolicy policy) {
+		mailboxLimits.computeIfAbsent(serviceName, k -> new ConcurrentHashMap<>())
+				.put(type, new Mailbox.Limit(capacity, policy));
+	}
+
+	void enableBroadcastRing(Class<? extends Broadcast> type, int capacity, BackpressurePolicy whenFull) {
+		if (ControlMessage.class.isAssignableFrom(type))
+			throw new IllegalArgumentException("Control broadcasts cannot use a ring: " + type.getSimpleName());
+		broadcastRings.putIfAbsent(type, new BroadcastRing(capacity, whenFull, quiescence));
+	}
+
+	void setDispatchPolicy(Class<? extends Event<?>> type, DispatchPolicy policy) {
+		eventRoutes.computeIfAbsent(type, k -> new EventRoute()).setPolicy(policy);
+	}
+
+	void setServiceCapacity(MicroService m, int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Service capacity must be positive: " + capacity);
+		serviceCapacities.put(m, capacity);
+	}
+
+	void enableQuiescenceTracking() {
+		quiescence.enable();
+	}
+
+	/**
+	 * @param policy a backpressure policy.
+	 * @return how many times a full mailbox or broadcast ring applied {@code policy} so far.
+	 */
+	public long getBackpressureCount(BackpressurePolicy policy) {
+		return backpressureCounters.get(policy.ordinal());
+	}
+
+	/**
+	 * @return a copy of the bus metrics so far: per-type send counts, queue-wait and handling
+	 *         time histograms, and per-service mailbox high-water marks.
+	 */
+	public BusMetrics.Snapshot getMetricsSnapshot() {
+		return metrics.snapshot(microServiceQueues);
+	}
+
+	/**
+	 * Waits, without blocking, for the bus to go idle: no message queued anywhere and none
+	 * being handled. Since whatever a callback sends is queued before the callback returns,
+	 * this is the point where everything triggered so far has run to completion.
+	 * <p>
+	 * @return a future resolved with null once the bus is quiescent. Intended for a single
+	 *         waiter, such as a virtual clock; a later call replaces the pending one.
+	 * @throws IllegalStateException if tracking was not enabled.
+	 */
+	public Future<Void> whenQuiescent() {
+		if (!quiescence.isEnabled())
+			throw new IllegalStateException("Quiescence tracking is not enabled");
+		return quiescence.whenQuiescent();
+	}
+
+	// Turns quiescence tracking back off, so the singleton bus starts the next test untracked; for tests.
+	void disableQuiescenceTracking() {
+		quiescence.disable();
+	}
+
+	// The number of dispatched events whose futures are still tracked; for tests.
+	int trackedFutureCount() {
+		return eventFutureMap.size();
+	}
+
+	// The mailbox of a registered service, or null.
+	Mailbox mailboxOf(MicroService m) {
+		return microServiceQueues.get(m);
+	}
+
+	// Called by MicroService after running a callback for a message of the given type.
+	void recordHandling(Class<? extends Message> type, long nanos) {
+		metrics.recordHandling(type, nanos);
+	}
+
+	/**
+	 * Queues {@code msg} directly into the mailbox of {@code m}, bypassing subscriptions.
+	 * Used to hand future continuations back to the service that registered them.
+	 * <p>
+	 * @return false if {@code m} is not registered (anymore) or the message was dropped.
+	 */
+	boolean deliver(MicroService m, Message msg) {
+		Mailbox queue = microServiceQueues.get(m);
+		return queue != null && queue.offer(msg);
+	}
+
+	/**
+	 * Non-blocking variant of {@link #awaitMessages(MicroService, Collection, int)}, used by
+	 * services running as actors: moves up to {@code maxBatch} queued messages into {@code into}.
+	 * <p>
+	 * @return the number of messages moved, possibly zero.
+	 */
+	int pollMessages(MicroService m, Collection<? super Message> into, int maxBatch) {
+		Mailbox queue = microServiceQueues.get(m);
+		if(queue == null){
+			throw new IllegalStateException ("MicroService is not registered!");
+		}
+		return queue.pollTo(into, maxBatch);
+	}
+
+	/**
+	 * @return true if messages are waiting in the mailbox of {@code m}.
+	 */
+	boolean hasMessages(MicroService m) {
+		Mailbox queue = microServiceQueues.get(m);
+		return queue != null && queue.size() > 0;
+	}
+
+	/**
+	 * Makes the mailbox of {@code m} call {@code listener} after every message it receives,
+	 * so an actor can be scheduled instead of blocking a thread in {@link #awaitMessage(MicroService)}.
+	 */
+	void setMailboxListener(MicroService m, Runnable listener) {
+		Mailbox queue = microServiceQueues.get(m);
+		if (queue != null)
+			queue.setListener(listener);
+	}
+
+	// Releases what the bus keeps for a message that a mailbox policy discarded.
+	private void discarded(Message m) {
+		if (m instanceof Event) {
+			@SuppressWarnings("unchecked") // null completes an event of any result type
+			Event<Object> e = (Event<Object>) m;
+			complete(e, null);
+		}
 	}
 
 	@Override
-	public synchronized void unregister(MicroService m) {
+	public void unregister(MicroService m) {
 		// Remove the MicroService's message queue
-		BlockingQueue<Message> queue = microServiceQueues.remove(m);
+		Mailbox queue = microServiceQueues.remove(m);
 		if (queue != null) {
-			queue.clear();
+			broadcastRings.values().forEach(ring -> ring.unsubscribe(queue));
+			queue.close();
+			metrics.retire(m.getName(), queue.highWater());
 		}
 
 		// Remove subscriptions
-		eventSubscribers.values().forEach(q -> q.remove(m));
-		broadcastSubscribers.values().forEach(q -> q.remove(m));
+		eventRoutes.values().forEach(route -> route.remove(m));
+		broadcastSubscribers.values().forEach(route -> route.remove(m));
 
-		// Clean up unresolved futures
-		eventFutureMap.keySet().removeIf(e -> {
-			Queue<MicroService> subscribers = eventSubscribers.get(e.getClass());
-			return subscribers != null && !subscribers.contains(m);
-		});
+		serviceCapacities.remove(m);
+
+		// Resolve the futures of events m will never complete (queued, or taken but not completed)
+		if (queue != null) {
+			for (Event<?> pending : queue.pendingEvents()) {
+				@SuppressWarnings("unchecked") // null completes an event of any result type
+				Event<Object> e = (Event<Object>) pending;
+				complete(e, null);
+			}
+		}
 	}
 
 	@Override
 	public Message awaitMessage(MicroService m) throws InterruptedException {
-		if(!microServiceQueues.containsKey(m)){
+		Mailbox queue = microServiceQueues.get(m);
+		if(queue == null){
+			throw new IllegalStateException ("MicroService is not registered!");
+		}
+		return queue.take();
+	}
+
+	/**
+	 * Batch variant of {@link #awaitMessage(MicroService)}: moves up to {@code maxBatch} of the
+	 * messages queued for {@code m} into {@code into}, in queue order, blocking until at least
+	 * one is available.
+	 * <p>
+	 * @param m        The registered micro-service whose queue is drained.
+	 * @param into     The collection receiving the messages.
+	 * @param maxBatch The maximal number of messages to move.
+	 * @return The number of messages moved (at least one).
+	 * @throws InterruptedException if interrupted while waiting for a message.
+	 */
+	int awaitMessages(MicroService m, Collection<? super Message> into, int maxBatch) throws InterruptedException {
+		Mailbox queue = microServiceQueues.get(m);
+		if(queue == null){
 			throw new IllegalStateException ("MicroService is not registered!");
 		}
-		return microServiceQueues.get(m).take();
+		return queue.drainTo(into, maxBatch);
 	}
 
 }
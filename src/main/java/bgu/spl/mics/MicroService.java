@@ -1,6 +1,9 @@
 package bgu.spl.mics;
 
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 /**
  * The MicroService is an abstract class that any micro-service in the system
  * must extend. The abstract MicroService class is responsible to get and
@@ -21,9 +24,80 @@ import java.util.*;
  */
 public abstract class MicroService implements Runnable {
 
+    private static final int MAX_BATCH = 64; // Messages handled per wakeup of the event loop
+
+    /**
+     * A future result handed back to the service that is waiting for it, so the
+     * continuation runs on that service's own event loop.
+     */
+    private static final class Continuation<T> implements Message {
+        private final Callback<T> callback;
+        private final T result;
+
+        private Continuation(Callback<T> callback, T result) {
+            this.callback = callback;
+            this.result = result;
+        }
+
+        private void run() {
+            callback.call(result);
+        }
+    }
+
+    /**
+     * Runs the service as an actor: each execution handles one batch of messages and then
+     * returns its thread to the executor. The mailbox listener reschedules the actor when new
+     * messages arrive; {@code scheduled} ensures at most one execution is pending or running,
+     * which keeps messages handled one at a time and in order.
+     */
+    private final class Actor implements Runnable {
+        private final Executor executor;
+        private final Runnable onInitialized;
+        private final Runnable onTermination;
+        private final AtomicBoolean scheduled = new AtomicBoolean(true); // The first run initializes
+        private boolean started;
+
+        private Actor(Executor executor, Runnable onInitialized, Runnable onTermination) {
+            this.executor = executor;
+            this.onInitialized = onInitialized;
+            this.onTermination = onTermination;
+        }
+
+        @Override
+        public void run() {
+            MessageBusImpl bus = MessageBusImpl.getInstance();
+            if (!started) {
+                started = true;
+                bus.register(MicroService.this);
+                mailbox = bus.mailboxOf(MicroService.this);
+                initialize();
+                bus.setMailboxListener(MicroService.this, this::wake);
+                onInitialized.run();
+            }
+            if (!terminated && bus.pollMessages(MicroService.this, batch, MAX_BATCH) > 0)
+                handleBatch();
+            if (terminated) {
+                bus.unregister(MicroService.this);
+                onTermination.run();
+                return; // Stays scheduled, so it never runs again
+            }
+            scheduled.set(false);
+            // A message may have arrived after the poll while we were still marked as scheduled
+            if (bus.hasMessages(MicroService.this))
+                wake();
+        }
+
+        private void wake() {
+            if (scheduled.compareAndSet(false, true))
+                executor.execute(this);
+        }
+    }
+
     private boolean terminated = false;
     private final String name;
     private final Map<Class<? extends Message>, Callback> callbackMap;
+    private final List<Message> batch;
+    private Mailbox mailbox; // Set once registered
     /**
      * @param name the micro-service name (used mainly for debugging purposes -
      *             does not have to be unique)
@@ -31,6 +105,7 @@ public abstract class MicroService implements Runnable {
     public MicroService(String name) {
         this.name = name;
         this.callbackMap= new HashMap<>();
+        this.batch = new ArrayList<>(MAX_BATCH);
     }
 
     /**
@@ -84,6 +159,24 @@ public abstract class MicroService implements Runnable {
         callbackMap.put(type, callback);
     }
 
+    /**
+     * Like {@link #subscribeBroadcast(Class, Callback)}, but only the broadcasts {@code filter}
+     * accepts are delivered; the rest are dropped by the message-bus when they are sent, without
+     * waking this micro-service. See {@link BroadcastFilter} for what a filter may do.
+     * <p>
+     * @param <B>      The type of broadcast message to subscribe to
+     * @param type     The {@link Class} representing the type of broadcast
+     *                 message to subscribe to.
+     * @param filter   Decides, at send time, which broadcasts this micro-service receives.
+     * @param callback The callback that should be called when accepted messages of type
+     *                 {@code type} are taken from this micro-service message queue.
+     */
+    protected final <B extends Broadcast> void subscribeBroadcast(Class<B> type, BroadcastFilter<? super B> filter,
+                                                                  Callback<B> callback) {
+        MessageBusImpl.getInstance().subscribeBroadcast(type, this, filter);
+        callbackMap.put(type, callback);
+    }
+
     /**
      * Sends the event {@code e} using the message-bus and receive a {@link Future<T>}
      * object that may be resolved to hold a result. This method must be Non-Blocking since
@@ -100,6 +193,49 @@ public abstract class MicroService implements Runnable {
         return MessageBusImpl.getInstance().sendEvent(e);
     }
 
+    /**
+     * Sends the event {@code e} like {@link #sendEvent(Event)}, but the future is resolved
+     * with null if no result arrives within {@code timeout}.
+     * <p>
+     * @param <T>     The type of the expected result of the request {@code e}.
+     * @param e       The event to send.
+     * @param timeout The maximal time to wait for a result.
+     * @param unit    The {@link TimeUnit} of {@code timeout}.
+     * @return the future, or null in case no micro-service has subscribed to {@code e.getClass()}.
+     */
+    protected final <T> Future<T> sendEvent(Event<T> e, long timeout, TimeUnit unit) {
+        return MessageBusImpl.getInstance().sendEvent(e, timeout, unit);
+    }
+
+    /**
+     * Sends the event {@code e} to one of its subscribers without asking for a result, so no
+     * {@link Future} is created or tracked. Use it for events whose result is never read.
+     * <p>
+     * @param e The event to send.
+     * @return true if the event was delivered, false if nobody subscribed to its type or the
+     *         receiver's mailbox dropped it.
+     */
+    protected final boolean sendEventOneWay(Event<?> e) {
+        return MessageBusImpl.getInstance().sendEventOneWay(e);
+    }
+
+    /**
+     * Registers {@code callback} to run on this micro-service's event loop once {@code future}
+     * is resolved, so the service can chain work off an event result without blocking its
+     * thread in {@link Future#get()}. The callback is queued like any other message; it is
+     * dropped if the service terminates first. Does nothing if {@code future} is null
+     * (e.g. nobody subscribed to the event).
+     * <p>
+     * @param <T>      The type of the result.
+     * @param future   The future returned by {@link #sendEvent(Event)}.
+     * @param callback The continuation to call with the result.
+     */
+    protected final <T> void onComplete(Future<T> future, Callback<T> callback) {
+        if (future != null) {
+            future.onComplete(result -> MessageBusImpl.getInstance().deliver(this, new Continuation<>(callback, result)));
+        }
+    }
+
     /**
      * A Micro-Service calls this method in order to send the broadcast message {@code b} using the message-bus
      * to all the services subscribed to it.
@@ -151,14 +287,12 @@ public abstract class MicroService implements Runnable {
     @Override
     public final void run() {
         MessageBusImpl.getInstance().register(this);
+        mailbox = MessageBusImpl.getInstance().mailboxOf(this);
         initialize();
         while (!terminated) {
             try {
-                Message message = MessageBusImpl.getInstance().awaitMessage(this);
-                Callback callback = callbackMap.get(message.getClass());
-                if (callback != null) {
-                    callback.call(message);
-                }
+                MessageBusImpl.getInstance().awaitMessages(this, batch, MAX_BATCH);
+                handleBatch();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
@@ -166,4 +300,52 @@ public abstract class MicroService implements Runnable {
         }
         MessageBusImpl.getInstance().unregister(this);
     }
+
+    /**
+     * Starts the service as an actor on {@code executor} instead of a dedicated thread.
+     * Initialization and every batch of messages run as separate tasks, so callbacks must not
+     * block for long. {@code onInitialized} runs once {@link #initialize()} has returned and
+     * {@code onTermination} once the service has unregistered.
+     */
+    final void runAsActor(Executor executor, Runnable onInitialized, Runnable onTermination) {
+        executor.execute(new Actor(executor, onInitialized, onTermination));
+    }
+
+    private void handleBatch() {
+        long start = System.nanoTime();
+        int controls = 0;
+        try {
+            // Messages left in the batch after terminate() are dropped, like the rest of the queue
+            for (int i = 0; i < batch.size() && !terminated; i++) {
+                start = dispatch(batch.get(i), start);
+                // Control messages that arrived meanwhile skip the rest of the batch as well
+                if (mailbox.hasControl()) {
+                    Message control;
+                    while (!terminated && (control = mailbox.pollControl()) != null) {
+                        start = dispatch(control, start);
+                        controls++;
+                    }
+                }
+            }
+        } finally {
+            // Only now is the batch no longer in flight; whatever it sent is already queued
+            mailbox.finished(batch.size() + controls);
+            batch.clear();
+        }
+    }
+
+    // Runs the callback for one message; returns the time it finished, for the next measurement.
+    private long dispatch(Message message, long start) {
+        if (message instanceof Continuation) {
+            ((Continuation<?>) message).run();
+        } else {
+            Callback callback = callbackMap.get(message.getClass());
+            if (callback != null) {
+                callback.call(message);
+            }
+        }
+        long end = System.nanoTime();
+        MessageBusImpl.getInstance().recordHandling(message.getClass(), end - start);
+        return end;
+    }
 }
@@ -0,0 +1,70 @@
+package bgu.spl.mics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Counts the messages in flight on the bus: queued in a mailbox or ring, or taken by a service
+ * whose batch is not handled yet. A virtual clock uses it to tell when everything a tick
+ * triggered has run to completion.
+ * <p>
+ * A message is counted before its receiver can see it and uncounted only after the callback
+ * handling it returned. Whatever a callback sends is counted before the callback returns, so
+ * the count cannot reach zero while work is still pending. Counting is off until
+ * {@link #enable()} is called, since it puts a shared atomic update on every send.
+ */
+final class Quiescence {
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicReference<Future<Void>> waiter = new AtomicReference<>();
+    private volatile boolean enabled;
+
+    /**
+     * Starts counting from zero. Messages already in flight are not counted, so this should be
+     * called while the bus is idle, before services start sending.
+     */
+    void enable() {
+        inFlight.set(0);
+        enabled = true;
+    }
+
+    /**
+     * Stops counting and drops the pending waiter, unresolved.
+     */
+    void disable() {
+        enabled = false;
+        inFlight.set(0);
+        waiter.set(null);
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void added(int messages) {
+        if (enabled && messages > 0)
+            inFlight.addAndGet(messages);
+    }
+
+    void removed(int messages) {
+        if (enabled && messages > 0 && inFlight.addAndGet(-messages) == 0)
+            release();
+    }
+
+    /**
+     * @return a future resolved with null the next time no message is in flight (immediately if
+     *         none is). A later call replaces the waiter, so there should be a single caller.
+     */
+    Future<Void> whenQuiescent() {
+        Future<Void> future = new Future<>();
+        waiter.set(future);
+        if (inFlight.get() == 0)
+            release();
+        return future;
+    }
+
+    private void release() {
+        Future<Void> future = waiter.getAndSet(null); // Exactly one of the racing releases resolves it
+        if (future != null)
+            future.resolve(null);
+    }
+}
@@ -0,0 +1,127 @@
+package bgu.spl.mics;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Starts micro-services according to an {@link ExecutionMode} and waits for them to terminate.
+ * <p>
+ * In {@link ExecutionMode#POOLED} mode a service occupies a pool thread only while it handles
+ * messages, so thousands of services can share a few threads. Callbacks that block (sleeping,
+ * waiting on a {@link Future}, sending into a full {@link BackpressurePolicy#BLOCK} mailbox or
+ * broadcast ring) hold a pool thread meanwhile and should be kept to services started on their
+ * own thread.
+ */
+public final class ServiceExecutor {
+
+    private final ExecutionMode mode;
+    private final ExecutorService pool;
+    private final List<Thread> threads = new ArrayList<>();
+    private final List<CountDownLatch> actors = new ArrayList<>();
+
+    /**
+     * @param mode        How services are run.
+     * @param poolThreads The pool size for {@link ExecutionMode#POOLED}; ignored otherwise.
+     */
+    public ServiceExecutor(ExecutionMode mode, int poolThreads) {
+        if (mode == ExecutionMode.POOLED && poolThreads < 1)
+            throw new IllegalArgumentException("Scheduler pool needs at least one thread: " + poolThreads);
+        this.mode = mode;
+        this.pool = mode == ExecutionMode.POOLED ? Executors.newFixedThreadPool(poolThreads, daemonThreads()) : null;
+    }
+
+    /**
+     * Checks that senders may be held back by {@code policy} under this executor. In
+     * {@link ExecutionMode#POOLED} mode a sender waiting on a full {@link BackpressurePolicy#BLOCK}
+     * mailbox or broadcast ring holds a pool thread that the receiver may need to drain it, so
+     * once every pool thread waits like this the simulation deadlocks.
+     *
+     * @param target Names the mailbox or ring, for the error message.
+     * @param policy What a sender does when {@code target} is full.
+     * @throws IllegalArgumentException If {@code policy} would block a pool thread.
+     */
+    public void checkBackpressure(String target, BackpressurePolicy policy) {
+        if (mode == ExecutionMode.POOLED && policy == BackpressurePolicy.BLOCK)
+            throw new IllegalArgumentException(target + " cannot BLOCK in POOLED mode; use a dropping policy");
+    }
+
+    /**
+     * Starts all of {@code services}. In the thread-per-service modes none of them runs before
+     * every thread has been started. In {@link ExecutionMode#POOLED} mode this returns once all
+     * of them have initialized, since their initialization is queued behind each other.
+     */
+    public void startAll(Collection<? extends MicroService> services) throws InterruptedException {
+        if (mode == ExecutionMode.POOLED) {
+            CountDownLatch initialized = new CountDownLatch(services.size());
+            for (MicroService service : services) {
+                CountDownLatch done = new CountDownLatch(1);
+                actors.add(done);
+                service.runAsActor(pool, initialized::countDown, done::countDown);
+            }
+            initialized.await();
+            return;
+        }
+        CountDownLatch started = new CountDownLatch(services.size());
+        for (MicroService service : services) {
+            Thread thread = newThread(() -> {
+                try {
+                    started.countDown();
+                    started.await(); // Wait for all services to be ready
+                    service.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Waits until every started service has terminated, then releases the pool.
+     */
+    public void awaitTermination() throws InterruptedException {
+        for (Thread thread : threads)
+            thread.join();
+        for (CountDownLatch done : actors)
+            done.await();
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    private Thread newThread(Runnable task) {
+        if (mode == ExecutionMode.VIRTUAL) {
+            Thread virtual = newVirtualThread(task);
+            if (virtual != null)
+                return virtual;
+        }
+        return new Thread(task);
+    }
+
+    // Thread.ofVirtual().unstarted(task) through reflection, since we compile for Java 8.
+    private static Thread newVirtualThread(Runnable task) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+            return (Thread) unstarted.invoke(builder, task);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null; // Not available on this JDK (or only as a disabled preview)
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, "service-pool-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
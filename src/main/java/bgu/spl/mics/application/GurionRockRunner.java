@@ -1,9 +1,18 @@
 package bgu.spl.mics.application;
+import bgu.spl.mics.BackpressurePolicy;
+import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.BusConfigurator;
+import bgu.spl.mics.DispatchPolicy;
+import bgu.spl.mics.Event;
+import bgu.spl.mics.ExecutionMode;
+import bgu.spl.mics.Message;
 import bgu.spl.mics.MessageBus;
 import bgu.spl.mics.MessageBusImpl;
 import bgu.spl.mics.MicroService;
+import bgu.spl.mics.ServiceExecutor;
 import bgu.spl.mics.application.objects.*;
 import bgu.spl.mics.application.services.CameraService;
+import bgu.spl.mics.application.services.ClockMode;
 import bgu.spl.mics.application.services.FusionSlamService;
 import bgu.spl.mics.application.services.PoseService;
 import bgu.spl.mics.application.services.TimeService;
@@ -13,9 +22,12 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import java.util.concurrent.CountDownLatch;
 import bgu.spl.mics.application.services.LiDarService;
 
 /**
@@ -26,6 +38,8 @@ import bgu.spl.mics.application.services.LiDarService;
  * </p>
  */
 public class GurionRockRunner {
+    private static final int SENSOR_DATA_FILES = 3; // Poses, camera frames and LiDAR data
+
     /**
      * The main method of the simulation.
      * This method sets up the necessary components, parses configuration files,
@@ -52,87 +66,291 @@ public class GurionRockRunner {
             String poseJsonPath = basePath + config.get("poseJsonFile").getAsString();
             // Initialize shared resources
             MessageBus messageBus = MessageBusImpl.getInstance();
+            ServiceExecutor executor = createExecutor(config);
+            BusConfigurator busConfigurator = BusConfigurator.of(MessageBusImpl.getInstance());
+            configureMailboxes(config, busConfigurator, executor);
+            configureBroadcastRings(config, busConfigurator, executor);
+            configureDispatchPolicies(config, busConfigurator);
 
-            // Create services list
-            List<MicroService> services = new ArrayList<>();
             // Initialize TimeService (should be started last)
-            TimeService timeService = new TimeService(tickTime, duration);
-
-            // Initialize PoseService
-            PoseService poseService = new PoseService(new GPSIMU(poseJsonPath));
-            services.add(poseService);
+            ClockMode clockMode = config.has("ClockMode")
+                    ? ClockMode.valueOf(config.get("ClockMode").getAsString())
+                    : ClockMode.WALL_CLOCK;
+            TimeService timeService = new TimeService(tickTime, duration, clockMode);
+            // Streams the sensor data around the current tick instead of loading it, if configured
+            SensorWindow window = sensorWindow(config);
 
-            // Initialize FusionSLAM service (should be initialized before sensors)
             FusionSlam.getInstance().setBasePath(basePath);
-            FusionSlamService fusionSlam = new FusionSlamService(FusionSlam.getInstance());
-            services.add(fusionSlam);
+
+            // Load the data files concurrently; each sensor's services start once its own data is ready
+            StartupLoader loader = new StartupLoader(loaderThreads(config));
+
+            // Initialize PoseService, and FusionSLAM, which is sized for the poses
+            loader.submit("poses", poseJsonPath,
+                    () -> window == null ? new GPSIMU(poseJsonPath) : new GPSIMU(poseJsonPath, window),
+                    gpsimu -> {
+                        if (gpsimu.getPoses().isResident())
+                            FusionSlam.getInstance().reservePoses(gpsimu.getPoses().size());
+                        executor.startAll(Arrays.asList(new PoseService(gpsimu),
+                                new FusionSlamService(FusionSlam.getInstance())));
+                    });
 
             // Initialize Cameras
             JsonObject camerasConfig = config.getAsJsonObject("Cameras");
             JsonArray cameraConfigurations = camerasConfig.getAsJsonArray("CamerasConfigurations");
             String cameraDataPath = basePath + camerasConfig.get("camera_datas_path").getAsString();
-
-            for (JsonElement element : cameraConfigurations) {
-                JsonObject cameraConfig = element.getAsJsonObject();
-                int id = cameraConfig.get("id").getAsInt();
-                int frequency = cameraConfig.get("frequency").getAsInt();
-                String cameraKey = cameraConfig.get("camera_key").getAsString();
-
-                CameraService camera = new CameraService(new Camera(id, frequency, STATUS.UP, cameraDataPath));
-                services.add(camera);
-            }
+            loader.submit("camera frames", cameraDataPath,
+                    () -> loadCameras(cameraConfigurations, cameraDataPath, window),
+                    cameras -> {
+                        List<MicroService> services = new ArrayList<>();
+                        for (Camera sensor : cameras)
+                            services.add(new CameraService(sensor));
+                        executor.startAll(services);
+                    });
 
             /// Initialize LiDAR workers
             JsonObject lidarConfig = config.getAsJsonObject("LiDarWorkers");
             JsonArray lidarConfigurations = lidarConfig.getAsJsonArray("LidarConfigurations");
             String lidarDataPath = basePath + lidarConfig.get("lidars_data_path").getAsString();
-            //Initialize LiDAR database
-            LiDarDataBase ds = LiDarDataBase.getInstance(lidarDataPath);
+            CloudDownsampler downsampler = downsampler(lidarConfig); // Shared by the workers, so it counts all their points
+            loader.submit("LiDAR data", lidarDataPath,
+                    () -> LiDarDataBase.getInstance(lidarDataPath, window),
+                    ds -> {
+                        List<MicroService> services = new ArrayList<>();
+                        for (JsonElement element : lidarConfigurations) {
+                            JsonObject workerConfig = element.getAsJsonObject();
+                            int id = workerConfig.get("id").getAsInt();
+                            int frequency = workerConfig.get("frequency").getAsInt();
 
-            for (JsonElement element : lidarConfigurations) {
-                JsonObject workerConfig = element.getAsJsonObject();
-                int id = workerConfig.get("id").getAsInt();
-                int frequency = workerConfig.get("frequency").getAsInt();
-
-                LiDarWorkerTracker tracker = new LiDarWorkerTracker(id, frequency, STATUS.UP, new ArrayList<>());
-                LiDarService lidarWorker = new LiDarService("LidarService: "+id, tracker, frequency);
-                services.add(lidarWorker);
-            }
+                            LiDarWorkerTracker tracker = new LiDarWorkerTracker(id, frequency, STATUS.UP, new ArrayList<>());
+                            tracker.setDownsampler(downsampler);
+                            LiDarService lidarWorker = new LiDarService("LidarService: "+id, tracker, frequency);
+                            if (workerConfig.has("capacity"))
+                                busConfigurator.setServiceCapacity(lidarWorker, workerConfig.get("capacity").getAsInt());
+                            services.add(lidarWorker);
+                        }
+                        executor.startAll(services);
+                    });
 
-            // Create CountDownLatch for synchronizing service startup
-            CountDownLatch initLatch = new CountDownLatch(services.size());
-
-            // Start all services
-            for (MicroService service : services) {
+            try {
+                loader.awaitAll();
+                loader.report(System.out);
+                //init timeService last, on a dedicated thread since it sleeps between ticks
                 Thread serviceThread = new Thread(() -> {
-                    try {
-                        initLatch.countDown();
-                        initLatch.await(); // Wait for all services to be ready
-                        service.run();
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
+                    timeService.run();
                 });
                 serviceThreads.add(serviceThread);
                 serviceThread.start();
-            }
-            //init timeService last
-            Thread serviceThread = new Thread(() -> {
-                timeService.run();
-            });
-            serviceThreads.add(serviceThread);
-            serviceThread.start();
-
-            // Wait for all threads to complete
-            for (Thread thread : serviceThreads) {
-                try {
+
+                // Wait for all threads to complete
+                executor.awaitTermination();
+                for (Thread thread : serviceThreads)
                     thread.join();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (downsampler != null)
+                System.out.printf("Downsampled %d LiDAR points to %d (%.1f%% fewer)%n", downsampler.getPointsIn(),
+                        downsampler.getPointsOut(), downsampler.getReduction() * 100);
+
+            // Export the message bus metrics next to the output file
+            try (FileWriter writer = new FileWriter(basePath + "bus_metrics.json")) {
+                new GsonBuilder().setPrettyPrinting().create()
+                        .toJson(MessageBusImpl.getInstance().getMetricsSnapshot(), writer);
             }
 
         } catch (IOException e) {
+            // Services already started would wait for ticks forever
+            System.err.println("Error starting the simulation: " + e.getMessage());
+            System.exit(1);
+        } catch (Error e) {
+            // Such as a data file too large for the heap; exit for the same reason
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Creates the configured cameras over their frames: loaded in one pass over the shared
+     * camera data file, or each streamed through {@code window}.
+     *
+     * @param cameraConfigurations The "CamerasConfigurations" entries of the configuration.
+     * @param cameraDataPath       The camera data file.
+     * @param window               The times to keep in memory around the current tick, or null to load the frames whole.
+     * @throws IOException If the file cannot be read, or has no frames for one of the cameras.
+     */
+    private static List<Camera> loadCameras(JsonArray cameraConfigurations, String cameraDataPath, SensorWindow window) throws IOException {
+        // One pass over the shared camera data file, split into each camera's frames
+        Set<String> cameraKeys = new HashSet<>();
+        for (JsonElement element : cameraConfigurations)
+            cameraKeys.add("camera" + element.getAsJsonObject().get("id").getAsInt());
+        Map<String, List<StampedDetectedObjects>> cameraData = window == null
+                ? CameraDataLoader.load(cameraDataPath, cameraKeys)
+                : null;
+
+        List<Camera> cameras = new ArrayList<>();
+        for (JsonElement element : cameraConfigurations) {
+            JsonObject cameraConfig = element.getAsJsonObject();
+            int id = cameraConfig.get("id").getAsInt();
+            int frequency = cameraConfig.get("frequency").getAsInt();
+
+            cameras.add(window == null
+                    ? new Camera(id, frequency, STATUS.UP, cameraData.get("camera" + id))
+                    : new Camera(id, frequency, STATUS.UP, new WindowedRecords<>(JsonRecordReader.source(
+                            cameraDataPath, "camera" + id, StampedDetectedObjects.class), StampedDetectedObjects::getTime, window)));
+        }
+        return cameras;
+    }
+
+    /**
+     * Reads the optional "Downsampling" entry of the "LiDarWorkers" section, e.g.
+     * {@code {"leafSize": 0.1, "keepRatio": 0.5, "seed": 7}}. Each key is optional: without
+     * "leafSize" there is no voxel grid, and without "keepRatio" no random subsampling.
+     *
+     * @param lidarConfig The "LiDarWorkers" section of the configuration.
+     * @return The downsampling for the workers, or null to send the points as recorded.
+     */
+    private static CloudDownsampler downsampler(JsonObject lidarConfig) {
+        if (!lidarConfig.has("Downsampling"))
+            return null;
+        JsonObject downsampling = lidarConfig.getAsJsonObject("Downsampling");
+        return new CloudDownsampler(
+                downsampling.has("leafSize") ? downsampling.get("leafSize").getAsDouble() : 0,
+                downsampling.has("keepRatio") ? downsampling.get("keepRatio").getAsDouble() : 1,
+                downsampling.has("seed") ? downsampling.get("seed").getAsLong() : 0);
+    }
+
+    /**
+     * Reads the optional "LoaderThreads" entry of the configuration: how many data files are
+     * loaded at the same time. Defaults to one per file, up to the number of available processors.
+     *
+     * @param config The parsed configuration file.
+     */
+    private static int loaderThreads(JsonObject config) {
+        return config.has("LoaderThreads")
+                ? config.get("LoaderThreads").getAsInt()
+                : Math.min(SENSOR_DATA_FILES, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Reads the optional "SensorWindow" entry of the configuration, e.g.
+     * {@code {"behind": 10, "readAhead": 100}}. With it, the pose, camera and LiDAR JSON files are
+     * streamed, keeping only the ticks from {@code behind} before the current one to
+     * {@code readAhead} after it in memory; without it they are loaded whole. {@code behind} is
+     * raised to the longest camera frequency: a camera reports the frame taken that many ticks
+     * earlier, and the LiDAR workers look up that frame's time, so a shorter window would read
+     * the files again from their start on every tick.
+     *
+     * @param config The parsed configuration file.
+     * @return The window, or null if the data is to be loaded whole.
+     */
+    private static SensorWindow sensorWindow(JsonObject config) {
+        if (!config.has("SensorWindow"))
+            return null;
+        JsonObject configured = config.getAsJsonObject("SensorWindow");
+        SensorWindow window = new SensorWindow(configured.get("behind").getAsInt(), configured.get("readAhead").getAsInt());
+        for (JsonElement camera : config.getAsJsonObject("Cameras").getAsJsonArray("CamerasConfigurations"))
+            window = window.coveringBehind(camera.getAsJsonObject().get("frequency").getAsInt());
+        return window;
+    }
+
+    /**
+     * Creates the executor selected by the optional "ExecutionMode" entry of the configuration
+     * (THREADS by default, see {@link ExecutionMode}). "SchedulerThreads" sets the pool size for
+     * POOLED mode and defaults to the number of available processors.
+     *
+     * @param config The parsed configuration file.
+     */
+    private static ServiceExecutor createExecutor(JsonObject config) {
+        ExecutionMode mode = config.has("ExecutionMode")
+                ? ExecutionMode.valueOf(config.get("ExecutionMode").getAsString())
+                : ExecutionMode.THREADS;
+        int poolThreads = config.has("SchedulerThreads")
+                ? config.get("SchedulerThreads").getAsInt()
+                : Runtime.getRuntime().availableProcessors();
+        return new ServiceExecutor(mode, poolThreads);
+    }
+
+    /**
+     * Applies the optional "Mailboxes" section of the configuration, e.g.
+     * {@code [{"service": "FusionSlamService", "message": "TrackedObjectEvent", "capacity": 256, "policy": "BLOCK"}]}.
+     * Message names are resolved against the application's messages package. A limit that would
+     * BLOCK the sender is refused in POOLED mode (see {@link ServiceExecutor#checkBackpressure}).
+     *
+     * @param config   The parsed configuration file.
+     * @param bus      The configurator of the message bus.
+     * @param executor The executor the services will run on.
+     * @throws IllegalArgumentException If a limit would BLOCK in POOLED mode.
+     */
+    private static void configureMailboxes(JsonObject config, BusConfigurator bus, ServiceExecutor executor) {
+        if (!config.has("Mailboxes"))
+            return;
+        for (JsonElement element : config.getAsJsonArray("Mailboxes")) {
+            JsonObject mailbox = element.getAsJsonObject();
+            String service = mailbox.get("service").getAsString();
+            String message = mailbox.get("message").getAsString();
+            int capacity = mailbox.get("capacity").getAsInt();
+            BackpressurePolicy policy = BackpressurePolicy.valueOf(mailbox.get("policy").getAsString());
+            executor.checkBackpressure("The " + message + " mailbox of " + service, policy);
+            bus.setMailboxLimit(service, messageType(message), capacity, policy);
+        }
+    }
+
+    /**
+     * Applies the optional "BroadcastRings" section of the configuration, mapping broadcast
+     * names to ring sizes, e.g. {@code {"TickBroadcast": 1024}}, or to a size and what a
+     * publisher does when the ring is full, e.g.
+     * {@code {"TickBroadcast": {"capacity": 1024, "policy": "DROP_NEWEST"}}} (BLOCK by default).
+     * A ring that would BLOCK is refused in POOLED mode, as a mailbox limit is.
+     *
+     * @param config   The parsed configuration file.
+     * @param bus      The configurator of the message bus.
+     * @param executor The executor the services will run on.
+     * @throws IllegalArgumentException If a ring would BLOCK in POOLED mode.
+     */
+    private static void configureBroadcastRings(JsonObject config, BusConfigurator bus, ServiceExecutor executor) {
+        if (!config.has("BroadcastRings"))
+            return;
+        for (Map.Entry<String, JsonElement> ring : config.getAsJsonObject("BroadcastRings").entrySet()) {
+            Class<? extends Message> type = messageType(ring.getKey());
+            if (!Broadcast.class.isAssignableFrom(type))
+                throw new IllegalArgumentException("Not a broadcast: " + ring.getKey());
+            JsonElement value = ring.getValue();
+            int capacity = value.isJsonObject() ? value.getAsJsonObject().get("capacity").getAsInt() : value.getAsInt();
+            BackpressurePolicy whenFull = value.isJsonObject() && value.getAsJsonObject().has("policy")
+                    ? BackpressurePolicy.valueOf(value.getAsJsonObject().get("policy").getAsString())
+                    : BackpressurePolicy.BLOCK;
+            executor.checkBackpressure("The " + ring.getKey() + " ring", whenFull);
+            bus.enableBroadcastRing(type.asSubclass(Broadcast.class), capacity, whenFull);
+        }
+    }
+
+    /**
+     * Applies the optional "DispatchPolicies" section of the configuration, mapping event
+     * names to {@link DispatchPolicy} names, e.g. {@code {"DetectObjectsEvent": "LEAST_QUEUED"}}.
+     *
+     * @param config The parsed configuration file.
+     * @param bus    The configurator of the message bus.
+     */
+    @SuppressWarnings("unchecked")
+    private static void configureDispatchPolicies(JsonObject config, BusConfigurator bus) {
+        if (!config.has("DispatchPolicies"))
+            return;
+        for (Map.Entry<String, JsonElement> entry : config.getAsJsonObject("DispatchPolicies").entrySet()) {
+            Class<? extends Message> type = messageType(entry.getKey());
+            if (!Event.class.isAssignableFrom(type))
+                throw new IllegalArgumentException("Not an event: " + entry.getKey());
+            DispatchPolicy policy = DispatchPolicy.valueOf(entry.getValue().getAsString());
+            bus.setDispatchPolicy((Class<? extends Event<?>>) type, policy);
+        }
+    }
+
+    private static Class<? extends Message> messageType(String name) {
+        try {
+            return Class.forName("bgu.spl.mics.application.messages." + name).asSubclass(Message.class);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IllegalArgumentException("Unknown message type in configuration: " + name, e);
         }
     }
 }
\ No newline at end of file
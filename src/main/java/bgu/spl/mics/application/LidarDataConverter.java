@@ -0,0 +1,31 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.application.objects.MappedCloudPoints;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Converts a LiDAR data file from JSON to the binary format that the LiDAR database
+ * memory-maps. Point the configuration's "lidars_data_path" at the binary file to use it; the
+ * database recognizes it by its contents.
+ */
+public class LidarDataConverter {
+    /**
+     * @param args The JSON LiDAR data file, then the binary file to write.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: LidarDataConverter <lidar_data.json> <lidar_data.bin>");
+            return;
+        }
+        long begin = System.nanoTime();
+        try {
+            int entries = MappedCloudPoints.convert(args[0], args[1]);
+            System.out.printf("Converted %d entries to %s (%.1f MB) in %d ms%n", entries, args[1],
+                    new File(args[1]).length() / 1e6, (System.nanoTime() - begin) / 1_000_000);
+        } catch (IOException e) {
+            System.err.println("Error converting the LiDAR data: " + e.getMessage());
+        }
+    }
+}
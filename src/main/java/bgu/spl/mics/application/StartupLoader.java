@@ -0,0 +1,189 @@
+package bgu.spl.mics.application;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the sensor data files concurrently on a bounded pool, so startup takes about as long
+ * as the slowest file instead of the sum of all of them.
+ * <p>
+ * Each load has a step that uses its data, typically starting the services that read it. The
+ * steps run on the thread calling {@link #awaitAll()}, one at a time and as soon as their own
+ * load is done, whichever order the loads finish in. The first load that fails stops the rest
+ * and is thrown from {@link #awaitAll()}: as an IOException, or as the Error itself (such as
+ * running out of memory). Each load is timed, for {@link #report}.
+ */
+final class StartupLoader {
+
+    /**
+     * Reads one data file.
+     */
+    interface Load<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Uses the data of a finished load, on the thread calling {@link #awaitAll()}.
+     */
+    interface Step<T> {
+        void accept(T data) throws InterruptedException;
+    }
+
+    /**
+     * How long one load took.
+     */
+    static final class Timing {
+        private final String name;
+        private final String file;
+        private final long nanos;
+
+        private Timing(String name, String file, long nanos) {
+            this.name = name;
+            this.file = file;
+            this.nanos = nanos;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getFile() {
+            return file;
+        }
+
+        long getMillis() {
+            return nanos / 1_000_000;
+        }
+    }
+
+    // A step bound to its load's data.
+    private interface Ready {
+        void run() throws InterruptedException;
+    }
+
+    // A finished load: the step to run with its data, or why it failed.
+    private static final class Done {
+        final Timing timing;
+        final Ready step;
+        final IOException failure;
+        final Error error;
+
+        Done(Timing timing, Ready step, IOException failure, Error error) {
+            this.timing = timing;
+            this.step = step;
+            this.failure = failure;
+            this.error = error;
+        }
+    }
+
+    private final ExecutorService pool;
+    private final BlockingQueue<Done> done = new LinkedBlockingQueue<>();
+    private final List<Timing> timings = new ArrayList<>();
+    private final long begin = System.nanoTime();
+    private int submitted;
+    private long elapsed;
+
+    /**
+     * @param threads The most files loaded at the same time.
+     */
+    StartupLoader(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Loader pool needs at least one thread: " + threads);
+        this.pool = Executors.newFixedThreadPool(threads, daemonThreads());
+    }
+
+    /**
+     * Starts loading a file on the pool.
+     *
+     * @param name What the file holds, for the report and errors.
+     * @param file The file read.
+     * @param load Reads the file.
+     * @param step Uses the data, once it is loaded.
+     */
+    <T> void submit(String name, String file, Load<T> load, Step<T> step) {
+        submitted++;
+        pool.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                T data = load.run();
+                done.add(new Done(new Timing(name, file, System.nanoTime() - start), () -> step.accept(data), null, null));
+            } catch (IOException e) {
+                failed(name, file, start, e);
+            } catch (UncheckedIOException e) {
+                failed(name, file, start, e.getCause());
+            } catch (RuntimeException e) { // A Gson parse error
+                failed(name, file, start, new IOException(e.toString(), e));
+            } catch (Error e) { // Handed to awaitAll as it is, which must not wait forever for this load
+                done.add(new Done(new Timing(name, file, System.nanoTime() - start), null, null, e));
+            }
+        });
+    }
+
+    private void failed(String name, String file, long start, IOException cause) {
+        done.add(new Done(new Timing(name, file, System.nanoTime() - start), null,
+                new IOException("Failed to load the " + name + ": " + cause.getMessage(), cause), null));
+    }
+
+    /**
+     * Runs the step of each load as the load finishes, until all of them have run, then
+     * releases the pool.
+     *
+     * @throws IOException If a load failed; the loads still running are interrupted and their
+     *                     steps never run.
+     * @throws Error       If a load threw one, unwrapped; the other loads are stopped the same way.
+     */
+    void awaitAll() throws IOException, InterruptedException {
+        try {
+            for (int remaining = submitted; remaining > 0; remaining--) {
+                Done next = done.take();
+                if (next.error != null)
+                    throw next.error;
+                if (next.failure != null)
+                    throw next.failure;
+                timings.add(next.timing);
+                next.step.run();
+            }
+            elapsed = System.nanoTime() - begin;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return The time of each load, in the order they finished.
+     */
+    List<Timing> getTimings() {
+        return Collections.unmodifiableList(timings);
+    }
+
+    /**
+     * Prints the time of each load, and how long all of them took together.
+     */
+    void report(PrintStream out) {
+        long total = 0;
+        for (Timing timing : timings) {
+            out.printf("Loaded the %s from %s in %d ms%n", timing.getName(), timing.getFile(), timing.getMillis());
+            total += timing.getMillis();
+        }
+        out.printf("Sensor data ready in %d ms (%d ms of loading)%n", elapsed / 1_000_000, total);
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, "sensor-loader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
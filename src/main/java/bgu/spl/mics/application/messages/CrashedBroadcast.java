@@ -1,9 +1,10 @@
 package bgu.spl.mics.application.messages;
 
 import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.ControlMessage;
 import bgu.spl.mics.application.objects.ErrorObject;
 
-public class CrashedBroadcast<T> implements Broadcast {
+public class CrashedBroadcast<T> implements Broadcast, ControlMessage {
     private String senderID;
     private String errorMessage;
 
@@ -1,13 +1,14 @@
 package bgu.spl.mics.application.messages;
 import java.util.*;
 
-import bgu.spl.mics.Event;
+import bgu.spl.mics.KeyedEvent;
 import bgu.spl.mics.application.objects.Camera;
 import bgu.spl.mics.application.objects.DetectedObject;
 import bgu.spl.mics.application.objects.StampedDetectedObjects;
 
-public class DetectObjectsEvent implements Event<DetectedObject> {
+public class DetectObjectsEvent implements KeyedEvent<DetectedObject> {
     private final StampedDetectedObjects stampedDetectedObjects;
+    private final String camera; // The sensor that took the frame, or null if unknown
 
     /**
      * Constructor to initialize a DetectObjectsEvent.
@@ -17,6 +18,27 @@ public class DetectObjectsEvent implements Event<DetectedObject> {
      */
     public DetectObjectsEvent(List<DetectedObject> detectedObjects, int time) {
         stampedDetectedObjects = new StampedDetectedObjects(time, detectedObjects);
+        camera = null;
+    }
+
+    /**
+     * Constructor for sending a camera frame as is.
+     *
+     * @param stampedDetectedObjects The frame: the objects detected and the time of detection.
+     */
+    public DetectObjectsEvent(StampedDetectedObjects stampedDetectedObjects) {
+        this(null, stampedDetectedObjects);
+    }
+
+    /**
+     * Constructor for sending a camera frame as is, routed by the camera that took it.
+     *
+     * @param camera                 The name of the camera, e.g. "Camera1".
+     * @param stampedDetectedObjects The frame: the objects detected and the time of detection.
+     */
+    public DetectObjectsEvent(String camera, StampedDetectedObjects stampedDetectedObjects) {
+        this.camera = camera;
+        this.stampedDetectedObjects = stampedDetectedObjects;
     }
     /**
      * Retrieves the list of detected objects.
@@ -39,6 +61,19 @@ public class DetectObjectsEvent implements Event<DetectedObject> {
         return stampedDetectedObjects;
     }
 
+    /**
+     * Routes the event by the camera that took the frame, so under consistent-hash dispatch all
+     * the frames of one camera reach the same LiDAR worker, which sees the same objects again
+     * and again. A frame whose camera is unknown is routed by its time, so it still has a key
+     * even when no object was detected.
+     *
+     * @return The name of the camera, or the time of the frame if the camera is unknown.
+     */
+    @Override
+    public Object getRoutingKey() {
+        return camera != null ? camera : Integer.valueOf(stampedDetectedObjects.getTime());
+    }
+
     @Override
     public String toString() {
         return "DetectObjectsEvent{" +
@@ -1,6 +1,7 @@
 package bgu.spl.mics.application.messages;
 
 import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.BroadcastFilter;
 
 public class TickBroadcast implements Broadcast {
     private final int currentTick;
@@ -12,4 +13,28 @@ public class TickBroadcast implements Broadcast {
     public int getCurrentTick() {
         return currentTick;
     }
+
+    /**
+     * A filter for subscribers that only care about every {@code period}-th tick.
+     *
+     * @param period The number of ticks between accepted ticks.
+     * @param first  The first accepted tick; earlier ticks are rejected.
+     * @return A filter accepting ticks first, first + period, first + 2 * period, ...
+     */
+    public static BroadcastFilter<TickBroadcast> every(int period, int first) {
+        if (period < 1)
+            throw new IllegalArgumentException("Tick period must be positive: " + period);
+        return tick -> tick.currentTick >= first && (tick.currentTick - first) % period == 0;
+    }
+
+    /**
+     * A filter for subscribers that only care about a range of ticks.
+     *
+     * @param first The first accepted tick.
+     * @param last  The last accepted tick, inclusive.
+     * @return A filter accepting the ticks from first to last.
+     */
+    public static BroadcastFilter<TickBroadcast> between(int first, int last) {
+        return tick -> tick.currentTick >= first && tick.currentTick <= last;
+    }
 }
@@ -1,8 +1,12 @@
 package bgu.spl.mics.application.messages;
-import bgu.spl.mics.Event;
+import bgu.spl.mics.KeyedEvent;
 import bgu.spl.mics.application.objects.TrackedObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-public class TrackedObjectEvent implements Event<TrackedObject> {
+import java.util.Map;
+public class TrackedObjectEvent implements KeyedEvent<TrackedObject> {
     private List<TrackedObject> trackedObjects;
 
     public TrackedObjectEvent(List<TrackedObject> trackedObjects) {
@@ -12,4 +16,37 @@ public class TrackedObjectEvent implements Event<TrackedObject> {
     public List<TrackedObject> getTrackedObjects() {
         return trackedObjects;
     }
+
+    /**
+     * Routes the event by the landmark its objects belong to, so under consistent-hash dispatch
+     * every observation of a landmark reaches the same fusion shard. A batch should hold a
+     * single landmark (see {@link #byLandmark()}); an empty one has no key and is routed like an
+     * unkeyed event.
+     *
+     * @return The id of the tracked objects, or null if there are none.
+     */
+    @Override
+    public Object getRoutingKey() {
+        return trackedObjects.isEmpty() ? null : trackedObjects.get(0).getId();
+    }
+
+    /**
+     * Splits the batch so that each event holds the objects of a single landmark, in their order.
+     *
+     * @return This event if all its objects share an id (or there are none), or else one event per id.
+     */
+    public List<TrackedObjectEvent> byLandmark() {
+        boolean mixed = false;
+        for (int i = 1; i < trackedObjects.size() && !mixed; i++)
+            mixed = !trackedObjects.get(i).getId().equals(trackedObjects.get(0).getId());
+        if (!mixed)
+            return Collections.singletonList(this);
+        Map<String, List<TrackedObject>> byId = new LinkedHashMap<>();
+        for (TrackedObject object : trackedObjects)
+            byId.computeIfAbsent(object.getId(), id -> new ArrayList<>(1)).add(object);
+        List<TrackedObjectEvent> events = new ArrayList<>(byId.size());
+        for (List<TrackedObject> objects : byId.values())
+            events.add(new TrackedObjectEvent(objects));
+        return events;
+    }
 }
@@ -1,10 +1,6 @@
 package bgu.spl.mics.application.objects;
-import com.google.gson.*;
-import com.google.gson.reflect.TypeToken;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.lang.reflect.Type;
 import java.net.StandardSocketOptions;
 import java.util.*;
 import java.util.List;
@@ -12,38 +8,45 @@ import java.util.List;
 /**
  * Represents a camera sensor on the robot.
  * Responsible for detecting objects in the environment.
+ * <p>
+ * The frames are read through {@link TimedRecords}, either all in memory or streamed through a
+ * window around the current tick; the camera behaves the same either way.
  */
 public class Camera {
     private final int id;
     private final int frequency;
     private STATUS status;
-    private final List<StampedDetectedObjects> detectedObjectsList;
+    private final TimedRecords<StampedDetectedObjects> frames; // By the time the frames were taken
 
     public Camera(int id, int frequency, STATUS status, String filename) throws IOException {
+        this(id, frequency, status, loadData(filename, id));
+    }
+
+    /**
+     * Creates a camera over frames that are already loaded.
+     *
+     * @param frames The camera's frames, in file order.
+     */
+    public Camera(int id, int frequency, STATUS status, List<StampedDetectedObjects> frames) {
+        this(id, frequency, status, new ResidentRecords<>(frames, StampedDetectedObjects::getTime));
+    }
+
+    /**
+     * Creates a camera over frames read by time, resident or streamed.
+     *
+     * @param frames The camera's frames.
+     */
+    public Camera(int id, int frequency, STATUS status, TimedRecords<StampedDetectedObjects> frames) {
         this.id = id;
         this.frequency = frequency;
         this.status = status;
-        this.detectedObjectsList = loadData(filename);
+        this.frames = frames;
         SensorsCounter.getInstance().increaseCameraSensors();
     }
 
-    private List<StampedDetectedObjects> loadData(String filePath) throws IOException {
-        Gson gson = new Gson();
-        List<StampedDetectedObjects> temp = new ArrayList<>();
-        try (FileReader reader = new FileReader(filePath)) {
-            // Parse the JSON as a generic object
-            JsonObject jsonObject = gson.fromJson(reader, JsonObject.class);
-            // Get the camera-specific data by key
-            JsonArray stampedArray = jsonObject.getAsJsonArray("camera"+id); // Adjust key if needed
-            // Convert the array to a list of StampedDetectedObjects
-            Type stampedListType = new TypeToken<List<StampedDetectedObjects>>() {}.getType();
-            temp = gson.fromJson(stampedArray, stampedListType);
-        } catch (IOException e) {
-            throw new IOException("Failed to read the file: " + filePath, e);
-        } catch (JsonSyntaxException | IllegalStateException e) {
-            throw new IOException("Invalid JSON structure in file: " + filePath, e);
-        }
-        return temp;
+    private static List<StampedDetectedObjects> loadData(String filePath, int id) throws IOException {
+        String key = "camera" + id;
+        return CameraDataLoader.load(filePath, Collections.singleton(key)).get(key);
     }
 
     public int getId() {
@@ -53,8 +56,8 @@ public class Camera {
     public int getFrequency() {
         return frequency;
     }
-    public List<StampedDetectedObjects> detectedObjectsList() {
-        return detectedObjectsList;
+    public TimedRecords<StampedDetectedObjects> getFrames() {
+        return frames;
     }
 
     public STATUS getStatus() {
@@ -65,21 +68,34 @@ public class Camera {
         this.status = status;
     }
 
-    public synchronized List<DetectedObject> getDetectedObjects(int currentTick){
-        List<DetectedObject> temp =  detectedObjectsList.stream()
-                .filter(stamped -> stamped.getTime() + frequency == currentTick)
-                .findFirst()
-                .map(StampedDetectedObjects::getDetectedObjects)
-                .orElse(Collections.emptyList());
+    public List<DetectedObject> getDetectedObjects(int currentTick){
+        StampedDetectedObjects frame = getFrame(currentTick);
+        return frame == null ? Collections.emptyList() : frame.getDetectedObjects();
+    }
+
+    /**
+     * Returns the frame the camera reports at {@code currentTick}, i.e. the first one taken
+     * {@code frequency} ticks earlier. For resident frames this is a single array read, so it
+     * takes the same time however long the recording is, and needs no lock.
+     *
+     * @param currentTick The current tick.
+     * @return The frame, or null if the camera reports nothing at this tick.
+     */
+    public StampedDetectedObjects getFrame(int currentTick){
+        List<StampedDetectedObjects> taken = frames.at(currentTick - frequency);
+        return taken.isEmpty() ? null : taken.get(0); // The first frame of a tick wins, as in a scan
+    }
 
-        return temp;
+    /**
+     * @return The first tick after {@code tick} the camera reports a frame at, or -1 if there is none.
+     */
+    public int nextReportTick(int tick){
+        int next = frames.nextTime(tick - frequency);
+        return next < 0 ? -1 : next + frequency;
     }
 
+    // Whether a frame is still to be reported at or after tick.
     public boolean checkIfLeft(int tick){
-        StampedDetectedObjects lastObjects = detectedObjectsList.get(detectedObjectsList.size() - 1);
-        if (lastObjects.getTime() + getFrequency() < tick){
-            return false;
-        }
-        return true;
+        return frames.nextTime(tick - frequency - 1) >= 0;
     }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package bgu.spl.mics.application.objects;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the camera data file, which holds the frames of every camera under its key
+ * ("camera" + id), in a single streaming pass. Only the frames of the requested cameras are
+ * built; the other arrays are skipped token by token, and the file is never held in memory as a
+ * whole, so loading many cameras costs one parse of the file rather than one per camera.
+ */
+public class CameraDataLoader {
+
+    private CameraDataLoader() {
+    }
+
+    /**
+     * @param filePath The camera data file.
+     * @param keys     The keys of the cameras to load.
+     * @return The frames of each requested camera, in file order. If a key appears twice, the
+     *         last array wins, as when the file is parsed as a whole.
+     * @throws IOException If the file cannot be read, is not a JSON object of frame arrays, or
+     *                     has no frames for one of {@code keys}.
+     */
+    public static Map<String, List<StampedDetectedObjects>> load(String filePath, Collection<String> keys) throws IOException {
+        Gson gson = new Gson();
+        Map<String, List<StampedDetectedObjects>> frames = new HashMap<>();
+        try (JsonReader reader = new JsonReader(new BufferedReader(new FileReader(filePath), 1 << 16))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (!keys.contains(key)) {
+                    reader.skipValue(); // Another camera's frames
+                    continue;
+                }
+                List<StampedDetectedObjects> cameraFrames = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext())
+                    cameraFrames.add(gson.fromJson(reader, StampedDetectedObjects.class)); // One frame at a time
+                reader.endArray();
+                frames.put(key, cameraFrames);
+            }
+            reader.endObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IOException("Invalid JSON structure in file: " + filePath, e);
+        } catch (IOException e) {
+            throw new IOException("Failed to read the file: " + filePath, e);
+        }
+        for (String key : keys) {
+            if (!frames.containsKey(key))
+                throw new IOException("No data for " + key + " in file: " + filePath);
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,157 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thins out the cloud points of a tracked object before the LiDAR worker sends it, since every
+ * point is transformed and merged by the fusion. Dense scans of a wall carry many points per
+ * object that add little to its landmark.
+ * <p>
+ * Two stages, each optional:
+ * <ul>
+ *     <li>A voxel grid: space is cut into cubes of {@code leafSize}, and the points in each cube
+ *     are replaced by their centroid. The centroids keep the order in which their cubes were
+ *     first reached, so consecutive scans of an object still line up point by point.</li>
+ *     <li>Random subsampling: a fraction {@code keepRatio} of the remaining points is kept, in
+ *     order. The choice depends only on the seed, the object and the time, not on which worker
+ *     or thread makes it, so runs are reproducible.</li>
+ * </ul>
+ * One downsampler is shared by all the workers; it counts the points it received and kept.
+ */
+public class CloudDownsampler {
+    private final double leafSize;
+    private final double cellsPerUnit; // 1 / leafSize, so finding a point's voxel needs no division
+    private final double keepRatio;
+    private final long seed;
+    private final LongAdder pointsIn = new LongAdder();
+    private final LongAdder pointsOut = new LongAdder();
+
+    /**
+     * @param leafSize  The edge of a voxel, in the units of the cloud points; 0 for no voxel grid.
+     * @param keepRatio The fraction of points kept by random subsampling, in (0, 1]; 1 for none.
+     * @param seed      The seed of the random subsampling.
+     */
+    public CloudDownsampler(double leafSize, double keepRatio, long seed) {
+        if (!(leafSize >= 0) || Double.isInfinite(leafSize) || !(keepRatio > 0 && keepRatio <= 1))
+            throw new IllegalArgumentException("Invalid downsampling: leafSize " + leafSize + ", keepRatio " + keepRatio);
+        this.leafSize = leafSize;
+        this.cellsPerUnit = leafSize > 0 ? 1 / leafSize : 0;
+        this.keepRatio = keepRatio;
+        this.seed = seed;
+    }
+
+    public double getLeafSize() {
+        return leafSize;
+    }
+
+    public double getKeepRatio() {
+        return keepRatio;
+    }
+
+    /**
+     * @param cloud The points of object {@code id} recorded at {@code time}; not modified.
+     * @return The downsampled points, or {@code cloud} itself if nothing was removed.
+     */
+    public PointCloud apply(PointCloud cloud, String id, int time) {
+        PointCloud result = cloud;
+        if (leafSize > 0 && result.size() > 1)
+            result = voxelGrid(result);
+        if (keepRatio < 1 && result.size() > 1)
+            result = subsample(result, new SplittableRandom(seed ^ ((long) id.hashCode() << 32 | (time & 0xffffffffL))));
+        pointsIn.add(cloud.size());
+        pointsOut.add(result.size());
+        return result;
+    }
+
+    /**
+     * @return The number of points given to {@link #apply} so far.
+     */
+    public long getPointsIn() {
+        return pointsIn.sum();
+    }
+
+    /**
+     * @return The number of points {@link #apply} returned so far.
+     */
+    public long getPointsOut() {
+        return pointsOut.sum();
+    }
+
+    /**
+     * @return The fraction of the points removed so far, from 0 (none) to 1.
+     */
+    public double getReduction() {
+        long in = getPointsIn();
+        return in == 0 ? 0 : 1 - (double) getPointsOut() / in;
+    }
+
+    // The centroid of each occupied voxel, found through an open-addressing table of voxel coordinates.
+    private PointCloud voxelGrid(PointCloud cloud) {
+        int n = cloud.size();
+        int mask = (Integer.highestOneBit(2 * n - 1) << 1) - 1; // At least twice as many slots as points
+        int[] slots = new int[mask + 1];
+        Arrays.fill(slots, -1);
+        int[] cells = new int[3 * n]; // The coordinates of each voxel, by voxel number
+        double[] sums = new double[3 * n];
+        int[] counts = new int[n];
+        int voxels = 0;
+        for (int i = 0; i < n; i++) {
+            double x = cloud.getX(i);
+            double y = cloud.getY(i);
+            double z = cloud.getZ(i);
+            int cx = cell(x);
+            int cy = cell(y);
+            int cz = cell(z);
+            int slot = ((cx * 73856093) ^ (cy * 19349663) ^ (cz * 83492791)) & mask;
+            int voxel;
+            while (true) {
+                voxel = slots[slot];
+                if (voxel < 0) {
+                    voxel = voxels++;
+                    slots[slot] = voxel;
+                    cells[3 * voxel] = cx;
+                    cells[3 * voxel + 1] = cy;
+                    cells[3 * voxel + 2] = cz;
+                    break;
+                }
+                if (cells[3 * voxel] == cx && cells[3 * voxel + 1] == cy && cells[3 * voxel + 2] == cz)
+                    break;
+                slot = (slot + 1) & mask;
+            }
+            sums[3 * voxel] += x;
+            sums[3 * voxel + 1] += y;
+            sums[3 * voxel + 2] += z;
+            counts[voxel]++;
+        }
+        if (voxels == n)
+            return cloud; // Every point has a voxel of its own
+        PointCloud centroids = new PointCloud(voxels);
+        for (int v = 0; v < voxels; v++)
+            centroids.add(sums[3 * v] / counts[v], sums[3 * v + 1] / counts[v], sums[3 * v + 2] / counts[v]);
+        return centroids;
+    }
+
+    private int cell(double coordinate) {
+        double scaled = coordinate * cellsPerUnit;
+        int truncated = (int) scaled; // Saturates far from the origin
+        return scaled < truncated ? truncated - 1 : truncated; // Math.floor, without its cost
+    }
+
+    // Selection sampling: exactly round(n * keepRatio) points, at least one, in their order.
+    private PointCloud subsample(PointCloud cloud, SplittableRandom random) {
+        int n = cloud.size();
+        int needed = (int) Math.max(1, Math.round(n * keepRatio));
+        if (needed >= n)
+            return cloud;
+        PointCloud kept = new PointCloud(needed);
+        for (int i = 0; i < n && needed > 0; i++) {
+            if (random.nextInt(n - i) < needed) {
+                kept.add(cloud.getX(i), cloud.getY(i), cloud.getZ(i));
+                needed--;
+            }
+        }
+        return kept;
+    }
+}
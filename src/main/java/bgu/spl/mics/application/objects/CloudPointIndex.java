@@ -0,0 +1,98 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A composite (time, id) index over the LiDAR recording. The entries of each time are kept in a
+ * bucket, in file order, with the position of each id's first entry and of the first ERROR
+ * entry, so a lookup answers the same question a scan of that time's entries would, in O(1).
+ * Built once and never modified.
+ */
+public class CloudPointIndex implements CloudPointLookup {
+
+    /**
+     * The entries recorded at one time, in file order.
+     */
+    public static class Bucket {
+        private final StampedCloudPoints[] entries;
+        private final Map<String, Integer> firstIndexById;
+        private final int firstError;
+
+        Bucket(List<StampedCloudPoints> atTime) {
+            this.entries = atTime.toArray(new StampedCloudPoints[0]);
+            this.firstIndexById = new HashMap<>();
+            int error = -1;
+            for (int i = 0; i < entries.length; i++) {
+                firstIndexById.putIfAbsent(entries[i].getId(), i);
+                if (error < 0 && entries[i].getId().equals("ERROR"))
+                    error = i;
+            }
+            this.firstError = error;
+        }
+
+        /**
+         * @return the position of the first entry for {@code id}, or -1 if there is none.
+         */
+        public int indexOf(String id) {
+            Integer index = firstIndexById.get(id);
+            return index == null ? -1 : index;
+        }
+
+        /**
+         * @return the position of the first ERROR entry, or -1 if there is none.
+         */
+        public int firstError() {
+            return firstError;
+        }
+
+        public StampedCloudPoints get(int index) {
+            return entries[index];
+        }
+    }
+
+    private final Bucket[] buckets; // buckets[time - firstTime], null for times with no entries
+    private final int firstTime;
+    private final Map<String, StampedCloudPoints> firstById;
+
+    public CloudPointIndex(List<StampedCloudPoints> cloudPoints) {
+        int first = Integer.MAX_VALUE;
+        int last = Integer.MIN_VALUE;
+        for (StampedCloudPoints stamped : cloudPoints) {
+            first = Math.min(first, stamped.getTime());
+            last = Math.max(last, stamped.getTime());
+        }
+        this.firstTime = cloudPoints.isEmpty() ? 0 : first;
+        int span = cloudPoints.isEmpty() ? 0 : last - first + 1;
+        // Group the entries by time, keeping file order within each time
+        List<List<StampedCloudPoints>> byTime = new ArrayList<>(span);
+        for (int t = 0; t < span; t++)
+            byTime.add(null);
+        this.firstById = new HashMap<>();
+        for (StampedCloudPoints stamped : cloudPoints) {
+            int slot = stamped.getTime() - firstTime;
+            if (byTime.get(slot) == null)
+                byTime.set(slot, new ArrayList<>());
+            byTime.get(slot).add(stamped);
+            firstById.putIfAbsent(stamped.getId(), stamped);
+        }
+        this.buckets = new Bucket[span];
+        for (int t = 0; t < span; t++) {
+            if (byTime.get(t) != null)
+                buckets[t] = new Bucket(byTime.get(t));
+        }
+    }
+
+    @Override
+    public Bucket bucket(int time) {
+        int slot = time - firstTime;
+        return slot >= 0 && slot < buckets.length ? buckets[slot] : null;
+    }
+
+    @Override
+    public StampedCloudPoints first(String id) {
+        return firstById.get(id);
+    }
+}
@@ -0,0 +1,30 @@
+package bgu.spl.mics.application.objects;
+
+/**
+ * (time, id) lookups over a LiDAR recording, as LiDAR workers track frames against it.
+ * Implemented by {@link CloudPointIndex} over the loaded entries, and by
+ * {@link MappedCloudPoints} over a memory-mapped binary recording.
+ */
+public interface CloudPointLookup {
+
+    /**
+     * @return the entries recorded at {@code time}, in file order, or null if there are none.
+     */
+    CloudPointIndex.Bucket bucket(int time);
+
+    /**
+     * @return the first entry for {@code id} at {@code time} in file order, or null.
+     */
+    default StampedCloudPoints get(String id, int time) {
+        CloudPointIndex.Bucket bucket = bucket(time);
+        if (bucket == null)
+            return null;
+        int index = bucket.indexOf(id);
+        return index < 0 ? null : bucket.get(index);
+    }
+
+    /**
+     * @return the first entry for {@code id} at any time in file order, or null.
+     */
+    StampedCloudPoints first(String id);
+}
@@ -11,7 +11,7 @@ public class ErrorObject<T> {
     private String faultySensor;
     private ConcurrentHashMap<String, StampedDetectedObjects> lastCamerasFrame;
     private ConcurrentHashMap<String, List<TrackedObject>> lastLidarFrames;
-    private List<Pose> poses;
+    private ArrayList<Pose> poses;
     private StatisticalFolder statistics;
     private List<LandMark> landMarks;
 
@@ -50,30 +50,24 @@ public class ErrorObject<T> {
         return lastCamerasFrame;
     }
 
+    // A plain put replaces the value in place; removing first would allocate a new node per frame.
     public void updateLastCamerasFrame(String s, StampedDetectedObjects stampedDetectedObjects) {
-        if(!lastCamerasFrame.containsKey(s)) {
-            lastCamerasFrame.put(s, stampedDetectedObjects);
-        }
-        else{
-            lastCamerasFrame.remove(s);
-            lastCamerasFrame.put(s, stampedDetectedObjects);
-        }
+        lastCamerasFrame.put(s, stampedDetectedObjects);
     }
 
     public void updateLastLiDarWorkerTrackersFrame(String s, List<TrackedObject> list) {
-        if(!lastLidarFrames.containsKey(s)) {
-            lastLidarFrames.put(s, list);
-        }
-        else{
-            lastLidarFrames.remove(s);
-            lastLidarFrames.put(s, list);
-        }
+        lastLidarFrames.put(s, list);
     }
 
     public void addPose(Pose pose) {
         poses.add(pose);
     }
 
+    // Sizes the pose history up front, so recording a pose per tick does not regrow it.
+    public void reservePoses(int count) {
+        poses.ensureCapacity(count);
+    }
+
     public List<LandMark> getLandMarks() {
         return landMarks;
     }
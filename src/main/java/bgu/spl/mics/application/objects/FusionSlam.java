@@ -10,7 +10,7 @@ import bgu.spl.mics.application.objects.LandMark;
 public class FusionSlam {
     // Fields
     private final List<LandMark> landmarks; // Represents the map of the environment
-    private final List<Pose> poses;     // Represents previous Poses needed for calculations
+    private final ArrayList<Pose> poses;     // Represents previous Poses needed for calculations
     private String basePath;
     private List<TrackedObject> trackedObjects;
 
@@ -54,8 +54,17 @@ public class FusionSlam {
         poses.add(pose);
     }
 
+    /**
+     * Sizes the pose history for {@code count} poses up front, so recording a pose per tick
+     * does not regrow it.
+     */
+    public void reservePoses(int count) {
+        poses.ensureCapacity(count);
+    }
+
     public Pose getPoseAtTime(int time) {
-        for (Pose pose : poses) {
+        for (int i = 0; i < poses.size(); i++) {
+            Pose pose = poses.get(i);
             if (time == pose.getTime()) {
                 return pose;
             }
@@ -74,7 +83,8 @@ public class FusionSlam {
     }
 
     public LandMark findLandmarkById(String id) {
-        for (LandMark landmark : landmarks) {
+        for (int i = 0; i < landmarks.size(); i++) {
+            LandMark landmark = landmarks.get(i);
             if (landmark.getId().equals(id)) {
                 return landmark;
             }
@@ -82,20 +92,20 @@ public class FusionSlam {
         return null;
     }
 
+    // Called for every pose, so it allocates nothing unless a tracked object is ready.
     public void processLandmarks() {
-        List<TrackedObject> waitList = new ArrayList<>();
-        for (TrackedObject obj : trackedObjects) {
+        if (trackedObjects.isEmpty())
+            return;
+        int waiting = 0; // Objects still waiting for their pose are compacted to the front
+        for (int i = 0; i < trackedObjects.size(); i++) {
+            TrackedObject obj = trackedObjects.get(i);
             Pose currentPose = getPoseAtTime(obj.getTime());
             if(currentPose == null) {
-                waitList.add(obj);
+                trackedObjects.set(waiting++, obj);
                 continue;
             }
-            List<CloudPoint> globalCoordinates = new ArrayList<>();
             // Transform local coordinates to global coordinates
-            for (CloudPoint localPoint : obj.getCoordinates()) {
-                CloudPoint globalPoint = transformToGlobal(localPoint, currentPose);
-                globalCoordinates.add(globalPoint);
-            }
+            PointCloud globalCoordinates = transformToGlobal(obj.getPoints(), currentPose);
             // Update or create a landmark
             LandMark existingLandmark = findLandmarkById(obj.getId());
 
@@ -107,12 +117,13 @@ public class FusionSlam {
                 StatisticalFolder.getInstance().addStatisticalLandMark(temp.getId(),temp);
             } else {
                 // Update existing landmark
-                List<CloudPoint> updatedCoordinates = mergeCoordinates(existingLandmark.getCoordinates(), globalCoordinates);
+                PointCloud updatedCoordinates = mergeCoordinates(existingLandmark.getPoints(), globalCoordinates);
                 existingLandmark.updateCoordinates(updatedCoordinates);
                 StatisticalFolder.getInstance().addStatisticalLandMark(existingLandmark.getId(),existingLandmark);
             }
         }
-        trackedObjects = waitList;
+        for (int i = trackedObjects.size() - 1; i >= waiting; i--)
+            trackedObjects.remove(i);
     }
 
     public synchronized CloudPoint transformToGlobal(CloudPoint localPoint, Pose currentPose) {
@@ -124,6 +135,34 @@ public class FusionSlam {
         return new CloudPoint(globalX, globalY);
     }
 
+    // transformToGlobal over a whole packed cloud; z is carried over unchanged.
+    public synchronized PointCloud transformToGlobal(PointCloud localPoints, Pose currentPose) {
+        double theta = Math.toRadians(currentPose.getYaw());
+        double cosTheta = Math.cos(theta);
+        double sinTheta = Math.sin(theta);
+        PointCloud global = new PointCloud(localPoints.size());
+        for (int i = 0; i < localPoints.size(); i++) {
+            double x = localPoints.getX(i);
+            double y = localPoints.getY(i);
+            double globalX = (cosTheta * x) - (sinTheta * y) + (currentPose.getX());
+            double globalY = (sinTheta * x) + (cosTheta * y) + (currentPose.getY());
+            global.add(globalX, globalY, localPoints.getZ(i));
+        }
+        return global;
+    }
+
+    // mergeCoordinates over packed clouds; z is averaged like x and y.
+    public synchronized PointCloud mergeCoordinates(PointCloud oldCoords, PointCloud newCoords) {
+        int size = Math.min(oldCoords.size(), newCoords.size());
+        PointCloud merged = new PointCloud(size);
+        for (int i = 0; i < size; i++) {
+            merged.add((oldCoords.getX(i) + newCoords.getX(i)) / 2,
+                    (oldCoords.getY(i) + newCoords.getY(i)) / 2,
+                    (oldCoords.getZ(i) + newCoords.getZ(i)) / 2);
+        }
+        return merged;
+    }
+
     public synchronized List<CloudPoint> mergeCoordinates(List<CloudPoint> oldCoords, List<CloudPoint> newCoords) {
         // Simple averaging for refinement
         List<CloudPoint> merged = new ArrayList<>();
@@ -1,5 +1,6 @@
 package bgu.spl.mics.application.objects;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 import java.io.FileReader;
 import java.io.IOException;
@@ -8,28 +9,52 @@ import java.util.*;
 /**
  * Represents the robot's GPS and IMU system.
  * Provides information about the robot's position and movement.
+ * <p>
+ * The poses are read through {@link TimedRecords}, either all loaded up front or streamed
+ * through a window around the current tick.
  */
 public class GPSIMU {
     private int currentTick;
     private STATUS status;
-    private List<Pose> poseList;
+    private final List<Pose> poseList; // Null when the poses are streamed; guarded by this
+    private volatile TimedRecords<Pose> poses; // Null after addPose, until the next lookup rebuilds it
 
-    public GPSIMU(String filePath) {
+    /**
+     * Loads all the poses from the file.
+     *
+     * @throws IOException If the file cannot be read or is not a JSON array of poses.
+     */
+    public GPSIMU(String filePath) throws IOException {
         this.currentTick = 0;
         this.status = STATUS.DOWN;
-        this.poseList = new ArrayList<>();
-        loadData(filePath);
+        this.poseList = loadData(filePath);
+        this.poses = new ResidentRecords<>(poseList, Pose::getTime);
+    }
+
+    /**
+     * Streams the poses from the file, keeping only {@code window} around the current tick in memory.
+     *
+     * @throws IOException If the file cannot be opened.
+     */
+    public GPSIMU(String filePath, SensorWindow window) throws IOException {
+        this.currentTick = 0;
+        this.status = STATUS.DOWN;
+        this.poseList = null;
+        this.poses = new WindowedRecords<>(JsonRecordReader.source(filePath, Pose.class), Pose::getTime, window);
     }
 
     //auxillary function to read all poses from json
-    private void loadData(String filePath) {
+    private static List<Pose> loadData(String filePath) throws IOException {
         Gson gson = new Gson();
         try(FileReader reader = new FileReader(filePath)){
             Type poseListType = new TypeToken<List<Pose>>(){}.getType();
-            poseList = gson.fromJson(reader, poseListType);
+            List<Pose> loaded = gson.fromJson(reader, poseListType);
+            return loaded == null ? new ArrayList<>() : loaded; // An empty file has no poses
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid JSON structure in file: " + filePath, e);
         } catch (IOException e) {
+            throw new IOException("Failed to read the file: " + filePath, e);
         }
-
     }
 
     public int getCurrentTick() {
@@ -48,19 +73,35 @@ public class GPSIMU {
         this.status = status;
     }
 
-    public List<Pose> getPoseList() {
-        return poseList;
+    /**
+     * @return The poses by time, whether they are loaded or streamed.
+     */
+    public TimedRecords<Pose> getPoses() {
+        TimedRecords<Pose> indexed = poses;
+        return indexed != null ? indexed : index();
+    }
+
+    // Rebuilds the index dropped by addPose, under the lock addPose holds.
+    private synchronized TimedRecords<Pose> index() {
+        if (poses == null)
+            poses = new ResidentRecords<>(poseList, Pose::getTime);
+        return poses;
     }
 
     public Pose getPose(int time) {
-        for(Pose p:poseList){
-            if(p.getTime()==time)
-                return p;
-        }
-        return null;
+        List<Pose> atTime = getPoses().at(time);
+        return atTime.isEmpty() ? null : atTime.get(0); // The first pose of a tick, as in a scan
     }
 
-    public void addPose(Pose pose) {
+    /**
+     * Adds a pose to loaded poses.
+     *
+     * @throws UnsupportedOperationException If the poses are streamed from their file.
+     */
+    public synchronized void addPose(Pose pose) {
+        if (poseList == null)
+            throw new UnsupportedOperationException("The poses are streamed, not loaded");
         poseList.add(pose);
+        poses = null; // Indexed again on the next lookup, so adding many poses indexes them once
     }
 }
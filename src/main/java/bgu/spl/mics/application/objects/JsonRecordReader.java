@@ -0,0 +1,86 @@
+package bgu.spl.mics.application.objects;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Reads the entries of a JSON array one at a time, for a {@link WindowedRecords}: the whole
+ * file when it is an array (the pose and LiDAR data files), or the array under one key of a
+ * top-level object (a camera's frames in the camera data file). Only the current entry is held
+ * in memory.
+ *
+ * @param <T> The type of the entries.
+ */
+public class JsonRecordReader<T> implements WindowedRecords.Reader<T> {
+    private final Gson gson;
+    private final Class<T> type;
+    private final String filePath;
+    private final JsonReader reader;
+    private boolean ended;
+
+    private JsonRecordReader(String filePath, String key, Class<T> type) throws IOException {
+        this.gson = new Gson();
+        this.type = type;
+        this.filePath = filePath;
+        this.reader = new JsonReader(new BufferedReader(new FileReader(filePath), 1 << 16));
+        try {
+            if (key != null) {
+                reader.beginObject();
+                while (reader.hasNext() && !reader.nextName().equals(key))
+                    reader.skipValue(); // Another camera's frames
+                if (reader.peek() != JsonToken.BEGIN_ARRAY)
+                    throw new IOException("No data for " + key + " in file: " + filePath);
+            }
+            reader.beginArray();
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        } catch (JsonParseException | IllegalStateException e) {
+            reader.close();
+            throw new IOException("Invalid JSON structure in file: " + filePath, e);
+        }
+    }
+
+    /**
+     * @param filePath A file holding a JSON array of entries.
+     * @param type     The type of the entries.
+     */
+    public static <T> WindowedRecords.Source<T> source(String filePath, Class<T> type) {
+        return () -> new JsonRecordReader<>(filePath, null, type);
+    }
+
+    /**
+     * @param filePath A file holding a JSON object of entry arrays.
+     * @param key      The key of the array to read.
+     * @param type     The type of the entries.
+     */
+    public static <T> WindowedRecords.Source<T> source(String filePath, String key, Class<T> type) {
+        return () -> new JsonRecordReader<>(filePath, key, type);
+    }
+
+    @Override
+    public T next() throws IOException {
+        if (ended)
+            return null;
+        try {
+            if (!reader.hasNext()) {
+                ended = true;
+                return null;
+            }
+            return gson.fromJson(reader, type); // One entry at a time
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IOException("Invalid JSON structure in file: " + filePath, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
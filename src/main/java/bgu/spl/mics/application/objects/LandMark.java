@@ -1,4 +1,6 @@
 package bgu.spl.mics.application.objects;
+import com.google.gson.annotations.JsonAdapter;
+
 import java.util.*;
 /**
  * Represents a landmark in the environment map.
@@ -7,9 +9,14 @@ import java.util.*;
 public class LandMark {
     private final String id;
     private final String description;
-    private List<CloudPoint> coordinates;
+    @JsonAdapter(PointCloud.OutputAdapter.class)
+    private PointCloud coordinates;
 
     public LandMark(String id, String description, List<CloudPoint> coordinates) {
+        this(id, description, PointCloud.of(coordinates));
+    }
+
+    public LandMark(String id, String description, PointCloud coordinates) {
         this.id = id;
         this.description = description;
         this.coordinates = coordinates;
@@ -23,9 +30,16 @@ public class LandMark {
         return description;
     }
     public void updateCoordinates(List<CloudPoint> newCoordinates) {
+        coordinates= PointCloud.of(newCoordinates);
+    }
+    public void updateCoordinates(PointCloud newCoordinates) {
         coordinates= newCoordinates;
     }
+    // A read-only view of the points; getPoints() reads them without creating CloudPoints.
     public List<CloudPoint> getCoordinates() {
+        return coordinates.asList();
+    }
+    public PointCloud getPoints() {
         return coordinates;
     }
 }
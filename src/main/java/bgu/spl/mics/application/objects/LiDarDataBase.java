@@ -4,28 +4,45 @@ import java.util.*;
 import java.io.FileReader;
 import java.io.IOException;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 import java.lang.reflect.Type;
 
 /**
  * LiDarDataBase is a singleton class responsible for managing LiDAR data.
  * It provides access to cloud point data and other relevant information for tracked objects.
+ * <p>
+ * The data never changes after it is loaded: the database is built completely in its
+ * constructor, kept in final fields and published through a volatile reference, so any number
+ * of LiDAR workers read it in parallel without locking.
+ * <p>
+ * The data file is either the JSON recording, which is parsed and indexed as a whole, or a
+ * binary one written by {@link MappedCloudPoints#convert}, which is memory-mapped and read in
+ * place. The binary file is recognized by its contents, whatever its name. A JSON recording
+ * too large to load can instead be streamed through a window around the current tick (see
+ * {@link WindowedRecords}).
  */
 public class LiDarDataBase {
-    private final String filePath;
-    private final List<StampedCloudPoints> cloudPoints;
+    private final CloudPointLookup index; // (time, id) lookups without scanning the cloud points
 
-    private LiDarDataBase(String filePath) throws IOException {
-        this.filePath = filePath;
-        cloudPoints = loadData(filePath);
+    private LiDarDataBase(String filePath, SensorWindow window) throws IOException {
+        if (MappedCloudPoints.isBinary(filePath)) {
+            index = MappedCloudPoints.open(filePath);
+        } else if (window != null) {
+            index = new WindowedCloudPoints(new WindowedRecords<>(
+                    JsonRecordReader.source(filePath, StampedCloudPoints.class), StampedCloudPoints::getTime, window));
+        } else {
+            index = new CloudPointIndex(loadData(filePath));
+        }
     }
 
     private static class LidarDataSingletonHolder {
-        private static LiDarDataBase instance;
+        private static volatile LiDarDataBase instance; // Written once, fully built
 
-        private static void initialize(String filePath) throws IOException {
+        // Loads the database on the first call; later calls keep the first one, whatever their path.
+        private static synchronized void initialize(String filePath, SensorWindow window) throws IOException {
             if (instance == null) {
-                instance = new LiDarDataBase(filePath);
+                instance = new LiDarDataBase(filePath, window);
             }
         }
     }
@@ -36,7 +53,22 @@ public class LiDarDataBase {
      * @return The singleton instance of LiDarDataBase.
      */
     public static LiDarDataBase getInstance(String filePath) throws IOException {
-        LidarDataSingletonHolder.initialize(filePath);
+        return getInstance(filePath, null);
+    }
+
+    /**
+     * Returns the singleton instance of LiDarDataBase, streaming a JSON data file through a window.
+     *
+     * @param filePath The path to the LiDAR data file.
+     * @param window   The times to keep in memory around the current tick, or null to load the
+     *                 whole file. Ignored for a binary file, which is mapped.
+     * @return The singleton instance of LiDarDataBase.
+     */
+    public static LiDarDataBase getInstance(String filePath, SensorWindow window) throws IOException {
+        LiDarDataBase instance = LidarDataSingletonHolder.instance;
+        if (instance != null)
+            return instance; // Already loaded; no lock needed
+        LidarDataSingletonHolder.initialize(filePath, window);
         return LidarDataSingletonHolder.instance;
     }
 
@@ -50,35 +82,26 @@ public class LiDarDataBase {
         try(FileReader reader = new FileReader(filePath)){
             Type stamptedListType = new TypeToken<List<StampedCloudPoints>>(){}.getType();
             temp = gson.fromJson(reader, stamptedListType);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid JSON structure in file: " + filePath, e);
         } catch (IOException e){
-            throw new IOException("didnt read the file");
+            throw new IOException("Failed to read the file: " + filePath, e);
         }
-        return temp;
+        return temp == null ? new ArrayList<>() : temp; // An empty file has no cloud points
     }
 
-    public synchronized StampedCloudPoints getCloudPoints(String id) {
-        for (StampedCloudPoints stamped : cloudPoints) {
-            if (stamped.getId().equals(id)) {
-                return stamped;
-            }
-        }
-        return null;
+    public StampedCloudPoints getCloudPoints(String id) {
+        return index.first(id);
     }
-    public synchronized StampedCloudPoints getCloudPoints(String id, int time) {
-        for (StampedCloudPoints stamped : cloudPoints) {
-            if (stamped.getId().equals(id) && stamped.getTime() == time) {
-                return stamped;
-            }
-        }
-        return null;
+    public StampedCloudPoints getCloudPoints(String id, int time) {
+        return index.get(id, time);
     }
 
     /**
-     * Retrieves all cloud points in the database.
-     *
-     * @return A list of all StampedCloudPoints.
+     * @return The (time, id) lookups over the cloud points: an index built when the JSON file was
+     *         loaded, or the mapped binary file.
      */
-    public synchronized List<StampedCloudPoints> getCloudPoints() {
-        return new ArrayList<>(cloudPoints);
+    public CloudPointLookup getIndex() {
+        return index;
     }
 }
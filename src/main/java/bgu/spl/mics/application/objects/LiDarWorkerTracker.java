@@ -11,6 +11,7 @@ public class LiDarWorkerTracker {
     private final int frequency;
     private STATUS status;
     private List<TrackedObject> lastTrackedObjects;
+    private CloudDownsampler downsampler; // Null to send the points as recorded
 
     public LiDarWorkerTracker(int id, int frequency, STATUS status, List<TrackedObject> lastTrackedObjects) {
         this.id = id;
@@ -44,6 +45,19 @@ public class LiDarWorkerTracker {
         return lastTrackedObjects;
     }
 
+    /**
+     * Sets the downsampling applied to the points of each tracked object, before it is sent.
+     *
+     * @param downsampler The downsampling, possibly shared with other workers, or null for none.
+     */
+    public void setDownsampler(CloudDownsampler downsampler) {
+        this.downsampler = downsampler;
+    }
+
+    public CloudDownsampler getDownsampler() {
+        return downsampler;
+    }
+
     public List<TrackedObject> processDetectedObjects(List<DetectedObject> detectedObjects, int currentTick) {
         // Simulate processing and return tracked objects.
         List<TrackedObject> trackedObjects = new ArrayList<>();
@@ -53,15 +67,12 @@ public class LiDarWorkerTracker {
                 StampedCloudPoints stampedPoints = ds.getCloudPoints(detected.getId(), currentTick);
                 // Retrieve the raw cloud points (List<List<Double>>)
                 if (stampedPoints != null) {
-                    List<List<Double>> rawCloudPoints = stampedPoints.getCloudPoints();
-                    // Convert raw cloud points to a list of CloudPoint
-                    List<CloudPoint> cloudPoints = convertToCloudPoints(rawCloudPoints);
-                    // Create a new TrackedObject using the cloud points
+                    // Create a new TrackedObject over the packed cloud points, downsampled if configured
                     TrackedObject tracked = new TrackedObject(
                             detected.getId(),
                             stampedPoints.getTime(),
                             detected.getDescription(),
-                            cloudPoints
+                            points(detected.getId(), stampedPoints)
                     );
                     trackedObjects.add(tracked);
                 }
@@ -72,35 +83,42 @@ public class LiDarWorkerTracker {
         return trackedObjects;
     }
 
-    private List<CloudPoint> convertToCloudPoints(List<List<Double>> rawCloudPoints) {
-        List<CloudPoint> cloudPoints = new ArrayList<>();
-        for (List<Double> point : rawCloudPoints) {
-            if (point.size() >= 2) { // Ensure there are at least x and y coordinates
-                cloudPoints.add(new CloudPoint(point.get(0), point.get(1)));
-            }
-        }
-        return cloudPoints;
+    public List<TrackedObject> createTrackedObjects(StampedDetectedObjects stampedDetected) {
+        return createTrackedObjects(stampedDetected, LiDarDataBase.getInstance().getIndex());
     }
 
-    public List<TrackedObject> createTrackedObjects(StampedDetectedObjects stampedDetected) {
-        // For each object, we search in the database for the matching cloudPoint according to the time. if the IDs match,
-        // we create a new TrackedObject, add it to result and to our main recording list but if the cloudPoint is an ERROR, we return null.
+    /**
+     * Tracks the objects of a frame against the cloud points recorded at the frame's time.
+     * An object is tracked with the first entry of its id at that time. If an ERROR entry comes
+     * first in file order, or the id has no entry and there is an ERROR entry, the LiDAR failed
+     * and null is returned. Objects with no entry at that time are otherwise skipped.
+     *
+     * @param stampedDetected The frame to track.
+     * @param index           The cloud points to track against.
+     * @return The tracked objects, or null if the LiDAR reported an error for this frame.
+     */
+    public List<TrackedObject> createTrackedObjects(StampedDetectedObjects stampedDetected, CloudPointLookup index) {
         List<TrackedObject> result = new ArrayList<>();
+        CloudPointIndex.Bucket atTime = index.bucket(stampedDetected.getTime());
+        if (atTime == null)
+            return result; // Nothing recorded at this time
+        int error = atTime.firstError();
         for (DetectedObject o: stampedDetected.getDetectedObjects()){
-            for (StampedCloudPoints cp: LiDarDataBase.getInstance().getCloudPoints()){
-                if (stampedDetected.getTime() == cp.getTime()){
-                    if (o.getId().equals(cp.getId())){
-                        List<CloudPoint> converted = convertToCloudPoints(cp.getCloudPoints()); // THE CHANGE!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
-                        TrackedObject temp = new TrackedObject(o.getId(), cp.getTime(), o.getDescription(), converted); //double check what time we need to send!
-                        result.add(temp);
-                        break;
-                    }
-                    else if (cp.getId().equals("ERROR")){
-                        return null;
-                    }
-                }
+            int found = atTime.indexOf(o.getId());
+            if (error >= 0 && (found < 0 || error < found))
+                return null; // The scan of this time's entries reaches the ERROR entry first
+            if (found >= 0) {
+                StampedCloudPoints cp = atTime.get(found);
+                result.add(new TrackedObject(o.getId(), cp.getTime(), o.getDescription(), points(o.getId(), cp)));
             }
         }
         return result;
     }
+
+    // The points to track an object with: the recorded ones, shared rather than copied since
+    // nothing modifies them after loading, or a downsampled copy.
+    private PointCloud points(String id, StampedCloudPoints recorded) {
+        PointCloud points = recorded.getCloudPoints();
+        return downsampler == null ? points : downsampler.apply(points, id, recorded.getTime());
+    }
 }
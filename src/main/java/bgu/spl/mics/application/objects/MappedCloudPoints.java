@@ -0,0 +1,318 @@
+package bgu.spl.mics.application.objects;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A LiDAR recording in a compact binary file, memory-mapped and read in place. Opening the file
+ * reads only its header and its ids; a lookup decodes just the entries it returns, straight from
+ * the mapping, so startup does not grow with the recording and the operating system's page
+ * cache keeps the file's pages between runs. The mapping is read-only and only read with
+ * absolute reads, so any number of LiDAR workers use it in parallel without locking.
+ * <p>
+ * {@link #convert} writes the file from the JSON layout of the LiDAR data file. All numbers are
+ * big-endian:
+ * <pre>
+ *   header   magic, version, entries, ids, firstTime, span (ints),
+ *            entry table, time order and id table offsets (longs)
+ *   points   x, y, z doubles of every entry, in file order
+ *   entries  id index, time, points offset (long), point count; in file order
+ *   order    the entries' positions sorted by time, keeping file order within a time
+ *   slots    span + 1 positions into order: the entries of time firstTime + t are
+ *            order[slots[t]] to order[slots[t + 1]]
+ *   ids      the first entry of each id in file order, then the id's length and UTF-8 bytes
+ * </pre>
+ */
+public class MappedCloudPoints implements CloudPointLookup {
+    private static final int MAGIC = 0x4C494441; // "LIDA"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 6 * 4 + 3 * 8;
+    private static final int ENTRY_BYTES = 4 + 4 + 8 + 4;
+    private static final int CHUNK_SHIFT = 30; // Points are mapped in 1 GB chunks; a double never spans two
+
+    private final int entryCount;
+    private final int firstTime;
+    private final int span;
+    private final MappedByteBuffer[] points;
+    private final MappedByteBuffer tables; // Entries, order, slots and ids
+    private final long orderOffset; // Relative to the start of tables
+    private final long slotsOffset;
+    private final String[] ids;
+    private final Map<String, Integer> firstEntryById;
+
+    private MappedCloudPoints(FileChannel channel, String filePath) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // Keep reading until the header is complete or the file ends
+        }
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC)
+            throw new IOException("Not a binary LiDAR data file: " + filePath);
+        int version = header.getInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported binary LiDAR data version " + version + ": " + filePath);
+        entryCount = header.getInt();
+        int idCount = header.getInt();
+        firstTime = header.getInt();
+        span = header.getInt();
+        long entriesOffset = header.getLong();
+        orderOffset = header.getLong() - entriesOffset;
+        slotsOffset = orderOffset + 4L * entryCount;
+        long idsOffset = header.getLong() - entriesOffset;
+
+        long tablesBytes = channel.size() - entriesOffset;
+        if (tablesBytes > Integer.MAX_VALUE)
+            throw new IOException("The binary LiDAR data file's tables are too large to map: " + filePath);
+        tables = channel.map(FileChannel.MapMode.READ_ONLY, entriesOffset, tablesBytes);
+        points = new MappedByteBuffer[(int) ((entriesOffset + (1L << CHUNK_SHIFT) - 1) >>> CHUNK_SHIFT)];
+        for (int c = 0; c < points.length; c++) {
+            long start = (long) c << CHUNK_SHIFT;
+            points[c] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L << CHUNK_SHIFT, entriesOffset - start));
+        }
+
+        ids = new String[idCount];
+        firstEntryById = new HashMap<>();
+        int position = (int) idsOffset;
+        for (int i = 0; i < idCount; i++) {
+            int firstEntry = tables.getInt(position);
+            byte[] bytes = new byte[tables.getInt(position + 4)];
+            for (int b = 0; b < bytes.length; b++)
+                bytes[b] = tables.get(position + 8 + b);
+            ids[i] = new String(bytes, StandardCharsets.UTF_8);
+            firstEntryById.put(ids[i], firstEntry);
+            position += 8 + bytes.length;
+        }
+    }
+
+    /**
+     * Maps a binary LiDAR data file written by {@link #convert}.
+     *
+     * @param filePath The binary file.
+     * @return The mapped recording.
+     * @throws IOException If the file cannot be read or is not a binary LiDAR data file.
+     */
+    public static MappedCloudPoints open(String filePath) throws IOException {
+        // The mappings stay valid once the channel is closed
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "r"); FileChannel channel = file.getChannel()) {
+            return new MappedCloudPoints(channel, filePath);
+        }
+    }
+
+    /**
+     * @return Whether {@code filePath} starts like a binary LiDAR data file.
+     */
+    public static boolean isBinary(String filePath) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filePath))) {
+            return in.available() >= 4 && in.readInt() == MAGIC;
+        }
+    }
+
+    @Override
+    public CloudPointIndex.Bucket bucket(int time) {
+        long slot = (long) time - firstTime;
+        if (slot < 0 || slot >= span)
+            return null;
+        int start = tables.getInt((int) (slotsOffset + 4 * slot));
+        int end = tables.getInt((int) (slotsOffset + 4 * slot + 4));
+        if (start == end)
+            return null;
+        List<StampedCloudPoints> atTime = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++)
+            atTime.add(entry(tables.getInt((int) (orderOffset + 4L * i))));
+        return new CloudPointIndex.Bucket(atTime);
+    }
+
+    @Override
+    public StampedCloudPoints first(String id) {
+        Integer entry = firstEntryById.get(id);
+        return entry == null ? null : entry(entry);
+    }
+
+    /**
+     * @return A read-only view of every entry in file order, decoded from the mapping as it is read.
+     */
+    public List<StampedCloudPoints> asList() {
+        return new AbstractList<StampedCloudPoints>() {
+            @Override
+            public StampedCloudPoints get(int index) {
+                if (index < 0 || index >= entryCount)
+                    throw new IndexOutOfBoundsException("Entry " + index + " of " + entryCount);
+                return entry(index);
+            }
+
+            @Override
+            public int size() {
+                return entryCount;
+            }
+        };
+    }
+
+    private StampedCloudPoints entry(int entry) {
+        int position = entry * ENTRY_BYTES;
+        String id = ids[tables.getInt(position)];
+        int time = tables.getInt(position + 4);
+        long offset = tables.getLong(position + 8);
+        int count = tables.getInt(position + 16);
+        PointCloud cloud = new PointCloud(count);
+        for (int p = 0; p < count; p++, offset += 24)
+            cloud.add(pointAt(offset), pointAt(offset + 8), pointAt(offset + 16));
+        return new StampedCloudPoints(id, time, cloud);
+    }
+
+    private double pointAt(long offset) {
+        return points[(int) (offset >>> CHUNK_SHIFT)].getDouble((int) (offset & ((1L << CHUNK_SHIFT) - 1)));
+    }
+
+    /**
+     * Converts a LiDAR data file from its JSON layout to the binary one, in one streaming pass:
+     * the points are written as they are read, and only the entries' ids, times and offsets are
+     * kept in memory. Points with fewer than two coordinates are skipped and a missing z is 0,
+     * as when the JSON file is loaded.
+     *
+     * @param jsonPath   The LiDAR data file, an array of {"id", "time", "cloudPoints"} objects.
+     * @param binaryPath The binary file to write.
+     * @return The number of entries written.
+     * @throws IOException If the JSON file cannot be read or is not a LiDAR data file, or the
+     *                     binary file cannot be written.
+     */
+    public static int convert(String jsonPath, String binaryPath) throws IOException {
+        PointCloud.LidarFileAdapter adapter = new PointCloud.LidarFileAdapter();
+        Map<String, Integer> idIndex = new HashMap<>();
+        List<String> idList = new ArrayList<>();
+        List<Integer> firstEntries = new ArrayList<>();
+        int[] entryIds = new int[1024];
+        int[] times = new int[1024];
+        int[] counts = new int[1024];
+        int entries = 0;
+        try (JsonReader reader = new JsonReader(new BufferedReader(new FileReader(jsonPath), 1 << 16));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(binaryPath), 1 << 16))) {
+            out.write(new byte[HEADER_BYTES]); // Written once the offsets are known
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String id = null;
+                int time = 0;
+                PointCloud cloud = new PointCloud();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (name.equals("id"))
+                        id = reader.nextString();
+                    else if (name.equals("time"))
+                        time = reader.nextInt();
+                    else if (name.equals("cloudPoints"))
+                        cloud = adapter.read(reader);
+                    else
+                        reader.skipValue();
+                }
+                reader.endObject();
+                if (id == null)
+                    throw new IOException("Entry " + entries + " has no id in file: " + jsonPath);
+                if (entries == times.length) {
+                    entryIds = Arrays.copyOf(entryIds, entries * 2);
+                    times = Arrays.copyOf(times, entries * 2);
+                    counts = Arrays.copyOf(counts, entries * 2);
+                }
+                Integer index = idIndex.get(id);
+                if (index == null) {
+                    index = idList.size();
+                    idIndex.put(id, index);
+                    idList.add(id);
+                    firstEntries.add(entries);
+                }
+                entryIds[entries] = index;
+                times[entries] = time;
+                counts[entries] = cloud.size();
+                for (int p = 0; p < cloud.size(); p++) {
+                    out.writeDouble(cloud.getX(p));
+                    out.writeDouble(cloud.getY(p));
+                    out.writeDouble(cloud.getZ(p));
+                }
+                entries++;
+            }
+            reader.endArray();
+
+            long entriesOffset = HEADER_BYTES + 24L * sum(counts, entries);
+            int first = Integer.MAX_VALUE;
+            int last = Integer.MIN_VALUE;
+            long pointsOffset = HEADER_BYTES;
+            for (int e = 0; e < entries; e++) {
+                out.writeInt(entryIds[e]);
+                out.writeInt(times[e]);
+                out.writeLong(pointsOffset);
+                out.writeInt(counts[e]);
+                pointsOffset += 24L * counts[e];
+                first = Math.min(first, times[e]);
+                last = Math.max(last, times[e]);
+            }
+            int firstTime = entries == 0 ? 0 : first;
+            int span = entries == 0 ? 0 : last - first + 1;
+
+            // Counting sort by time; stable, so file order is kept within each time
+            int[] slots = new int[span + 1];
+            for (int e = 0; e < entries; e++)
+                slots[times[e] - firstTime + 1]++;
+            for (int t = 0; t < span; t++)
+                slots[t + 1] += slots[t];
+            int[] order = new int[entries];
+            int[] next = Arrays.copyOf(slots, span);
+            for (int e = 0; e < entries; e++)
+                order[next[times[e] - firstTime]++] = e;
+            long orderOffset = entriesOffset + (long) ENTRY_BYTES * entries;
+            for (int e : order)
+                out.writeInt(e);
+            for (int slot : slots)
+                out.writeInt(slot);
+
+            long idsOffset = orderOffset + 4L * entries + 4L * (span + 1);
+            for (int i = 0; i < idList.size(); i++) {
+                byte[] bytes = idList.get(i).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(firstEntries.get(i));
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.flush();
+
+            try (RandomAccessFile file = new RandomAccessFile(binaryPath, "rw")) {
+                file.writeInt(MAGIC);
+                file.writeInt(VERSION);
+                file.writeInt(entries);
+                file.writeInt(idList.size());
+                file.writeInt(firstTime);
+                file.writeInt(span);
+                file.writeLong(entriesOffset);
+                file.writeLong(orderOffset);
+                file.writeLong(idsOffset);
+            }
+        } catch (JsonParseException | IllegalStateException | NumberFormatException e) {
+            throw new IOException("Invalid JSON structure in file: " + jsonPath, e);
+        }
+        return entries;
+    }
+
+    private static long sum(int[] values, int length) {
+        long sum = 0;
+        for (int i = 0; i < length; i++)
+            sum += values[i];
+        return sum;
+    }
+}
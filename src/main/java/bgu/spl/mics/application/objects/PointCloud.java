@@ -0,0 +1,191 @@
+package bgu.spl.mics.application.objects;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The points of a LiDAR cloud, packed into one double array with x, y and z interleaved, instead
+ * of a list of boxed coordinate lists. A cloud is filled once with {@link #add} and shared
+ * afterwards: the LiDAR database, the tracked objects made from it and the landmarks all read
+ * the same arrays.
+ * <p>
+ * The JSON adapters keep the file formats as they were: {@link LidarFileAdapter} reads the
+ * LiDAR data file's {@code [[x, y, z], ...]}, and {@link OutputAdapter} writes the output's
+ * {@code [{"x": .., "y": ..}, ...]}.
+ */
+public class PointCloud {
+    private double[] xyz;
+    private int size;
+
+    public PointCloud() {
+        this(4);
+    }
+
+    /**
+     * @param capacity The number of points to make room for.
+     */
+    public PointCloud(int capacity) {
+        this.xyz = new double[Math.max(capacity, 1) * 3];
+    }
+
+    /**
+     * Converts points given as CloudPoints; their z is 0.
+     */
+    public static PointCloud of(List<CloudPoint> points) {
+        PointCloud cloud = new PointCloud(points.size());
+        for (CloudPoint point : points)
+            cloud.add(point.getX(), point.getY(), 0);
+        return cloud;
+    }
+
+    /**
+     * Appends a point. Only to be called while the cloud is being filled, before it is shared.
+     */
+    public void add(double x, double y, double z) {
+        if (size * 3 == xyz.length)
+            xyz = Arrays.copyOf(xyz, xyz.length * 2);
+        xyz[size * 3] = x;
+        xyz[size * 3 + 1] = y;
+        xyz[size * 3 + 2] = z;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getX(int index) {
+        return xyz[checked(index) * 3];
+    }
+
+    public double getY(int index) {
+        return xyz[checked(index) * 3 + 1];
+    }
+
+    public double getZ(int index) {
+        return xyz[checked(index) * 3 + 2];
+    }
+
+    /**
+     * @return A read-only view of the points as CloudPoints (x and y), created as they are read.
+     */
+    public List<CloudPoint> asList() {
+        return new AbstractList<CloudPoint>() {
+            @Override
+            public CloudPoint get(int index) {
+                return new CloudPoint(getX(index), getY(index));
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    // Drops the spare capacity left by growing, once a loaded cloud is complete.
+    private PointCloud trimmed() {
+        if (xyz.length > size * 3)
+            xyz = Arrays.copyOf(xyz, Math.max(size, 1) * 3);
+        return this;
+    }
+
+    private int checked(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Point " + index + " of " + size);
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < size; i++)
+            text.append(i == 0 ? "" : ", ").append('(').append(getX(i)).append(", ").append(getY(i))
+                    .append(", ").append(getZ(i)).append(')');
+        return text.append(']').toString();
+    }
+
+    /**
+     * The LiDAR data file's format: an array of [x, y, z] arrays. Points with fewer than two
+     * coordinates are skipped, as the tracker always did; a missing z is 0.
+     */
+    public static class LidarFileAdapter extends TypeAdapter<PointCloud> {
+        @Override
+        public void write(JsonWriter out, PointCloud cloud) throws IOException {
+            out.beginArray();
+            for (int i = 0; i < cloud.size; i++)
+                out.beginArray().value(cloud.getX(i)).value(cloud.getY(i)).value(cloud.getZ(i)).endArray();
+            out.endArray();
+        }
+
+        @Override
+        public PointCloud read(JsonReader in) throws IOException {
+            PointCloud cloud = new PointCloud();
+            in.beginArray();
+            while (in.hasNext()) {
+                double x = 0, y = 0, z = 0;
+                int coordinates = 0;
+                in.beginArray();
+                while (in.hasNext()) {
+                    double value = in.nextDouble();
+                    if (coordinates == 0)
+                        x = value;
+                    else if (coordinates == 1)
+                        y = value;
+                    else if (coordinates == 2)
+                        z = value;
+                    coordinates++;
+                }
+                in.endArray();
+                if (coordinates >= 2)
+                    cloud.add(x, y, z);
+            }
+            in.endArray();
+            return cloud.trimmed();
+        }
+    }
+
+    /**
+     * The output files' format: an array of {"x": .., "y": ..} objects, as CloudPoint lists were
+     * written. z is not part of the output; when read back it is 0.
+     */
+    public static class OutputAdapter extends TypeAdapter<PointCloud> {
+        @Override
+        public void write(JsonWriter out, PointCloud cloud) throws IOException {
+            out.beginArray();
+            for (int i = 0; i < cloud.size; i++)
+                out.beginObject().name("x").value(cloud.getX(i)).name("y").value(cloud.getY(i)).endObject();
+            out.endArray();
+        }
+
+        @Override
+        public PointCloud read(JsonReader in) throws IOException {
+            PointCloud cloud = new PointCloud();
+            in.beginArray();
+            while (in.hasNext()) {
+                double x = 0, y = 0;
+                in.beginObject();
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    if (name.equals("x") && in.peek() != JsonToken.NULL)
+                        x = in.nextDouble();
+                    else if (name.equals("y") && in.peek() != JsonToken.NULL)
+                        y = in.nextDouble();
+                    else
+                        in.skipValue();
+                }
+                in.endObject();
+                cloud.add(x, y, 0);
+            }
+            in.endArray();
+            return cloud.trimmed();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * A recording held in memory as a whole, indexed by time, so a time's entries and the next
+ * time with entries are each a single indexed read. Built once and never modified.
+ *
+ * @param <T> The type of the recorded entries.
+ */
+public class ResidentRecords<T> implements TimedRecords<T> {
+    private final List<List<T>> byTime; // byTime.get(t - firstTime), null for times with no entries
+    private final int[] nextFilled; // nextFilled[t - firstTime]: the first time from t on with entries, or -1
+    private final int firstTime;
+    private final int size;
+
+    /**
+     * @param records The whole recording, in file order.
+     * @param timeOf  The time of an entry.
+     */
+    public ResidentRecords(List<T> records, ToIntFunction<T> timeOf) {
+        int first = Integer.MAX_VALUE;
+        int last = Integer.MIN_VALUE;
+        for (T record : records) {
+            first = Math.min(first, timeOf.applyAsInt(record));
+            last = Math.max(last, timeOf.applyAsInt(record));
+        }
+        this.firstTime = records.isEmpty() ? 0 : first;
+        this.byTime = new ArrayList<>(Collections.<List<T>>nCopies(records.isEmpty() ? 0 : last - first + 1, null));
+        for (T record : records) {
+            int slot = timeOf.applyAsInt(record) - firstTime;
+            if (byTime.get(slot) == null)
+                byTime.set(slot, new ArrayList<>(1));
+            byTime.get(slot).add(record);
+        }
+        this.nextFilled = new int[byTime.size()];
+        int next = -1;
+        for (int t = byTime.size() - 1; t >= 0; t--) {
+            if (byTime.get(t) != null) {
+                byTime.set(t, Collections.unmodifiableList(byTime.get(t)));
+                next = t + firstTime;
+            }
+            nextFilled[t] = next;
+        }
+        this.size = records.size();
+    }
+
+    @Override
+    public List<T> at(int time) {
+        long slot = (long) time - firstTime;
+        List<T> records = slot >= 0 && slot < byTime.size() ? byTime.get((int) slot) : null;
+        return records == null ? Collections.<T>emptyList() : records;
+    }
+
+    @Override
+    public int nextTime(int time) {
+        long slot = Math.max((long) time - firstTime + 1, 0);
+        return slot < nextFilled.length ? nextFilled[(int) slot] : -1;
+    }
+
+    @Override
+    public boolean isResident() {
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int readAhead() {
+        return Integer.MAX_VALUE;
+    }
+}
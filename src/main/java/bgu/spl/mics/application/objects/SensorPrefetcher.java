@@ -0,0 +1,64 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Moves the windows of the streamed recordings along with the clock, and reads ahead for them
+ * on one background I/O thread, so the sensors rarely wait for the disk. The clock calls
+ * {@link #advance} before it publishes each tick.
+ */
+public class SensorPrefetcher {
+    private volatile WindowedRecords<?>[] windows; // Copied on change, so advance() allocates nothing
+    private final ExecutorService io;
+
+    private static class SingletonHolder {
+        private static final SensorPrefetcher instance = new SensorPrefetcher();
+    }
+
+    private SensorPrefetcher() {
+        this.windows = new WindowedRecords<?>[0];
+        this.io = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "SensorPrefetcher");
+            thread.setDaemon(true); // Never keeps the simulation alive
+            return thread;
+        });
+    }
+
+    public static SensorPrefetcher getInstance() {
+        return SingletonHolder.instance;
+    }
+
+    synchronized void register(WindowedRecords<?> window) {
+        WindowedRecords<?>[] registered = Arrays.copyOf(windows, windows.length + 1);
+        registered[windows.length] = window;
+        windows = registered;
+    }
+
+    synchronized void unregister(WindowedRecords<?> window) {
+        WindowedRecords<?>[] registered = new WindowedRecords<?>[windows.length];
+        int count = 0;
+        for (WindowedRecords<?> other : windows) {
+            if (other != window)
+                registered[count++] = other;
+        }
+        windows = Arrays.copyOf(registered, count);
+    }
+
+    /**
+     * Moves every window to {@code tick}: drops the entries that fell behind it, and queues a
+     * read of the ones ahead of it on the I/O thread.
+     *
+     * @param tick The tick about to be published.
+     */
+    public void advance(int tick) {
+        WindowedRecords<?>[] current = windows;
+        for (int i = 0; i < current.length; i++) {
+            WindowedRecords<?> window = current[i];
+            int target = window.advance(tick);
+            if (target != Integer.MIN_VALUE)
+                io.execute(() -> window.prefetch(target));
+        }
+    }
+}
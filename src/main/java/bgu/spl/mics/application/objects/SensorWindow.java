@@ -0,0 +1,45 @@
+package bgu.spl.mics.application.objects;
+
+/**
+ * The span of a streamed recording kept in memory around the current tick: the times from
+ * {@code tick - behind} to {@code tick + readAhead}. Entries that fall behind are dropped, and
+ * the ones ahead are read in the background before the sensors ask for them.
+ * <p>
+ * {@code behind} has to cover how far back the sensors look: a camera reads the frame taken
+ * {@code frequency} ticks ago, and a LiDAR worker the cloud points of a frame detected by a
+ * camera. Older times are still answered, by reading the recording again from its start, so
+ * the runner widens the configured window to the longest camera frequency
+ * ({@link #coveringBehind(int)}).
+ */
+public class SensorWindow {
+    private final int behind;
+    private final int readAhead;
+
+    /**
+     * @param behind    The number of past ticks kept in memory.
+     * @param readAhead The number of future ticks read in advance; at least 1.
+     */
+    public SensorWindow(int behind, int readAhead) {
+        if (behind < 0 || readAhead < 1)
+            throw new IllegalArgumentException("Invalid sensor window: behind " + behind + ", readAhead " + readAhead);
+        this.behind = behind;
+        this.readAhead = readAhead;
+    }
+
+    public int getBehind() {
+        return behind;
+    }
+
+    public int getReadAhead() {
+        return readAhead;
+    }
+
+    /**
+     * @param ticks The number of past ticks the sensors look back.
+     * @return This window if it keeps at least {@code ticks} past ticks, or else one that does,
+     *         with the same read-ahead.
+     */
+    public SensorWindow coveringBehind(int ticks) {
+        return ticks <= behind ? this : new SensorWindow(ticks, readAhead);
+    }
+}
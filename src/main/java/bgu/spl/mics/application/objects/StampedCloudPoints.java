@@ -1,25 +1,33 @@
 package bgu.spl.mics.application.objects;
-import java.util.*;
+import com.google.gson.annotations.JsonAdapter;
+
 /**
  * Represents a group of cloud points corresponding to a specific timestamp.
  * Used by the LiDAR system to store and process point cloud data for tracked objects.
+ * Never modified once loaded, so the LiDAR workers share it without copying or locking.
  */
 public class StampedCloudPoints {
     private final String id;
     private final int time;
-    private final List<List<Double>> cloudPoints;
+    @JsonAdapter(PointCloud.LidarFileAdapter.class)
+    private final PointCloud cloudPoints; // Packed, read straight from the file's [x, y, z] arrays
 
     public StampedCloudPoints(String id, int time) {
         this.id = id;
         this.time = time;
-        this.cloudPoints = new ArrayList<>();
+        this.cloudPoints = new PointCloud();
+    }
+
+    /**
+     * @param cloudPoints The points, which the caller must not modify afterwards.
+     */
+    public StampedCloudPoints(String id, int time, PointCloud cloudPoints) {
+        this.id = id;
+        this.time = time;
+        this.cloudPoints = cloudPoints;
     }
 
     public String getId() { return id; }
     public int getTime() { return time; }
-    public List<List<Double>> getCloudPoints() { return cloudPoints; }
-
-    public void addPoint(List<Double> point) {
-        cloudPoints.add(point);
-    }
+    public PointCloud getCloudPoints() { return cloudPoints; }
 }
@@ -54,6 +54,11 @@ public class StatisticalFolder {
         systemRuntime.incrementAndGet();
     }
 
+    // For a clock that skips ticks: the skipped ticks are still part of the runtime.
+    public synchronized void addRuntime(int ticks) {
+        systemRuntime.addAndGet(ticks);
+    }
+
     // Getters
     public int getSystemRuntime() { return systemRuntime.intValue(); }
     public int getNumDetectedObjects() { return numDetectedObjects.intValue(); }
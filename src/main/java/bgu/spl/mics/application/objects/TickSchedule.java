@@ -0,0 +1,63 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.BitSet;
+
+/**
+ * The ticks at which some service has work to do, registered by the services themselves: the
+ * ticks a camera reports at, the ticks tracked objects become due at a LiDAR worker, the tick
+ * the pose data runs out. A sparse clock (see
+ * {@link bgu.spl.mics.application.services.ClockMode#SPARSE}) publishes only these ticks and
+ * skips the ones in between, where every service would have ignored the tick.
+ * <p>
+ * A request for a tick that has already been published stands for the next tick instead, so
+ * work registered while handling a tick is never lost.
+ */
+public class TickSchedule {
+    private final BitSet requested;
+    private int published; // The last tick the clock published
+
+    private static class SingletonHolder {
+        private static final TickSchedule instance = new TickSchedule();
+    }
+
+    private TickSchedule() {
+        this.requested = new BitSet();
+        this.published = 0;
+    }
+
+    public static TickSchedule getInstance() {
+        return SingletonHolder.instance;
+    }
+
+    /**
+     * Registers work at {@code tick}, or at the next tick if {@code tick} was already published.
+     */
+    public synchronized void request(int tick) {
+        requested.set(Math.max(tick, published + 1));
+    }
+
+    /**
+     * @return the first requested tick after {@code tick}, or -1 if there is none.
+     */
+    public synchronized int nextAfter(int tick) {
+        return requested.nextSetBit(tick + 1);
+    }
+
+    /**
+     * Records that the clock is about to publish {@code tick}; called before the broadcast so
+     * requests made while handling it go to later ticks.
+     */
+    public synchronized void published(int tick) {
+        published = tick;
+        requested.clear(0, tick + 1);
+    }
+
+    /**
+     * Forgets all requests and published ticks, for a new run. Called by the clock before the
+     * services register anything.
+     */
+    public synchronized void reset() {
+        requested.clear();
+        published = 0;
+    }
+}
@@ -0,0 +1,40 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.List;
+
+/**
+ * A sensor's recording, read by time. Sensors read their data through this interface only, so
+ * they work the same whether the whole recording is in memory ({@link ResidentRecords}) or
+ * streamed through a window around the current tick ({@link WindowedRecords}).
+ *
+ * @param <T> The type of the recorded entries.
+ */
+public interface TimedRecords<T> {
+
+    /**
+     * @return The entries recorded at {@code time}, in file order; empty if there are none.
+     */
+    List<T> at(int time);
+
+    /**
+     * @return The first time after {@code time} with an entry, or -1 if the recording ends first.
+     */
+    int nextTime(int time);
+
+    /**
+     * @return True if the whole recording is in memory, false if it is streamed.
+     */
+    boolean isResident();
+
+    /**
+     * @return The number of entries, or -1 if the recording is streamed ({@link #isResident()}
+     *         is false): it is not known without reading the whole recording.
+     */
+    int size();
+
+    /**
+     * @return How many times past the current tick a reader may look without reading beyond the
+     *         data already on its way into memory; Integer.MAX_VALUE if the recording is resident.
+     */
+    int readAhead();
+}
@@ -1,4 +1,6 @@
 package bgu.spl.mics.application.objects;
+import com.google.gson.annotations.JsonAdapter;
+
 import java.util.*;
 /**
  * Represents an object tracked by the LiDAR.
@@ -9,9 +11,14 @@ public class TrackedObject {
     private final String id;
     private final int time;
     private final String description;
-    private final List<CloudPoint> coordinates;
+    @JsonAdapter(PointCloud.OutputAdapter.class)
+    private final PointCloud coordinates; // Shared with the LiDAR database entry it was tracked from
 
     public TrackedObject(String id, int time, String description, List<CloudPoint> coordinates) {
+        this(id, time, description, PointCloud.of(coordinates));
+    }
+
+    public TrackedObject(String id, int time, String description, PointCloud coordinates) {
         this.id = id;
         this.time = time;
         this.description = description;
@@ -30,7 +37,12 @@ public class TrackedObject {
         return description;
     }
 
+    // A read-only view of the points; getPoints() reads them without creating CloudPoints.
     public List<CloudPoint> getCoordinates() {
+        return coordinates.asList();
+    }
+
+    public PointCloud getPoints() {
         return coordinates;
     }
 
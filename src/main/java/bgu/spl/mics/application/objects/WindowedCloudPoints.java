@@ -0,0 +1,29 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.List;
+
+/**
+ * (time, id) lookups over a LiDAR recording streamed through a window (see
+ * {@link WindowedRecords}), for recordings too large to load whole.
+ */
+public class WindowedCloudPoints implements CloudPointLookup {
+    private final WindowedRecords<StampedCloudPoints> records;
+
+    public WindowedCloudPoints(WindowedRecords<StampedCloudPoints> records) {
+        this.records = records;
+    }
+
+    @Override
+    public CloudPointIndex.Bucket bucket(int time) {
+        List<StampedCloudPoints> atTime = records.at(time);
+        return atTime.isEmpty() ? null : new CloudPointIndex.Bucket(atTime);
+    }
+
+    /**
+     * Reads the recording from its start up to the id's first entry; not meant for every tick.
+     */
+    @Override
+    public StampedCloudPoints first(String id) {
+        return records.findFirst(stamped -> stamped.getId().equals(id));
+    }
+}
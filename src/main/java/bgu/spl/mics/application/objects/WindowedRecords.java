@@ -0,0 +1,264 @@
+package bgu.spl.mics.application.objects;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * A recording streamed from its file, with only a window of times around the current tick in
+ * memory (see {@link SensorWindow}). The {@link SensorPrefetcher} moves the window with the
+ * clock: entries behind it are dropped, and the ones ahead are read on its I/O thread. A read
+ * the prefetcher has not reached yet reads the file itself, so the sensors never see a
+ * difference from a {@link ResidentRecords}, only a wait.
+ * <p>
+ * The recording has to be in time order, as the sensors' files are; an entry earlier than the
+ * one before it fails the read. Times that were dropped are read again from the start of the
+ * file, which is correct but slow, so the window should cover how far back the sensors look;
+ * {@link #rereads()} counts how often it did not.
+ *
+ * @param <T> The type of the recorded entries.
+ */
+public class WindowedRecords<T> implements TimedRecords<T>, Closeable {
+
+    /**
+     * Reads a recording's entries in file order.
+     */
+    public interface Reader<T> extends Closeable {
+        /**
+         * @return The next entry, or null at the end of the recording.
+         */
+        T next() throws IOException;
+    }
+
+    /**
+     * Opens a recording at its start.
+     */
+    public interface Source<T> {
+        Reader<T> open() throws IOException;
+    }
+
+    private final Source<T> source;
+    private final ToIntFunction<T> timeOf;
+    private final SensorWindow window;
+    private final ConcurrentSkipListMap<Integer, List<T>> resident; // Unmodifiable entries by time, from the window's start
+    private final Object readLock = new Object();
+    private final AtomicLong rereads = new AtomicLong();
+    private Reader<T> reader; // Guarded by readLock, as are pending and filling
+    private T pending; // Read but not placed: the first entry past the last read-through target
+    private List<T> filling; // Backs the resident list of lastTime, which may get more entries
+    private volatile int lastTime = Integer.MIN_VALUE; // The time of the last entry placed
+    private volatile int readThrough = Integer.MIN_VALUE; // Every entry up to this time has been read
+    private volatile int evictedBelow = Integer.MIN_VALUE; // Entries before this time have been dropped
+    private volatile int prefetchTarget = Integer.MIN_VALUE; // The last time the I/O thread was asked to reach
+    private volatile IOException failure;
+
+    /**
+     * Opens the recording, reads the window of tick 0 and registers the window with the
+     * {@link SensorPrefetcher}.
+     *
+     * @param source The recording.
+     * @param timeOf The time of an entry.
+     * @param window The times to keep in memory around the current tick.
+     * @throws IOException If the recording cannot be opened, or its first window cannot be read.
+     */
+    public WindowedRecords(Source<T> source, ToIntFunction<T> timeOf, SensorWindow window) throws IOException {
+        this.source = source;
+        this.timeOf = timeOf;
+        this.window = window;
+        this.resident = new ConcurrentSkipListMap<>();
+        this.reader = source.open();
+        readThrough(window.getReadAhead()); // The first window is in memory before the first tick
+        prefetchTarget = window.getReadAhead();
+        SensorPrefetcher.getInstance().register(this);
+    }
+
+    @Override
+    public List<T> at(int time) {
+        if (time < evictedBelow)
+            return reread(time);
+        if (readThrough < time)
+            readThroughUnchecked(time);
+        List<T> records = resident.get(time);
+        if (records == null)
+            return time < evictedBelow ? reread(time) : Collections.<T>emptyList(); // Dropped meanwhile, or none
+        return records;
+    }
+
+    @Override
+    public int nextTime(int time) {
+        if (time == Integer.MAX_VALUE)
+            return -1;
+        if (time + 1 < evictedBelow) {
+            rereads.incrementAndGet();
+            T next = findFirst(record -> timeOf.applyAsInt(record) > time);
+            return next == null ? -1 : timeOf.applyAsInt(next);
+        }
+        while (true) {
+            int through = readThrough;
+            Integer next = resident.higherKey(time);
+            if (next != null && next <= through)
+                return next;
+            if (through == Integer.MAX_VALUE)
+                return -1; // The whole recording has been read
+            readThroughUnchecked(Math.max(through, time) + 1);
+        }
+    }
+
+    @Override
+    public boolean isResident() {
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return -1;
+    }
+
+    @Override
+    public int readAhead() {
+        return window.getReadAhead();
+    }
+
+    /**
+     * @return The number of times currently held in memory.
+     */
+    public int residentTimes() {
+        return resident.size();
+    }
+
+    /**
+     * @return How many reads fell behind the window and read the recording again from its start.
+     */
+    public long rereads() {
+        return rereads.get();
+    }
+
+    /**
+     * Reads the recording again from its start, without touching the window.
+     *
+     * @return The first entry in file order that {@code matches}, or null if there is none.
+     */
+    public T findFirst(Predicate<T> matches) {
+        try (Reader<T> again = source.open()) {
+            for (T record = again.next(); record != null; record = again.next()) {
+                if (matches.test(record))
+                    return record;
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stops moving the window and closes the recording.
+     */
+    @Override
+    public void close() throws IOException {
+        SensorPrefetcher.getInstance().unregister(this);
+        synchronized (readLock) {
+            reader.close();
+            readThrough = Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Moves the window to {@code tick}, dropping the entries behind it.
+     *
+     * @return The time the I/O thread should read through, or Integer.MIN_VALUE if it is read already.
+     */
+    int advance(int tick) {
+        long below = (long) tick - window.getBehind();
+        if (below > evictedBelow) {
+            evictedBelow = (int) below;
+            resident.headMap((int) below).clear();
+        }
+        int target = (int) Math.min((long) tick + window.getReadAhead(), Integer.MAX_VALUE);
+        if (target <= prefetchTarget || target <= readThrough)
+            return Integer.MIN_VALUE;
+        prefetchTarget = target;
+        return target;
+    }
+
+    // Runs on the I/O thread; a failure is kept and reported to the next sensor read.
+    void prefetch(int target) {
+        try {
+            readThrough(target);
+        } catch (IOException e) {
+            // Kept in failure by readThrough
+        }
+    }
+
+    private void readThroughUnchecked(int time) {
+        try {
+            readThrough(time);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Reads entries until every entry up to time has been read, placing the ones inside the window.
+    private void readThrough(int time) throws IOException {
+        synchronized (readLock) {
+            if (failure != null)
+                throw new IOException("Failed to read the recording", failure);
+            try {
+                while (readThrough < time) {
+                    T record = pending != null ? pending : reader.next();
+                    pending = null;
+                    if (record == null) {
+                        reader.close();
+                        readThrough = Integer.MAX_VALUE;
+                        break;
+                    }
+                    int recordTime = timeOf.applyAsInt(record);
+                    if (recordTime < lastTime)
+                        throw new IOException("The recording is not in time order: time " + recordTime + " after " + lastTime);
+                    if (recordTime > lastTime && recordTime > readThrough + 1) {
+                        readThrough = recordTime - 1; // Every entry before this one's time has been read
+                        if (recordTime > time) {
+                            pending = record;
+                            break;
+                        }
+                    }
+                    // Entries of the current tick's window and after; older ones were consumed already
+                    if (recordTime >= evictedBelow) {
+                        if (filling == null || recordTime != lastTime) {
+                            filling = new ArrayList<>(1);
+                            resident.put(recordTime, Collections.unmodifiableList(filling));
+                        }
+                        filling.add(record);
+                    }
+                    lastTime = recordTime;
+                }
+            } catch (IOException | RuntimeException e) {
+                failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                throw failure;
+            }
+        }
+    }
+
+    private List<T> reread(int time) {
+        rereads.incrementAndGet();
+        List<T> records = new ArrayList<>();
+        try (Reader<T> again = source.open()) {
+            for (T record = again.next(); record != null; record = again.next()) {
+                int recordTime = timeOf.applyAsInt(record);
+                if (recordTime == time)
+                    records.add(record);
+                else if (recordTime > time)
+                    break;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Collections.unmodifiableList(records);
+    }
+}
@@ -5,9 +5,7 @@ import bgu.spl.mics.application.messages.TerminatedBroadcast;
 import bgu.spl.mics.application.objects.*;
 import bgu.spl.mics.application.messages.TickBroadcast;
 import bgu.spl.mics.application.messages.DetectObjectsEvent;
-import bgu.spl.mics.example.services.ExampleBroadcastListenerService;
 
-import java.util.LinkedList;
 import java.util.List;
 /**
  * CameraService is responsible for processing data from the camera and
@@ -19,6 +17,8 @@ import java.util.List;
 public class CameraService extends MicroService {
 
     private Camera camera;
+    private final String sensorName; // The camera's key in the error report
+    private volatile int nextTick; // The next tick the camera reports a frame or leaves at, read by the tick filter
     /**
      * Constructor for CameraService.
      *
@@ -27,6 +27,25 @@ public class CameraService extends MicroService {
     public CameraService(Camera camera) {
         super("CameraService");
         this.camera = camera;
+        this.sensorName = "Camera" + camera.getId();
+        scheduleAfter(0);
+    }
+
+    /**
+     * Finds the next tick after {@code tick} the camera has work at: its next frame, or leaving
+     * once the last frame is reported. It is registered for a sparse clock, and the tick filter
+     * lets ticks through from it on. Found one frame at a time, while handling the previous one,
+     * so the camera never reads its whole recording ahead.
+     */
+    private void scheduleAfter(int tick) {
+        int next = camera.nextReportTick(tick);
+        nextTick = next >= 0 ? next : tick + 1;
+        TickSchedule.getInstance().request(nextTick);
+    }
+
+    // Whether the camera may do anything at this tick: report a frame, or leave after the last one.
+    private boolean wantsTick(TickBroadcast tick) {
+        return tick.getCurrentTick() >= nextTick;
     }
 
     /**
@@ -36,38 +55,42 @@ public class CameraService extends MicroService {
      */
     @Override
     protected synchronized void initialize() {
-        // Subscribe to TickBroadcast
+        // Subscribe to TickBroadcast; ticks without a frame are filtered out by the bus, without waking the camera
         StatisticalFolder sf=StatisticalFolder.getInstance();
-        subscribeBroadcast(TickBroadcast.class, tick -> {
+        subscribeBroadcast(TickBroadcast.class, this::wantsTick, tick -> {
             // Check if the camera is operational and if it should send data at this tick
             if (camera.checkIfLeft(tick.getCurrentTick())) {
-                List<DetectedObject> detectedObjects = camera.getDetectedObjects(tick.getCurrentTick());
+                // The frame taken frequency ticks ago, if any; its time is tick - frequency
+                StampedDetectedObjects frame = camera.getFrame(tick.getCurrentTick());
                 // Create and send DetectObjectsEvent
-                if (!detectedObjects.isEmpty()) {
-                    StampedDetectedObjects lastFrame = new StampedDetectedObjects(tick.getCurrentTick() - camera.getFrequency(), new LinkedList<DetectedObject>());
+                if (frame != null && !frame.getDetectedObjects().isEmpty()) {
+                    List<DetectedObject> detectedObjects = frame.getDetectedObjects();
                     boolean error = false;
-                    for(DetectedObject detectedObject:detectedObjects){
+                    for(int i = 0; i < detectedObjects.size(); i++){
+                        DetectedObject detectedObject = detectedObjects.get(i);
                         if(detectedObject.getId().equals("ERROR")) {
                             error = true;
                             camera.setStatus(STATUS.ERROR);
                             ErrorObject.getInstance().setErrorString(detectedObject.getDescription());
-                            ErrorObject.getInstance().setFaultySensor("Camera" + camera.getId());
+                            ErrorObject.getInstance().setFaultySensor(sensorName);
                             sendBroadcast(new CrashedBroadcast("camera"+camera.getId(), detectedObject.getDescription()));
                             break;
                         } else{
-                            lastFrame.getDetectedObjects().add(detectedObject);
                             sf.incrementDetectedObjects();
                         }
                     }
                     if (!error){
-                        if (!lastFrame.getDetectedObjects().isEmpty())
-                            ErrorObject.getInstance().updateLastCamerasFrame("Camera" + camera.getId(),lastFrame);
-                        sendEvent(new DetectObjectsEvent(detectedObjects, tick.getCurrentTick() - camera.getFrequency()));
+                        // Without an error the whole frame is sent, so the frame itself is the last frame
+                        ErrorObject.getInstance().updateLastCamerasFrame(sensorName, frame);
+                        sendEventOneWay(new DetectObjectsEvent(sensorName, frame));
                     }
 
                 }
+                scheduleAfter(tick.getCurrentTick());
             } else {
                 SensorsCounter.getInstance().decrementCameraSensors();
+                // The LiDAR workers may only see that this camera left on the next tick
+                TickSchedule.getInstance().request(tick.getCurrentTick() + 1);
                 this.camera.setStatus(STATUS.DOWN);
                 terminate();
             }
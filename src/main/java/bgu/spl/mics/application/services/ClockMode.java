@@ -0,0 +1,16 @@
+package bgu.spl.mics.application.services;
+
+/**
+ * How the {@link TimeService} paces its ticks.
+ * <p>
+ * - WALL_CLOCK: a tick every TickTime seconds of real time.
+ * - VIRTUAL: the next tick as soon as everything the previous one triggered has been handled,
+ *   i.e. once the message bus is quiescent. The services see the same sequence of ticks and
+ *   messages as with a wall clock, so the output is the same, but a replay runs at CPU speed.
+ * - SPARSE: a VIRTUAL clock that jumps straight to the next tick some service registered work
+ *   for in the {@link bgu.spl.mics.application.objects.TickSchedule}. The skipped ticks still
+ *   count towards the runtime.
+ */
+public enum ClockMode {
+    WALL_CLOCK, VIRTUAL, SPARSE
+}
@@ -21,13 +21,13 @@ public class LiDarService extends MicroService {
     private final int lidarFrequency; // Frequency in ticks
 //    private final Queue<StampedDetectedObjects> pendingEvents = new LinkedList<>();
     private int currentTick = 0; // Tracks the current tick
-    private List<List<TrackedObject>> trackedObjectsList;
+    private List<TrackedObjectEvent> trackedObjectsList; // Built when the objects are tracked, sent once due
 
     public LiDarService(String name, LiDarWorkerTracker lwt, int lidarFrequency) {
         super("LiDarTrackerWorker" + lwt.getId());
         this.lwt = lwt;
         this.lidarFrequency = lidarFrequency;
-        this.trackedObjectsList = new ArrayList<List<TrackedObject>>();
+        this.trackedObjectsList = new ArrayList<TrackedObjectEvent>();
     }
 
     @Override
@@ -35,7 +35,10 @@ public class LiDarService extends MicroService {
         subscribeEvent(DetectObjectsEvent.class, (DetectObjectsEvent e) -> {
             List<TrackedObject> trackedObjects = lwt.createTrackedObjects(e.getDetectedObjects());
             if (trackedObjects != null) {
-                trackedObjectsList.add(trackedObjects);
+                trackedObjectsList.add(new TrackedObjectEvent(trackedObjects));
+                // Due frequency ticks after detection; a sparse clock must publish that tick
+                if (!trackedObjects.isEmpty())
+                    TickSchedule.getInstance().request(lwt.getFrequency() + trackedObjects.get(0).getTime());
                 //ErrorObject.getInstance().updateLastLiDarWorkerTrackersFrame("LiDar"+lwt.getId(), trackedObjects);
             }
             else{
@@ -51,18 +54,26 @@ public class LiDarService extends MicroService {
             currentTick = c.getCurrentTick();
             //If there are active cameras or tracked objects left to send:
             if((SensorsCounter.getInstance().getNumOfCameraSensors() != 0) || !trackedObjectsList.isEmpty()){
-                Iterator<List<TrackedObject>> iterator = trackedObjectsList.iterator();
-                while (iterator.hasNext()) {
-                    List<TrackedObject> list = iterator.next();
+                // Events not due yet are compacted to the front, in order, without an iterator
+                int waiting = 0;
+                for (int e = 0; e < trackedObjectsList.size(); e++) {
+                    TrackedObjectEvent event = trackedObjectsList.get(e);
+                    List<TrackedObject> list = event.getTrackedObjects();
                     if (!list.isEmpty() && currentTick >= (lwt.getFrequency() + list.get(0).getTime())) {
                         for (int i = 0; i < list.size(); i++)
                             StatisticalFolder.getInstance().incrementTrackedObjects();
                         lwt.setLastTrackedObjects(list); //double check if needed (no usage for get)!!!!!!!!!!!!
                         ErrorObject.getInstance().updateLastLiDarWorkerTrackersFrame(getName(), lwt.getLastTrackedObjects());
-                        sendEvent(new TrackedObjectEvent(list));
-                        iterator.remove();
+                        // One event per landmark, so a keyed dispatch can route each to its owner
+                        List<TrackedObjectEvent> parts = event.byLandmark();
+                        for (int p = 0; p < parts.size(); p++)
+                            sendEventOneWay(parts.get(p));
+                    } else {
+                        trackedObjectsList.set(waiting++, event);
                     }
                 }
+                for (int e = trackedObjectsList.size() - 1; e >= waiting; e--)
+                    trackedObjectsList.remove(e);
 
                 // If we sent the last tracked object in the current tick.
                 if(SensorsCounter.getInstance().getNumOfCameraSensors() == 0 && trackedObjectsList.isEmpty()){
@@ -113,7 +124,9 @@ public class LiDarService extends MicroService {
                     if (!error){
                         if (!lastFrame.isEmpty())
                             ErrorObject.getInstance().updateLastLiDarWorkerTrackersFrame("LiDarWorkerTracker" + lwt.getId(),lastFrame);
-                        sendEvent(new TrackedObjectEvent(trackedObjects));                    }
+                        for (TrackedObjectEvent part : new TrackedObjectEvent(trackedObjects).byLandmark())
+                            sendEventOneWay(part);
+                    }
                 }
 
             } else {
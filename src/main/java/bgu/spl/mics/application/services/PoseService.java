@@ -6,6 +6,8 @@ import bgu.spl.mics.application.messages.TickBroadcast;
 import bgu.spl.mics.application.objects.ErrorObject;
 import bgu.spl.mics.application.objects.GPSIMU;
 import bgu.spl.mics.application.objects.Pose;
+import bgu.spl.mics.application.objects.TickSchedule;
+import bgu.spl.mics.application.objects.TimedRecords;
 import bgu.spl.mics.MicroService;
 
 /**
@@ -14,6 +16,9 @@ import bgu.spl.mics.MicroService;
  */
 public class PoseService extends MicroService {
     private GPSIMU gpsimu;
+    private final PoseEvent[] eventsByTick; // The event for each tick's pose (or null), built up front; null if streamed
+    private int lastSentTick = 0; // Poses up to this tick have been sent
+    private int scheduledTick; // The tick requested from a sparse clock: the first without a pose, or a checkpoint before it
     /**
      * Constructor for PoseService.
      *
@@ -22,6 +27,31 @@ public class PoseService extends MicroService {
     public PoseService(GPSIMU gpsimu) {
         super("PoseService");
         this.gpsimu = gpsimu;
+        // When the whole recording is in memory its events are built once, so sending a pose allocates nothing
+        this.eventsByTick = gpsimu.getPoses().isResident() ? indexByTick(gpsimu.getPoses()) : null;
+        scheduleEnd(0);
+    }
+
+    /**
+     * The first tick without a pose ends the simulation, so a sparse clock must not skip it. It
+     * is looked for at most readAhead ticks after {@code tick}, within the poses already on their
+     * way into memory; if every one of those ticks has a pose, the last of them is requested as a
+     * checkpoint instead, and the search goes on from there when it is reached.
+     */
+    private void scheduleEnd(int tick) {
+        long limit = Math.min((long) tick + gpsimu.getPoses().readAhead(), Integer.MAX_VALUE);
+        int t = tick + 1;
+        while (t < limit && gpsimu.getPose(t) != null)
+            t++;
+        scheduledTick = t;
+        TickSchedule.getInstance().request(t);
+    }
+
+    private PoseEvent eventAt(int tick) {
+        if (eventsByTick != null)
+            return tick < eventsByTick.length ? eventsByTick[tick] : null;
+        Pose pose = gpsimu.getPose(tick);
+        return pose == null ? null : new PoseEvent(pose);
     }
     /**
      * Initializes the PoseService.
@@ -29,23 +59,41 @@ public class PoseService extends MicroService {
      */
     @Override
     protected synchronized void initialize() {
+        if (gpsimu.getPoses().isResident())
+            ErrorObject.getInstance().reservePoses(gpsimu.getPoses().size());
         // Subscribe to TickBroadcast
         subscribeBroadcast(TickBroadcast.class, tick -> {
-            // Fetch the current pose
-            Pose currentPose = gpsimu.getPose(tick.getCurrentTick());
-            if (currentPose != null) {
+            // A sparse clock may have skipped ticks since the last one; their poses are sent first, in order
+            for (int t = lastSentTick + 1; t <= tick.getCurrentTick(); t++) {
+                PoseEvent currentPose = eventAt(t);
+                if (currentPose == null) {
+                    sendBroadcast(new TerminatedBroadcast());
+                    terminate();
+                    return;
+                }
                 // Send a PoseEvent with the current pose
-                ErrorObject.getInstance().addPose(currentPose);
-                sendEvent(new PoseEvent(currentPose));
-            } else {
-                sendBroadcast(new TerminatedBroadcast());
-                terminate();
+                ErrorObject.getInstance().addPose(currentPose.getPose());
+                sendEventOneWay(currentPose);
+                lastSentTick = t;
             }
+            if (tick.getCurrentTick() >= scheduledTick)
+                scheduleEnd(tick.getCurrentTick()); // Passed a checkpoint
         });
         // Handle termination
         subscribeBroadcast(TerminatedBroadcast.class, this::handleTermination);
         subscribeBroadcast(CrashedBroadcast.class, crashed -> terminate());
     }
+    // The first pose of each tick, as getPose(tick) would return it, wrapped in its event.
+    private static PoseEvent[] indexByTick(TimedRecords<Pose> poses) {
+        int lastTick = 0;
+        for (int t = poses.nextTime(-1); t >= 0; t = poses.nextTime(t))
+            lastTick = t;
+        PoseEvent[] events = new PoseEvent[lastTick + 1];
+        for (int t = poses.nextTime(-1); t >= 0; t = poses.nextTime(t))
+            events[t] = new PoseEvent(poses.at(t).get(0));
+        return events;
+    }
+
     private void handleTermination(TerminatedBroadcast broadcast) {
         terminate(); // Call terminate to exit the run loop
     }
@@ -1,10 +1,14 @@
 package bgu.spl.mics.application.services;
 
+import bgu.spl.mics.BusConfigurator;
+import bgu.spl.mics.MessageBusImpl;
 import bgu.spl.mics.MicroService;
 import bgu.spl.mics.application.messages.TerminatedBroadcast;
 import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.application.objects.SensorPrefetcher;
 import bgu.spl.mics.application.objects.SensorsCounter;
 import bgu.spl.mics.application.objects.StatisticalFolder;
+import bgu.spl.mics.application.objects.TickSchedule;
 import  bgu.spl.mics.application.messages.CrashedBroadcast;
 import  bgu.spl.mics.application.messages.TerminatedBroadcast;
 
@@ -18,6 +22,8 @@ public class TimeService extends MicroService {
     private int tickTime; // Duration of each tick in milliseconds
     private int duration; // Total number of ticks
     private int currentTick; // Tracks the current tick
+    private final TickBroadcast[] ticks; // ticks[t] is the broadcast of tick t, built up front
+    private final ClockMode clockMode;
 
     /**
      * Constructor for TimeService.
@@ -26,10 +32,30 @@ public class TimeService extends MicroService {
      * @param Duration  The total number of ticks before the service terminates.
      */
     public TimeService(int TickTime, int Duration) {
+        this(TickTime, Duration, ClockMode.WALL_CLOCK);
+    }
+
+    /**
+     * Constructor for TimeService with a choice of clock.
+     *
+     * @param TickTime  The duration of each tick in seconds; ignored by a virtual clock.
+     * @param Duration  The total number of ticks before the service terminates.
+     * @param clockMode How ticks are paced.
+     */
+    public TimeService(int TickTime, int Duration, ClockMode clockMode) {
         super("TimeService");
+        this.clockMode = clockMode;
         this.tickTime = TickTime;
         this.duration = Duration;
         this.currentTick = 0;
+        // Built once, so publishing a tick allocates nothing
+        this.ticks = new TickBroadcast[Math.max(Duration, 1) + 1];
+        for (int t = 1; t < ticks.length; t++)
+            ticks[t] = new TickBroadcast(t);
+        if (clockMode != ClockMode.WALL_CLOCK)
+            BusConfigurator.of(MessageBusImpl.getInstance()).enableQuiescenceTracking(); // Before the services start sending
+        if (clockMode == ClockMode.SPARSE)
+            TickSchedule.getInstance().reset(); // Before the services register their ticks
     }
     /**
      * Initializes the TimeService.
@@ -38,16 +64,14 @@ public class TimeService extends MicroService {
     @Override
     protected void initialize() {
         subscribeBroadcast(TickBroadcast.class, (TickBroadcast c) -> {
+            if (clockMode != ClockMode.WALL_CLOCK) {
+                // Advance once this tick, this callback included, has been handled everywhere
+                onComplete(MessageBusImpl.getInstance().whenQuiescent(), idle -> advance());
+                return;
+            }
             try{
                 Thread.sleep(tickTime*1000);
-                if (duration > currentTick) {
-                    currentTick++;
-                    StatisticalFolder.getInstance().incrementRuntime();
-                    sendBroadcast(new TickBroadcast(currentTick));
-                } else {
-                    sendBroadcast(new TerminatedBroadcast());
-                    terminate();
-                }
+                advance();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 sendBroadcast(new TerminatedBroadcast());
@@ -67,7 +91,32 @@ public class TimeService extends MicroService {
 
         // The first tick.
         currentTick++;
-        sendBroadcast(new TickBroadcast(currentTick));
+        if (clockMode == ClockMode.SPARSE)
+            TickSchedule.getInstance().published(currentTick);
+        SensorPrefetcher.getInstance().advance(currentTick);
+        sendBroadcast(ticks[currentTick]);
         StatisticalFolder.getInstance().incrementRuntime();
     }
+
+    // Publishes the next tick, or ends the simulation once the duration is reached.
+    private void advance() {
+        if (duration > currentTick) {
+            if (clockMode == ClockMode.SPARSE) {
+                // Jump to the next tick with work; the ones skipped still count as runtime
+                int next = TickSchedule.getInstance().nextAfter(currentTick);
+                next = next < 0 ? duration : Math.min(next, duration);
+                StatisticalFolder.getInstance().addRuntime(next - currentTick);
+                currentTick = next;
+                TickSchedule.getInstance().published(currentTick);
+            } else {
+                currentTick++;
+                StatisticalFolder.getInstance().incrementRuntime();
+            }
+            SensorPrefetcher.getInstance().advance(currentTick); // Streamed sensor data follows the clock
+            sendBroadcast(ticks[currentTick]);
+        } else {
+            sendBroadcast(new TerminatedBroadcast());
+            terminate();
+        }
+    }
 }
@@ -1,10 +1,19 @@
 package bgu.spl.mics;
 import bgu.spl.mics.application.objects.Camera;
+import bgu.spl.mics.application.objects.CameraDataLoader;
 import bgu.spl.mics.application.objects.DetectedObject;
 import bgu.spl.mics.application.objects.STATUS;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
 import org.junit.jupiter.api.Test;
+import java.io.FileReader;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.*;
 import static org.junit.jupiter.api.Assertions.*;
 class CameraTest {
@@ -49,4 +58,68 @@ class CameraTest {
         List<DetectedObject> result = camera.getDetectedObjects(21); // No match for tick 20
         assertTrue(result.isEmpty());
     }
+
+    /**
+     * @param: A camera with frequency 2 built from frames at times 1, 3, 3 and 7, the two frames at
+     *         time 3 being different.
+     * @pre: The frames are given in file order.
+     * @post:
+     *       - getFrame(t) returns the first frame whose time + frequency == t, and null for ticks
+     *         between, before and after the frames.
+     *       - checkIfLeft(t) is true up to the last frame's tick (9) and false after it.
+     */
+    @Test
+    void testGetFrameIndexedByReportTick() {
+        StampedDetectedObjects first = frame(1);
+        StampedDetectedObjects third = frame(3);
+        StampedDetectedObjects duplicate = frame(3);
+        StampedDetectedObjects last = frame(7);
+        Camera indexed = new Camera(2, 2, STATUS.UP, Arrays.asList(first, third, duplicate, last));
+
+        assertSame(first, indexed.getFrame(3));
+        assertSame(third, indexed.getFrame(5), "The first frame of a tick wins");
+        assertSame(last, indexed.getFrame(9));
+        assertNull(indexed.getFrame(4));
+        assertNull(indexed.getFrame(2));
+        assertNull(indexed.getFrame(-1));
+        assertNull(indexed.getFrame(10));
+        assertTrue(indexed.checkIfLeft(9));
+        assertFalse(indexed.checkIfLeft(10));
+    }
+
+    /**
+     * @param: The shared camera data file, which holds the frames of camera1 and camera2.
+     * @pre: Both cameras are requested in a single load.
+     * @post:
+     *       - Each camera gets all of its own frames, in file order, with the same contents as when
+     *         the whole file is parsed into a tree.
+     *       - Requesting a camera the file has no frames for fails with an IOException.
+     */
+    @Test
+    void testLoaderSplitsSharedFileByCamera() throws IOException {
+        String path = "./src/test/resources/camera_data.json";
+        Map<String, List<StampedDetectedObjects>> frames = CameraDataLoader.load(path, Arrays.asList("camera1", "camera2"));
+
+        assertEquals(2, frames.size());
+        for (int id = 1; id <= 2; id++) {
+            List<StampedDetectedObjects> loaded = frames.get("camera" + id);
+            List<StampedDetectedObjects> alone = parseWhole(path, "camera" + id);
+            assertEquals(alone.size(), loaded.size());
+            for (int i = 0; i < alone.size(); i++)
+                assertEquals(alone.get(i).toString(), loaded.get(i).toString());
+        }
+        assertEquals(1, frames.get("camera1").get(0).getTime());
+        assertThrows(IOException.class, () -> CameraDataLoader.load(path, Arrays.asList("camera1", "camera9")));
+    }
+
+    private static List<StampedDetectedObjects> parseWhole(String path, String key) throws IOException {
+        try (FileReader reader = new FileReader(path)) {
+            JsonObject file = new Gson().fromJson(reader, JsonObject.class);
+            return new Gson().fromJson(file.getAsJsonArray(key), new TypeToken<List<StampedDetectedObjects>>() {}.getType());
+        }
+    }
+
+    private static StampedDetectedObjects frame(int time) {
+        return new StampedDetectedObjects(time, Collections.singletonList(new DetectedObject("Wall_" + time, "Wall")));
+    }
 }
@@ -0,0 +1,194 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.messages.DetectObjectsEvent;
+import bgu.spl.mics.application.messages.TrackedObjectEvent;
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.PointCloud;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import bgu.spl.mics.application.objects.TrackedObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventRouteTest {
+    private static final int KEYS = 10_000;
+
+    private EventRoute route;
+
+    private static class KeyEvent implements KeyedEvent<String> {
+        private final Object key;
+
+        KeyEvent(Object key) {
+            this.key = key;
+        }
+
+        @Override
+        public Object getRoutingKey() {
+            return key;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        route = new EventRoute();
+        route.setPolicy(DispatchPolicy.CONSISTENT_HASH);
+        for (int i = 0; i < 4; i++)
+            route.add(service("Worker" + i), mailbox(), 1);
+    }
+
+    /**
+     * @param: KeyedEvent e - events routed with DispatchPolicy.CONSISTENT_HASH over a fixed set of subscribers.
+     * @pre: The route has several subscribers and none join or leave.
+     * @post: All events with equal keys are routed to the same mailbox, and every subscriber owns some keys.
+     */
+    @Test
+    void testEqualKeysStickToOneSubscriber() {
+        Map<Object, Mailbox> owners = owners();
+        for (int k = 0; k < KEYS; k++)
+            assertSame(owners.get("object-" + k), route.select(new KeyEvent("object-" + k)));
+        assertEquals(4, new HashSet<>(owners.values()).size(), "Every subscriber should own keys");
+    }
+
+    /**
+     * @param: MicroService m - a subscriber joining and then leaving a route of four subscribers.
+     * @pre: Keys are spread over the four original subscribers.
+     * @post: Joining moves only keys onto the new subscriber (about a fifth of them) and leaving
+     *        returns exactly the original assignment.
+     */
+    @Test
+    void testOnlyFewKeysMoveOnMembershipChange() {
+        Map<Object, Mailbox> before = owners();
+        MicroService joiner = service("Worker4");
+        Mailbox joinerMailbox = mailbox();
+        route.add(joiner, joinerMailbox, 1);
+        Map<Object, Mailbox> during = owners();
+
+        int moved = 0;
+        for (Object key : before.keySet()) {
+            if (during.get(key) != before.get(key)) {
+                assertSame(joinerMailbox, during.get(key), "Keys may only move to the new subscriber");
+                moved++;
+            }
+        }
+        assertTrue(moved > KEYS / 10 && moved < KEYS * 3 / 10, "Moved " + moved + " of " + KEYS + " keys");
+
+        route.remove(joiner);
+        assertEquals(before, owners());
+    }
+
+    /**
+     * @param: MicroService m - one of three subscribers that share a name, leaving the route.
+     * @pre: Keys are spread over the three same-named subscribers.
+     * @post: Only the keys of the subscriber that left move; the other two keep every key they owned.
+     */
+    @Test
+    void testSameNamedSubscribersKeepTheirKeys() {
+        route = new EventRoute();
+        route.setPolicy(DispatchPolicy.CONSISTENT_HASH);
+        MicroService first = service("CameraService");
+        Mailbox firstMailbox = mailbox();
+        route.add(first, firstMailbox, 1);
+        route.add(service("CameraService"), mailbox(), 1);
+        route.add(service("CameraService"), mailbox(), 1);
+        Map<Object, Mailbox> before = owners();
+        assertEquals(3, new HashSet<>(before.values()).size(), "Every subscriber should own keys");
+
+        route.remove(first);
+        Map<Object, Mailbox> after = owners();
+        for (Object key : before.keySet()) {
+            if (before.get(key) != firstMailbox)
+                assertSame(before.get(key), after.get(key), "Key " + key + " moved between staying subscribers");
+        }
+    }
+
+    /**
+     * @param: DetectObjectsEvent e, TrackedObjectEvent t - frames routed with DispatchPolicy.CONSISTENT_HASH.
+     * @pre: The route has several subscribers and none join or leave.
+     * @post: All the frames of one camera reach one subscriber whatever objects they hold, a frame of
+     *        an unknown camera is keyed by its time, and an empty tracked batch has no key and goes
+     *        round-robin over every subscriber.
+     */
+    @Test
+    void testFrameEventsKeyedByCameraAndStamp() {
+        Mailbox camera = route.select(new DetectObjectsEvent("Camera1", frame(1, "Wall_1")));
+        for (int time = 2; time <= 50; time++)
+            assertSame(camera, route.select(new DetectObjectsEvent("Camera1", frame(time, "Wall_" + time))));
+        assertSame(camera, route.select(new DetectObjectsEvent("Camera1", frame(51))));
+
+        assertEquals(7, new DetectObjectsEvent(frame(7)).getRoutingKey());
+        assertEquals(7, new DetectObjectsEvent(frame(7, "Wall_1")).getRoutingKey());
+        assertEquals("Wall_1", new TrackedObjectEvent(Collections.singletonList(tracked("Wall_1", 7))).getRoutingKey());
+
+        TrackedObjectEvent empty = new TrackedObjectEvent(new ArrayList<>());
+        assertNull(empty.getRoutingKey());
+        HashSet<Mailbox> reached = new HashSet<>();
+        for (int i = 0; i < 4; i++)
+            reached.add(route.select(empty));
+        assertEquals(4, reached.size(), "Unkeyed events should go round-robin");
+    }
+
+    /**
+     * @param: String id - one landmark, tracked alone and inside mixed frames at many times.
+     * @pre: The route hashes by key over four subscribers.
+     * @post: Every event holding the landmark, once split by landmark, goes to one subscriber.
+     */
+    @Test
+    void testTrackedObjectsKeyedByLandmark() {
+        Mailbox owner = route.select(new TrackedObjectEvent(Collections.singletonList(tracked("Wall_1", 1))));
+        for (int time = 2; time <= 50; time++) {
+            TrackedObjectEvent frame = new TrackedObjectEvent(Arrays.asList(
+                    tracked("Door_" + time, time), tracked("Wall_1", time), tracked("Door_" + time, time)));
+            List<TrackedObjectEvent> parts = frame.byLandmark();
+            assertEquals(2, parts.size());
+            for (TrackedObjectEvent part : parts) {
+                for (TrackedObject object : part.getTrackedObjects())
+                    assertEquals(part.getRoutingKey(), object.getId());
+                if ("Wall_1".equals(part.getRoutingKey()))
+                    assertSame(owner, route.select(part), "Wall_1 at time " + time + " changed owner");
+            }
+            assertEquals(2, parts.get(0).getTrackedObjects().size());
+        }
+
+        TrackedObjectEvent single = new TrackedObjectEvent(Arrays.asList(tracked("Wall_1", 9), tracked("Wall_1", 9)));
+        assertEquals(Collections.singletonList(single), single.byLandmark());
+    }
+
+    private static TrackedObject tracked(String id, int time) {
+        return new TrackedObject(id, time, "Wall", new PointCloud(0));
+    }
+
+    private static StampedDetectedObjects frame(int time, String... ids) {
+        List<DetectedObject> objects = new ArrayList<>();
+        for (String id : ids)
+            objects.add(new DetectedObject(id, "Wall"));
+        return new StampedDetectedObjects(time, objects);
+    }
+
+    private Map<Object, Mailbox> owners() {
+        Map<Object, Mailbox> owners = new HashMap<>();
+        for (int k = 0; k < KEYS; k++)
+            owners.put("object-" + k, route.select(new KeyEvent("object-" + k)));
+        return owners;
+    }
+
+    private static MicroService service(String name) {
+        return new MicroService(name) {
+            @Override
+            protected void initialize() {}
+        };
+    }
+
+    private static Mailbox mailbox() {
+        return new Mailbox(Collections.emptyMap(), new AtomicLongArray(BackpressurePolicy.values().length), new BusMetrics(), new Quiescence(), m -> {});
+    }
+}
@@ -1,7 +1,11 @@
 package bgu.spl.mics;
 import bgu.spl.mics.application.objects.CloudPoint;
 import bgu.spl.mics.application.objects.FusionSlam;
+import bgu.spl.mics.application.objects.LandMark;
+import bgu.spl.mics.application.objects.PointCloud;
 import bgu.spl.mics.application.objects.Pose;
+import bgu.spl.mics.application.objects.StampedCloudPoints;
+import com.google.gson.Gson;
 import org.junit.jupiter.api.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -70,5 +74,48 @@ public class FusionSlamTest {
         assertEquals(6.0, mergedCoords.get(1).getY(), 0.001, "Merged Y value at index 1 should be averaged");
     }
 
+    /**
+     * @param: PointCloud local - packed points with (x, y, z), read from the LiDAR file format.
+     *         Pose currentPose - the robot's global position and orientation.
+     * @pre: local != null && currentPose != null.
+     * @post:
+     *       - The packed transform and merge give the same x and y as the CloudPoint versions.
+     *       - z is kept through the transform and averaged by the merge.
+     *       - A landmark is written in the output format, with x and y only.
+     */
+    @Test
+    void testPackedPointsKeepZ() {
+        Gson gson = new Gson();
+        StampedCloudPoints stamped = gson.fromJson(
+                "{\"id\":\"Wall_1\",\"time\":2,\"cloudPoints\":[[1.0,2.0,0.5],[3.0,4.0],[9.0]]}",
+                StampedCloudPoints.class);
+        PointCloud local = stamped.getCloudPoints();
+        assertEquals(2, local.size(), "Points with fewer than two coordinates should be skipped");
+        assertEquals(0.5, local.getZ(0), 0.001, "z should be kept");
+        assertEquals(0.0, local.getZ(1), 0.001, "A missing z should be 0");
 
+        Pose currentPose = new Pose(5, 5, 90, 10);
+        FusionSlam fusionSlam = FusionSlam.getInstance();
+        PointCloud global = fusionSlam.transformToGlobal(local, currentPose);
+        for (int i = 0; i < local.size(); i++) {
+            CloudPoint expected = fusionSlam.transformToGlobal(local.asList().get(i), currentPose);
+            assertEquals(expected.getX(), global.getX(i), 0.0, "Packed X should match the CloudPoint transform");
+            assertEquals(expected.getY(), global.getY(i), 0.0, "Packed Y should match the CloudPoint transform");
+            assertEquals(local.getZ(i), global.getZ(i), 0.0, "z should be carried through the transform");
+        }
+
+        PointCloud other = new PointCloud();
+        other.add(5.0, 6.0, 1.5);
+        PointCloud merged = fusionSlam.mergeCoordinates(global, other);
+        assertEquals(1, merged.size(), "Merged size should match the smaller cloud");
+        assertEquals(1.0, merged.getZ(0), 0.001, "Merged z should be averaged");
+
+        LandMark landMark = new LandMark("Wall_1", "Wall", merged);
+        String json = gson.toJson(landMark);
+        assertFalse(json.contains("\"z\""), "z should not be written to the output");
+        assertEquals(merged.getX(0), landMark.getCoordinates().get(0).getX(), 0.0, "The view should read the packed points");
+        assertEquals(landMark.getCoordinates().get(0).getY(),
+                gson.fromJson(json, LandMark.class).getCoordinates().get(0).getY(), 0.0,
+                "The output format should read back");
+    }
 }
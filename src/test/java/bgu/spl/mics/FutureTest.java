@@ -0,0 +1,151 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FutureTest {
+    private Future<String> future;
+
+    @BeforeEach
+    void setUp() {
+        future = new Future<>();
+    }
+
+    /**
+     * @param: long timeout, TimeUnit unit - the maximal time to wait for the result.
+     * @pre: future.isDone() == false and nobody resolves it.
+     * @post: get(timeout, unit) returns null after roughly {@code timeout}, not later.
+     */
+    @Test
+    void testTimedGetHonoursTimeout() {
+        long start = System.nanoTime();
+        assertNull(future.get(100, TimeUnit.MILLISECONDS));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis >= 100, "Should wait for the full timeout");
+        assertTrue(elapsedMillis < 2000, "Should return once the timeout elapsed");
+        assertFalse(future.isDone());
+    }
+
+    /**
+     * @param: T result - the value resolved by another thread.
+     * @pre: A thread is blocked in get() on an unresolved future.
+     * @post: The blocked thread wakes up with the resolved result & isDone() == true.
+     */
+    @Test
+    void testGetWakesOnResolve() throws InterruptedException {
+        List<String> received = new ArrayList<>();
+        Thread waiter = new Thread(() -> received.add(future.get()));
+        waiter.start();
+        Thread.sleep(50);
+        future.resolve("done");
+        waiter.join(2000);
+
+        assertFalse(waiter.isAlive());
+        assertEquals("done", received.get(0));
+        assertTrue(future.isDone());
+    }
+
+    /**
+     * @param: Callback<T> callback - continuations registered before and after resolution.
+     * @pre: future.isDone() == false for the first callback.
+     * @post: Each callback runs exactly once with the first resolved result, in registration order;
+     *        a callback registered after resolution runs immediately.
+     */
+    @Test
+    void testOnCompleteRunsOnceInOrder() {
+        List<String> calls = new ArrayList<>();
+        future.onComplete(result -> calls.add("first:" + result));
+        future.onComplete(result -> calls.add("second:" + result));
+        future.resolve("a");
+        future.resolve("b");
+        future.onComplete(result -> calls.add("late:" + result));
+
+        assertEquals(3, calls.size());
+        assertEquals("first:a", calls.get(0));
+        assertEquals("second:a", calls.get(1));
+        assertEquals("late:a", calls.get(2));
+        assertEquals("a", future.get(0, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * @param: Callback<T> callback - a callback that throws, registered between two that do not.
+     * @pre: A thread is blocked in get() and future.isDone() == false.
+     * @post: resolve() wakes the blocked thread and runs every callback before it rethrows the
+     *        failing callback's exception.
+     */
+    @Test
+    void testThrowingCallbackDoesNotStopRelease() throws InterruptedException {
+        List<String> calls = new ArrayList<>();
+        List<String> received = new ArrayList<>();
+        Thread waiter = new Thread(() -> received.add(future.get()));
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+        future.onComplete(result -> calls.add("first:" + result));
+        future.onComplete(result -> {
+            throw new IllegalStateException("callback failed");
+        });
+        future.onComplete(result -> calls.add("third:" + result));
+
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> future.resolve("done"));
+        assertEquals("callback failed", thrown.getMessage());
+        waiter.join(2000);
+
+        assertFalse(waiter.isAlive());
+        assertEquals("done", received.get(0));
+        assertEquals(2, calls.size());
+        assertEquals("first:done", calls.get(0));
+        assertEquals("third:done", calls.get(1));
+    }
+
+    /**
+     * @param: long timeout - short enough that many timed gets give up, some of them interrupted.
+     * @pre: Several threads repeatedly time out on the same unresolved future while callbacks
+     *       are registered on it.
+     * @post: Unlinking the abandoned waiters keeps every callback on the future: after resolve()
+     *        each runs exactly once, and a thread still waiting in get() is woken.
+     */
+    @Test
+    void testAbandonedWaitersKeepCallbacks() throws InterruptedException {
+        int threads = 4;
+        int callbacks = 200;
+        List<Thread> timers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread timer = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    if (i % 50 == 0)
+                        Thread.currentThread().interrupt();
+                    assertNull(future.get(10, TimeUnit.MICROSECONDS));
+                    Thread.interrupted();
+                }
+            });
+            timers.add(timer);
+            timer.start();
+        }
+        int[] ran = new int[callbacks];
+        for (int c = 0; c < callbacks; c++) {
+            int index = c;
+            future.onComplete(result -> ran[index]++);
+        }
+        for (Thread timer : timers)
+            timer.join(10_000);
+        List<String> received = new ArrayList<>();
+        Thread waiter = new Thread(() -> received.add(future.get()));
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+        future.resolve("done");
+        waiter.join(2000);
+
+        assertFalse(waiter.isAlive());
+        assertEquals("done", received.get(0));
+        for (int c = 0; c < callbacks; c++)
+            assertEquals(1, ran[c], "Callback " + c + " should run exactly once");
+    }
+}
@@ -1,48 +1,288 @@
-package bgu.spl.mics;
-import bgu.spl.mics.application.objects.*;
-import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Test;
-
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import static org.junit.jupiter.api.Assertions.assertEquals;
-
-class LiDarWorkerTrackerTest {
-
-    private LiDarWorkerTracker tracker;
-
-    @BeforeEach
-    void setUp() throws IOException {
-        tracker = new LiDarWorkerTracker(1, 0, STATUS.UP, new ArrayList<>());
-        LiDarDataBase ds = LiDarDataBase.getInstance("./src/test/resources/lidar_data.json");
-
-    }
-
-    /**
-     * @param:
-     *       - List<DetectedObject> detectedObjects - a list of detected objects to process.
-     *       - int currentTick - the current tick for processing.
-     * @pre:
-     *       - detectedObjects != null and contains valid DetectedObject instances with non-null IDs and descriptions.
-     *       - LiDarWorkerTracker (tracker) is initialized and active.
-     *       - LiDarDataBase contains matching cloud points for each detected object ID at the given tick.
-     * @post:
-     *       - Returns a List<TrackedObject> where each TrackedObject corresponds to a DetectedObject.
-     *       - The size of the returned list matches the number of detected objects processed.
-     *       - Each TrackedObject contains the same ID as its corresponding DetectedObject.
-     */
-    @Test
-    void testProcessDetectedObjects() {
-        List<DetectedObject> detectedObjects = Arrays.asList(
-                new DetectedObject("Wall_3", "Wall"),
-                new DetectedObject("Chair_Base_1", "Chair Base")
-        );
-
-        List<TrackedObject> result = tracker.processDetectedObjects(detectedObjects, 4);
-        assertEquals(2, result.size());
-        assertEquals("Wall_3", result.get(0).getId());
-        assertEquals("Chair_Base_1", result.get(1).getId());
-    }
-}
+package bgu.spl.mics;
+import bgu.spl.mics.application.objects.*;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LiDarWorkerTrackerTest {
+
+    private LiDarWorkerTracker tracker;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tracker = new LiDarWorkerTracker(1, 0, STATUS.UP, new ArrayList<>());
+        LiDarDataBase ds = LiDarDataBase.getInstance("./src/test/resources/lidar_data.json");
+
+    }
+
+    /**
+     * @param:
+     *       - List<DetectedObject> detectedObjects - a list of detected objects to process.
+     *       - int currentTick - the current tick for processing.
+     * @pre:
+     *       - detectedObjects != null and contains valid DetectedObject instances with non-null IDs and descriptions.
+     *       - LiDarWorkerTracker (tracker) is initialized and active.
+     *       - LiDarDataBase contains matching cloud points for each detected object ID at the given tick.
+     * @post:
+     *       - Returns a List<TrackedObject> where each TrackedObject corresponds to a DetectedObject.
+     *       - The size of the returned list matches the number of detected objects processed.
+     *       - Each TrackedObject contains the same ID as its corresponding DetectedObject.
+     */
+    @Test
+    void testProcessDetectedObjects() {
+        List<DetectedObject> detectedObjects = Arrays.asList(
+                new DetectedObject("Wall_3", "Wall"),
+                new DetectedObject("Chair_Base_1", "Chair Base")
+        );
+
+        List<TrackedObject> result = tracker.processDetectedObjects(detectedObjects, 4);
+        assertEquals(2, result.size());
+        assertEquals("Wall_3", result.get(0).getId());
+        assertEquals("Chair_Base_1", result.get(1).getId());
+    }
+
+    /**
+     * @param: An index over entries at time 5: Wall_1, ERROR, Wall_2 (in file order), and Wall_9 at time 6.
+     * @pre: Frames at time 5 and 6 with various detected objects are tracked against that index.
+     * @post:
+     *       - Objects whose entry comes before the ERROR entry are tracked.
+     *       - A frame with an object whose entry comes after the ERROR entry, or that has no entry
+     *         while there is an ERROR entry, gives null.
+     *       - Without an ERROR entry at the frame's time, objects with no entry are skipped.
+     */
+    @Test
+    void testCreateTrackedObjectsErrorOrder() {
+        CloudPointIndex index = new CloudPointIndex(Arrays.asList(
+                new StampedCloudPoints("Wall_1", 5),
+                new StampedCloudPoints("ERROR", 5),
+                new StampedCloudPoints("Wall_2", 5),
+                new StampedCloudPoints("Wall_9", 6)));
+
+        List<TrackedObject> beforeError = tracker.createTrackedObjects(frame(5, "Wall_1"), index);
+        assertNotNull(beforeError);
+        assertEquals(1, beforeError.size());
+        assertNull(tracker.createTrackedObjects(frame(5, "Wall_1", "Wall_2"), index));
+        assertNull(tracker.createTrackedObjects(frame(5, "Missing"), index));
+        List<TrackedObject> noError = tracker.createTrackedObjects(frame(6, "Missing", "Wall_9"), index);
+        assertEquals(1, noError.size());
+        assertEquals("Wall_9", noError.get(0).getId());
+        assertEquals(0, tracker.createTrackedObjects(frame(7, "Wall_9"), index).size());
+    }
+
+    /**
+     * @param: Every time in the test LiDAR data, with a frame detecting all the ids recorded at that
+     *         time plus one that is not recorded.
+     * @pre: The LiDarDataBase is loaded from the test resources.
+     * @post: createTrackedObjects gives the same objects, times and cloud points as a scan of the
+     *        whole database does.
+     */
+    @Test
+    void testCreateTrackedObjectsMatchesScan() throws IOException {
+        List<StampedCloudPoints> all = recorded();
+        for (int time = 0; time <= 14; time++) {
+            List<DetectedObject> detected = new ArrayList<>();
+            for (StampedCloudPoints cp : all) {
+                if (cp.getTime() == time)
+                    detected.add(new DetectedObject(cp.getId(), "desc"));
+            }
+            detected.add(new DetectedObject("Unrecorded", "desc"));
+            StampedDetectedObjects frame = new StampedDetectedObjects(time, detected);
+
+            List<TrackedObject> indexed = tracker.createTrackedObjects(frame);
+            int expected = 0;
+            for (DetectedObject o : detected) {
+                for (StampedCloudPoints cp : all) {
+                    if (cp.getTime() == time && cp.getId().equals(o.getId())) {
+                        TrackedObject tracked = indexed.get(expected++);
+                        assertEquals(o.getId(), tracked.getId());
+                        assertEquals(time, tracked.getTime());
+                        assertEquals(cp.getCloudPoints().size(), tracked.getCoordinates().size());
+                        break;
+                    }
+                }
+            }
+            assertEquals(expected, indexed.size());
+        }
+    }
+
+    /**
+     * @param: The test LiDAR data, converted to the binary format, and a small recording with an
+     *         ERROR entry between two entries of the same time, written out of time order.
+     * @pre: The LiDarDataBase is loaded from the test resources' JSON file.
+     * @post:
+     *       - The mapped file holds the same entries, in file order, with the same cloud points,
+     *         z included.
+     *       - Every (time, id) lookup and every first entry of an id match the loaded index.
+     *       - Frames tracked against the mapped file give the same objects, or null for an error.
+     */
+    @Test
+    void testMappedCloudPointsMatchLoaded() throws IOException {
+        File binary = File.createTempFile("lidar_data", ".bin");
+        binary.deleteOnExit();
+        MappedCloudPoints.convert("./src/test/resources/lidar_data.json", binary.getPath());
+        assertTrue(MappedCloudPoints.isBinary(binary.getPath()));
+        assertFalse(MappedCloudPoints.isBinary("./src/test/resources/lidar_data.json"));
+        MappedCloudPoints mapped = MappedCloudPoints.open(binary.getPath());
+
+        List<StampedCloudPoints> all = recorded();
+        CloudPointLookup loaded = LiDarDataBase.getInstance().getIndex();
+        assertEquals(all.size(), mapped.asList().size());
+        for (int i = 0; i < all.size(); i++)
+            assertSameEntry(all.get(i), mapped.asList().get(i));
+        for (StampedCloudPoints cp : all) {
+            assertSameEntry(loaded.get(cp.getId(), cp.getTime()), mapped.get(cp.getId(), cp.getTime()));
+            assertSameEntry(loaded.first(cp.getId()), mapped.first(cp.getId()));
+        }
+        for (int time = -1; time <= 16; time++) {
+            assertEquals(loaded.bucket(time) == null, mapped.bucket(time) == null);
+            assertNull(mapped.get("Unrecorded", time));
+        }
+
+        File json = File.createTempFile("lidar_data", ".json");
+        json.deleteOnExit();
+        try (FileWriter writer = new FileWriter(json)) {
+            writer.write("[{\"id\":\"Wall_9\",\"time\":6,\"cloudPoints\":[[1.0,2.0,0.5]]},"
+                    + "{\"id\":\"Wall_1\",\"time\":5,\"cloudPoints\":[[3.0,4.0]]},"
+                    + "{\"id\":\"ERROR\",\"time\":5,\"cloudPoints\":[]},"
+                    + "{\"id\":\"Wall_2\",\"time\":5,\"cloudPoints\":[[5.0,6.0,0.1]]}]");
+        }
+        MappedCloudPoints.convert(json.getPath(), binary.getPath());
+        mapped = MappedCloudPoints.open(binary.getPath());
+        assertEquals(0.5, mapped.first("Wall_9").getCloudPoints().getZ(0), 0.0);
+        assertEquals(1, tracker.createTrackedObjects(frame(5, "Wall_1"), mapped).size());
+        assertNull(tracker.createTrackedObjects(frame(5, "Wall_1", "Wall_2"), mapped));
+        assertNull(tracker.createTrackedObjects(frame(5, "Missing"), mapped));
+        assertEquals("Wall_9", tracker.createTrackedObjects(frame(6, "Missing", "Wall_9"), mapped).get(0).getId());
+        assertEquals(0, tracker.createTrackedObjects(frame(7, "Wall_9"), mapped).size());
+    }
+
+    /**
+     * @param: A cloud of five points: three in the voxel [0, 1)^3, then one in [1, 2) x [0, 1)^2, then
+     *         one more in the first voxel; a leaf size of 1.
+     * @pre: The downsampler has seen no points yet.
+     * @post:
+     *       - The cloud is reduced to one centroid per voxel, in the order the voxels were first reached.
+     *       - The points given and kept are counted, and the reduction is their ratio.
+     *       - A cloud with a point per voxel is returned as it is.
+     */
+    @Test
+    void testVoxelGridKeepsCentroids() {
+        PointCloud cloud = new PointCloud();
+        cloud.add(0.1, 0.2, 0.0);
+        cloud.add(0.3, 0.4, 0.5);
+        cloud.add(0.2, 0.0, 0.1);
+        cloud.add(1.5, 0.5, 0.5);
+        cloud.add(0.2, 0.2, 0.2);
+        CloudDownsampler downsampler = new CloudDownsampler(1.0, 1.0, 0);
+
+        PointCloud voxels = downsampler.apply(cloud, "Wall_1", 2);
+        assertEquals(2, voxels.size());
+        assertEquals(0.2, voxels.getX(0), 1e-12);
+        assertEquals(0.2, voxels.getY(0), 1e-12);
+        assertEquals(0.2, voxels.getZ(0), 1e-12);
+        assertEquals(1.5, voxels.getX(1), 0.0);
+        assertEquals(5, downsampler.getPointsIn());
+        assertEquals(2, downsampler.getPointsOut());
+        assertEquals(0.6, downsampler.getReduction(), 1e-12);
+        assertTrue(downsampler.apply(voxels, "Wall_1", 3) == voxels);
+    }
+
+    /**
+     * @param: A cloud of 100 points in a line, and a keep ratio of 0.25.
+     * @pre: No voxel grid.
+     * @post:
+     *       - 25 points are kept, in their order.
+     *       - The same object at the same time keeps the same points, whatever downsampler with
+     *         the same seed picks them; another time keeps other points.
+     */
+    @Test
+    void testRandomSubsamplingIsReproducible() {
+        PointCloud cloud = new PointCloud();
+        for (int p = 0; p < 100; p++)
+            cloud.add(p, 0, 0);
+        PointCloud kept = new CloudDownsampler(0, 0.25, 7).apply(cloud, "Wall_1", 4);
+        assertEquals(25, kept.size());
+        for (int p = 1; p < kept.size(); p++)
+            assertTrue(kept.getX(p - 1) < kept.getX(p));
+        assertEquals(kept.toString(), new CloudDownsampler(0, 0.25, 7).apply(cloud, "Wall_1", 4).toString());
+        assertFalse(kept.toString().equals(new CloudDownsampler(0, 0.25, 7).apply(cloud, "Wall_1", 5).toString()));
+        assertThrows(IllegalArgumentException.class, () -> new CloudDownsampler(0, 0, 7));
+        assertThrows(IllegalArgumentException.class, () -> new CloudDownsampler(-1, 1, 7));
+    }
+
+    /**
+     * @param: Every time in the test LiDAR data, with a frame detecting all the ids recorded at that time.
+     * @pre: The tracker downsamples with a leaf size of 0.5.
+     * @post:
+     *       - The same objects are tracked as without downsampling, each with at most as many points,
+     *         and at least one point if it had any.
+     *       - Without a downsampler, the recorded points are shared, not copied.
+     */
+    @Test
+    void testTrackerDownsamplesTrackedPoints() throws IOException {
+        List<StampedCloudPoints> all = recorded();
+        LiDarWorkerTracker downsampling = new LiDarWorkerTracker(2, 0, STATUS.UP, new ArrayList<>());
+        downsampling.setDownsampler(new CloudDownsampler(0.5, 1.0, 0));
+        for (int time = 0; time <= 14; time++) {
+            List<DetectedObject> detected = new ArrayList<>();
+            for (StampedCloudPoints cp : all) {
+                if (cp.getTime() == time && !cp.getId().equals("ERROR"))
+                    detected.add(new DetectedObject(cp.getId(), "desc"));
+            }
+            StampedDetectedObjects frame = new StampedDetectedObjects(time, detected);
+            List<TrackedObject> recorded = tracker.createTrackedObjects(frame);
+            List<TrackedObject> reduced = downsampling.createTrackedObjects(frame);
+            assertEquals(recorded.size(), reduced.size());
+            for (int i = 0; i < recorded.size(); i++) {
+                PointCloud points = recorded.get(i).getPoints();
+                assertTrue(points == LiDarDataBase.getInstance().getCloudPoints(recorded.get(i).getId(), time).getCloudPoints());
+                assertEquals(recorded.get(i).getId(), reduced.get(i).getId());
+                assertTrue(reduced.get(i).getPoints().size() <= points.size());
+                assertEquals(points.size() > 0, reduced.get(i).getPoints().size() > 0);
+            }
+        }
+        assertTrue(downsampling.getDownsampler().getPointsOut() < downsampling.getDownsampler().getPointsIn());
+    }
+
+    // The test LiDAR data in file order, parsed as the database parses it.
+    private static List<StampedCloudPoints> recorded() throws IOException {
+        try (FileReader reader = new FileReader("./src/test/resources/lidar_data.json")) {
+            return new Gson().fromJson(reader, new TypeToken<List<StampedCloudPoints>>(){}.getType());
+        }
+    }
+
+    private static void assertSameEntry(StampedCloudPoints expected, StampedCloudPoints actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTime(), actual.getTime());
+        PointCloud expectedPoints = expected.getCloudPoints();
+        PointCloud actualPoints = actual.getCloudPoints();
+        assertEquals(expectedPoints.size(), actualPoints.size());
+        for (int p = 0; p < expectedPoints.size(); p++) {
+            assertEquals(expectedPoints.getX(p), actualPoints.getX(p), 0.0);
+            assertEquals(expectedPoints.getY(p), actualPoints.getY(p), 0.0);
+            assertEquals(expectedPoints.getZ(p), actualPoints.getZ(p), 0.0);
+        }
+    }
+
+    private static StampedDetectedObjects frame(int time, String... ids) {
+        List<DetectedObject> objects = new ArrayList<>();
+        for (String id : ids)
+            objects.add(new DetectedObject(id, "desc"));
+        return new StampedDetectedObjects(time, objects);
+    }
+}
@@ -1,103 +1,594 @@
-package bgu.spl.mics;
-
-import bgu.spl.mics.application.services.TimeService;
-import org.junit.jupiter.api.Test;
-
-import static org.junit.jupiter.api.Assertions.*;
-import org.junit.jupiter.api.*;
-import static org.junit.jupiter.api.Assertions.*;
-
-import java.util.*;
-import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Test;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-
-import static org.junit.jupiter.api.Assertions.*;
-
-import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Test;
-
-import static org.junit.jupiter.api.Assertions.*;
-
-import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Test;
-
-import static org.junit.jupiter.api.Assertions.*;
-
-class MessageBusImplTest {
-    private MessageBusImpl messageBus;
-    private MicroService mockMicroService;
-
-    //Initializes an object to test
-    @BeforeEach
-    void setUp() {
-        messageBus = MessageBusImpl.getInstance();
-        mockMicroService = new MicroService("MockService") {
-            @Override
-            protected void initialize() {}
-        };
-    }
-
-    /**
-     * @param: A class that implements Event (TestEvent) and a registered MicroService (mockMicroService).
-     * @pre: The MicroService is registered with the MessageBus via register(MicroService m).
-     * @post: if (@pre: eventSubscribers.containsKey(TestEvent)):
-     *               @post: eventSubscribers.get(TestEvent).contains(mockMicroService) & the Future for TestEvent is non-null.
-     *        else (@pre: !eventSubscribers.containsKey(TestEvent)):
-     *               @post: eventSubscribers contains TestEvent mapped to a queue that includes mockMicroService, and the Future is non-null.
-     */
-    @Test
-    void testSubscribeEvent() {
-        class TestEvent implements Event<String> {}
-
-        messageBus.register(mockMicroService);
-        messageBus.subscribeEvent(TestEvent.class, mockMicroService);
-
-        TestEvent testEvent = new TestEvent();
-        Future<String> future = messageBus.sendEvent(testEvent);
-
-        assertNotNull(future, "Future should not be null for a subscribed event type");
-    }
-
-    /**
-     * @param: A class that implements Event (TestEvent) and a registered, subscribed MicroService (mockMicroService).
-     * @pre: The MicroService is registered with the MessageBus using register(MicroService m) and subscribed to the event type (TestEvent.class) via subscribeEvent.
-     * @post: if (@pre: eventSubscribers.containsKey(TestEvent) && eventSubscribers.get(TestEvent).contains(mockMicroService)):
-     *               @post: The TestEvent is added to the MicroService's queue & a new Future is created and mapped to the event.
-     *        else (@pre: eventSubscribers does not include TestEvent or mockMicroService is not subscribed):
-     *               @post: Future is null, and the event is not processed.
-     */
-    @Test
-    void testSendEvent() throws InterruptedException {
-        class TestEvent implements Event<String> {}
-
-        messageBus.register(mockMicroService);
-        messageBus.subscribeEvent(TestEvent.class, mockMicroService);
-
-        TestEvent testEvent = new TestEvent();
-        Future<String> future = messageBus.sendEvent(testEvent);
-
-        assertNotNull(future, "Future should not be null for a valid event");
-        Message receivedMessage = messageBus.awaitMessage(mockMicroService);
-        assertEquals(testEvent, receivedMessage, "MicroService should receive the correct event");
-    }
-
-    /**
-     * @param: A class that implements Event (TestEvent) and a MicroService (mockMicroService) that has not been registered.
-     * @pre: The MicroService is not registered with the MessageBus (register(MicroService m) has not been called for mockMicroService).
-     * @post: The method awaitMessage(mockMicroService) throws an IllegalStateException with the message "MicroService is not registered!".
-     */
-    @Test
-    void testAwaitMessageThrowsExceptionIfNotRegistered() {
-        class TestEvent implements Event<String> {}
-
-        Exception exception = assertThrows(
-                IllegalStateException.class,
-                () -> messageBus.awaitMessage(mockMicroService),
-                "Should throw IllegalStateException for unregistered MicroService"
-        );
-
-        assertEquals("MicroService is not registered!", exception.getMessage());
-    }
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.services.TimeService;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageBusImplTest {
+    private MessageBusImpl messageBus;
+    private BusConfigurator configurator;
+    private MicroService mockMicroService;
+
+    //Initializes an object to test
+    @BeforeEach
+    void setUp() {
+        messageBus = MessageBusImpl.getInstance();
+        configurator = BusConfigurator.of(messageBus);
+        mockMicroService = new MicroService("MockService") {
+            @Override
+            protected void initialize() {}
+        };
+    }
+
+    //Leaves the singleton bus untracked for the next test
+    @AfterEach
+    void tearDown() {
+        messageBus.disableQuiescenceTracking();
+    }
+
+    /**
+     * @param: A class that implements Event (TestEvent) and a registered MicroService (mockMicroService).
+     * @pre: The MicroService is registered with the MessageBus via register(MicroService m).
+     * @post: if (@pre: eventSubscribers.containsKey(TestEvent)):
+     *               @post: eventSubscribers.get(TestEvent).contains(mockMicroService) & the Future for TestEvent is non-null.
+     *        else (@pre: !eventSubscribers.containsKey(TestEvent)):
+     *               @post: eventSubscribers contains TestEvent mapped to a queue that includes mockMicroService, and the Future is non-null.
+     */
+    @Test
+    void testSubscribeEvent() {
+        class TestEvent implements Event<String> {}
+
+        messageBus.register(mockMicroService);
+        messageBus.subscribeEvent(TestEvent.class, mockMicroService);
+
+        TestEvent testEvent = new TestEvent();
+        Future<String> future = messageBus.sendEvent(testEvent);
+
+        assertNotNull(future, "Future should not be null for a subscribed event type");
+    }
+
+    /**
+     * @param: A class that implements Event (TestEvent) and a registered, subscribed MicroService (mockMicroService).
+     * @pre: The MicroService is registered with the MessageBus using register(MicroService m) and subscribed to the event type (TestEvent.class) via subscribeEvent.
+     * @post: if (@pre: eventSubscribers.containsKey(TestEvent) && eventSubscribers.get(TestEvent).contains(mockMicroService)):
+     *               @post: The TestEvent is added to the MicroService's queue & a new Future is created and mapped to the event.
+     *        else (@pre: eventSubscribers does not include TestEvent or mockMicroService is not subscribed):
+     *               @post: Future is null, and the event is not processed.
+     */
+    @Test
+    void testSendEvent() throws InterruptedException {
+        class TestEvent implements Event<String> {}
+
+        messageBus.register(mockMicroService);
+        messageBus.subscribeEvent(TestEvent.class, mockMicroService);
+
+        TestEvent testEvent = new TestEvent();
+        Future<String> future = messageBus.sendEvent(testEvent);
+
+        assertNotNull(future, "Future should not be null for a valid event");
+        Message receivedMessage = messageBus.awaitMessage(mockMicroService);
+        assertEquals(testEvent, receivedMessage, "MicroService should receive the correct event");
+    }
+
+    /**
+     * @param: A class that implements Event (TestEvent) and a MicroService (mockMicroService) that has not been registered.
+     * @pre: The MicroService is not registered with the MessageBus (register(MicroService m) has not been called for mockMicroService).
+     * @post: The method awaitMessage(mockMicroService) throws an IllegalStateException with the message "MicroService is not registered!".
+     */
+    @Test
+    void testAwaitMessageThrowsExceptionIfNotRegistered() {
+        class TestEvent implements Event<String> {}
+
+        Exception exception = assertThrows(
+                IllegalStateException.class,
+                () -> messageBus.awaitMessage(mockMicroService),
+                "Should throw IllegalStateException for unregistered MicroService"
+        );
+
+        assertEquals("MicroService is not registered!", exception.getMessage());
+    }
+
+    /**
+     * @param: A broadcast type limited to one queued message with DROP_NEWEST for services named "DropNewestService".
+     * @pre: The MicroService is registered after the limit is set and subscribed to the broadcast type.
+     * @post: Only the first of two broadcasts is queued & the DROP_NEWEST counter grew by one.
+     */
+    @Test
+    void testDropNewestPolicy() throws InterruptedException {
+        class TestBroadcast implements Broadcast {}
+        class OtherBroadcast implements Broadcast {}
+        MicroService service = new MicroService("DropNewestService") {
+            @Override
+            protected void initialize() {}
+        };
+        configurator.setMailboxLimit("DropNewestService", TestBroadcast.class, 1, BackpressurePolicy.DROP_NEWEST);
+        messageBus.register(service);
+        messageBus.subscribeBroadcast(TestBroadcast.class, service);
+        messageBus.subscribeBroadcast(OtherBroadcast.class, service);
+        long before = messageBus.getBackpressureCount(BackpressurePolicy.DROP_NEWEST);
+
+        TestBroadcast first = new TestBroadcast();
+        OtherBroadcast other = new OtherBroadcast();
+        messageBus.sendBroadcast(first);
+        messageBus.sendBroadcast(new TestBroadcast());
+        messageBus.sendBroadcast(other);
+
+        assertEquals(before + 1, messageBus.getBackpressureCount(BackpressurePolicy.DROP_NEWEST));
+        assertEquals(first, messageBus.awaitMessage(service));
+        assertEquals(other, messageBus.awaitMessage(service), "Other message types are not limited");
+        messageBus.unregister(service);
+    }
+
+    /**
+     * @param: An event type limited to one queued message with BLOCK for services named "BlockService".
+     * @pre: The mailbox already holds one event of that type when another thread sends a second.
+     * @post: Once interrupted, the blocked sender stops waiting with its interrupted status set and
+     *        a null Future, the DROP_NEWEST counter grew by one & only the first event is queued.
+     */
+    @Test
+    void testBlockPolicyGivesUpWhenInterrupted() throws InterruptedException {
+        class TestEvent implements Event<String> {}
+        MicroService service = new MicroService("BlockService") {
+            @Override
+            protected void initialize() {}
+        };
+        configurator.setMailboxLimit("BlockService", TestEvent.class, 1, BackpressurePolicy.BLOCK);
+        messageBus.register(service);
+        messageBus.subscribeEvent(TestEvent.class, service);
+        TestEvent first = new TestEvent();
+        assertNotNull(messageBus.sendEvent(first));
+        long before = messageBus.getBackpressureCount(BackpressurePolicy.DROP_NEWEST);
+
+        List<Object> outcome = Collections.synchronizedList(new ArrayList<>());
+        Thread sender = new Thread(() -> {
+            outcome.add(String.valueOf(messageBus.sendEvent(new TestEvent())));
+            outcome.add(Thread.currentThread().isInterrupted());
+        });
+        sender.start();
+        while (sender.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+        sender.interrupt();
+        sender.join(2000);
+
+        assertFalse(sender.isAlive(), "The interrupted sender should stop waiting");
+        assertEquals(Arrays.asList("null", true), outcome);
+        assertEquals(before + 1, messageBus.getBackpressureCount(BackpressurePolicy.DROP_NEWEST));
+        assertEquals(first, messageBus.awaitMessage(service));
+        assertFalse(pollsAnother(service), "The interrupted send should not be queued");
+        messageBus.unregister(service);
+    }
+
+    /**
+     * @param: An event type limited to one queued message with DROP_OLDEST for services named "DropOldestService".
+     * @pre: The MicroService is registered after the limit is set and subscribed to the event type.
+     * @post: The second event replaces the first in the mailbox & the first event's Future is resolved to null.
+     */
+    @Test
+    void testDropOldestPolicyResolvesEvictedFuture() throws InterruptedException {
+        class TestEvent implements Event<String> {}
+        MicroService service = new MicroService("DropOldestService") {
+            @Override
+            protected void initialize() {}
+        };
+        configurator.setMailboxLimit("DropOldestService", TestEvent.class, 1, BackpressurePolicy.DROP_OLDEST);
+        messageBus.register(service);
+        messageBus.subscribeEvent(TestEvent.class, service);
+
+        TestEvent second = new TestEvent();
+        Future<String> evicted = messageBus.sendEvent(new TestEvent());
+        Future<String> kept = messageBus.sendEvent(second);
+
+        assertNotNull(kept);
+        assertTrue(evicted.isDone(), "The evicted event's future should be resolved");
+        assertNull(evicted.get());
+        assertEquals(second, messageBus.awaitMessage(service));
+        messageBus.unregister(service);
+    }
+
+    /**
+     * @param: A broadcast type limited to two queued messages with COALESCE for services named "CoalesceService".
+     * @pre: The MicroService is registered after the limit is set and subscribed to the broadcast type.
+     * @post: Once the limit is reached, the queued broadcasts of that type collapse into the latest one.
+     */
+    @Test
+    void testCoalescePolicyKeepsLatest() throws InterruptedException {
+        class TestBroadcast implements Broadcast {}
+        MicroService service = new MicroService("CoalesceService") {
+            @Override
+            protected void initialize() {}
+        };
+        configurator.setMailboxLimit("CoalesceService", TestBroadcast.class, 2, BackpressurePolicy.COALESCE);
+        messageBus.register(service);
+        messageBus.subscribeBroadcast(TestBroadcast.class, service);
+
+        TestBroadcast latest = new TestBroadcast();
+        messageBus.sendBroadcast(new TestBroadcast());
+        messageBus.sendBroadcast(new TestBroadcast());
+        messageBus.sendBroadcast(latest);
+
+        assertEquals(latest, messageBus.awaitMessage(service));
+        assertFalse(pollsAnother(service), "Only the latest broadcast should remain");
+        messageBus.unregister(service);
+    }
+
+    /**
+     * @param: A broadcast type delivered through a shared ring and two registered MicroServices subscribed to it.
+     * @pre: The ring is enabled before the MicroServices subscribe; one of them is also subscribed to an event type.
+     * @post: Both MicroServices receive every broadcast, and each receives its messages in the order they were sent.
+     */
+    @Test
+    void testBroadcastRingDeliversToAllInSendOrder() throws InterruptedException {
+        class RingBroadcast implements Broadcast {}
+        class TestEvent implements Event<String> {}
+        MicroService other = new MicroService("RingSubscriber") {
+            @Override
+            protected void initialize() {}
+        };
+        configurator.enableBroadcastRing(RingBroadcast.class, 4);
+        messageBus.register(mockMicroService);
+        messageBus.register(other);
+        messageBus.subscribeBroadcast(RingBroadcast.class, mockMicroService);
+        messageBus.subscribeBroadcast(RingBroadcast.class, other);
+        messageBus.subscribeEvent(TestEvent.class, mockMicroService);
+
+        RingBroadcast first = new RingBroadcast();
+        TestEvent event = new TestEvent();
+        RingBroadcast second = new RingBroadcast();
+        messageBus.sendBroadcast(first);
+        messageBus.sendEvent(event);
+        messageBus.sendBroadcast(second);
+
+        assertEquals(first, messageBus.awaitMessage(mockMicroService));
+        assertEquals(event, messageBus.awaitMessage(mockMicroService));
+        assertEquals(second, messageBus.awaitMessage(mockMicroService));
+        assertEquals(first, messageBus.awaitMessage(other));
+        assertEquals(second, messageBus.awaitMessage(other));
+        messageBus.unregister(mockMicroService);
+        messageBus.unregister(other);
+    }
+
+    /**
+     * @param: A broadcast type delivered through a ring of 2 slots that drops the newest broadcast when full.
+     * @pre: Its only subscriber reads nothing while three broadcasts are sent.
+     * @post: The third send returns at once and is counted as a DROP_NEWEST; the subscriber receives
+     *        the first two, and broadcasts sent once it caught up are published again.
+     */
+    @Test
+    void testFullDropNewestRingNeverWaits() throws InterruptedException {
+        class DroppedRingBroadcast implements Broadcast {}
+        configurator.enableBroadcastRing(DroppedRingBroadcast.class, 2, BackpressurePolicy.DROP_NEWEST);
+        messageBus.register(mockMicroService);
+        messageBus.subscribeBroadcast(DroppedRingBroadcast.class, mockMicroService);
+        long dropped = messageBus.getBackpressureCount(BackpressurePolicy.DROP_NEWEST);
+
+        DroppedRingBroadcast first = new DroppedRingBroadcast();
+        DroppedRingBroadcast second = new DroppedRingBroadcast();
+        messageBus.sendBroadcast(first);
+        messageBus.sendBroadcast(second);
+        messageBus.sendBroadcast(new DroppedRingBroadcast());
+        assertEquals(dropped + 1, messageBus.getBackpressureCount(BackpressurePolicy.DROP_NEWEST));
+
+        assertEquals(first, messageBus.awaitMessage(mockMicroService));
+        assertEquals(second, messageBus.awaitMessage(mockMicroService));
+        DroppedRingBroadcast later = new DroppedRingBroadcast();
+        messageBus.sendBroadcast(later);
+        assertEquals(later, messageBus.awaitMessage(mockMicroService));
+        messageBus.unregister(mockMicroService);
+
+        class OtherRingBroadcast implements Broadcast {}
+        assertThrows(IllegalArgumentException.class,
+                () -> configurator.enableBroadcastRing(OtherRingBroadcast.class, 2, BackpressurePolicy.DROP_OLDEST));
+    }
+
+    /**
+     * @param: An event type dispatched with DispatchPolicy.LEAST_QUEUED and two subscribed MicroServices.
+     * @pre: One subscriber already holds queued events while the other's mailbox is empty.
+     * @post: Each new event goes to the subscriber with the shorter mailbox, never to the backed-up one.
+     */
+    @Test
+    void testLeastQueuedPolicyAvoidsBackedUpSubscriber() throws InterruptedException {
+        class TestEvent implements Event<String> {}
+        MicroService idle = new MicroService("LeastQueuedIdle") {
+            @Override
+            protected void initialize() {}
+        };
+        configurator.setDispatchPolicy(TestEvent.class, DispatchPolicy.LEAST_QUEUED);
+        messageBus.register(mockMicroService);
+        messageBus.subscribeEvent(TestEvent.class, mockMicroService);
+        for (int i = 0; i < 3; i++)
+            messageBus.sendEvent(new TestEvent()); // Only subscriber so far
+        messageBus.register(idle);
+        messageBus.subscribeEvent(TestEvent.class, idle);
+
+        TestEvent first = new TestEvent();
+        TestEvent second = new TestEvent();
+        messageBus.sendEvent(first);
+        messageBus.sendEvent(second);
+
+        assertEquals(first, messageBus.awaitMessage(idle));
+        assertEquals(second, messageBus.awaitMessage(idle));
+        messageBus.unregister(mockMicroService);
+        messageBus.unregister(idle);
+    }
+
+    /**
+     * @param: A uniquely named event type sent three times to a single registered, subscribed MicroService.
+     * @pre: No message of this type was sent before.
+     * @post: The metrics snapshot counts three sends of the type, records a queue wait for each
+     *        event taken, and the service's mailbox high-water mark is at least three.
+     */
+    @Test
+    void testMetricsCountSendsWaitsAndDepth() throws InterruptedException {
+        class MetricsProbeEvent implements Event<String> {}
+        MicroService service = new MicroService("MetricsProbeService") {
+            @Override
+            protected void initialize() {}
+        };
+        messageBus.register(service);
+        messageBus.subscribeEvent(MetricsProbeEvent.class, service);
+        for (int i = 0; i < 3; i++)
+            messageBus.sendEvent(new MetricsProbeEvent());
+        messageBus.awaitMessage(service);
+        messageBus.awaitMessage(service);
+
+        BusMetrics.Snapshot snapshot = messageBus.getMetricsSnapshot();
+        assertEquals(3L, snapshot.getSent().get("MetricsProbeEvent"));
+        assertEquals(2L, snapshot.getQueueWaitMicros().get("MetricsProbeEvent").getCount());
+        assertTrue(snapshot.getQueueHighWater().get("MetricsProbeService") >= 3);
+        messageBus.unregister(service);
+        assertTrue(messageBus.getMetricsSnapshot().getQueueHighWater().get("MetricsProbeService") >= 3,
+                "High-water marks survive unregistration");
+    }
+
+    /**
+     * @param: An event type with two subscribed MicroServices, each holding one dispatched, uncompleted event.
+     * @pre: Neither event was completed.
+     * @post: Unregistering one MicroService resolves the future of its own event with null and leaves the
+     *        future of the event pending on the other MicroService untouched and still completable.
+     */
+    @Test
+    void testUnregisterResolvesOnlyItsOwnPendingFutures() throws InterruptedException {
+        class TestEvent implements Event<String> {}
+        MicroService other = new MicroService("PendingFuturesOther") {
+            @Override
+            protected void initialize() {}
+        };
+        messageBus.register(mockMicroService);
+        messageBus.register(other);
+        messageBus.subscribeEvent(TestEvent.class, mockMicroService);
+        messageBus.subscribeEvent(TestEvent.class, other);
+        TestEvent first = new TestEvent();
+        TestEvent second = new TestEvent();
+        Future<String> firstFuture = messageBus.sendEvent(first);
+        Future<String> secondFuture = messageBus.sendEvent(second);
+        TestEvent onOther = messageBus.awaitMessage(other) == first ? first : second;
+        Future<String> otherFuture = onOther == first ? firstFuture : secondFuture;
+        Future<String> ownFuture = onOther == first ? secondFuture : firstFuture;
+
+        messageBus.unregister(mockMicroService);
+
+        assertTrue(ownFuture.isDone());
+        assertNull(ownFuture.get());
+        assertFalse(otherFuture.isDone());
+        messageBus.complete(onOther, "done");
+        assertEquals("done", otherFuture.get());
+        messageBus.unregister(other);
+    }
+
+    /**
+     * @param: Data broadcasts and ControlMessage broadcasts sent interleaved to one registered MicroService.
+     * @pre: The MicroService is subscribed to both types and has not taken any message yet.
+     * @post: awaitMessage returns all control broadcasts first, then the data broadcasts, each class in send order.
+     */
+    @Test
+    void testControlMessagesSkipAheadInOrder() throws InterruptedException {
+        class DataBroadcast implements Broadcast {}
+        class ControlBroadcast implements Broadcast, ControlMessage {}
+        messageBus.register(mockMicroService);
+        messageBus.subscribeBroadcast(DataBroadcast.class, mockMicroService);
+        messageBus.subscribeBroadcast(ControlBroadcast.class, mockMicroService);
+        DataBroadcast firstData = new DataBroadcast();
+        ControlBroadcast firstControl = new ControlBroadcast();
+        DataBroadcast secondData = new DataBroadcast();
+        ControlBroadcast secondControl = new ControlBroadcast();
+        messageBus.sendBroadcast(firstData);
+        messageBus.sendBroadcast(firstControl);
+        messageBus.sendBroadcast(secondData);
+        messageBus.sendBroadcast(secondControl);
+
+        assertEquals(firstControl, messageBus.awaitMessage(mockMicroService));
+        assertEquals(secondControl, messageBus.awaitMessage(mockMicroService));
+        assertEquals(firstData, messageBus.awaitMessage(mockMicroService));
+        assertEquals(secondData, messageBus.awaitMessage(mockMicroService));
+        messageBus.unregister(mockMicroService);
+    }
+
+    /**
+     * @param: Event e - sent one-way to a registered, subscribed MicroService, and once more with no subscriber.
+     * @pre: TestEvent has exactly one subscriber; OrphanEvent has none.
+     * @post: The one-way send delivers e and returns true without tracking a Future; sending an
+     *        event nobody subscribed to returns false.
+     */
+    @Test
+    void testSendEventOneWayTracksNoFuture() throws InterruptedException {
+        class TestEvent implements Event<String> {}
+        class OrphanEvent implements Event<String> {}
+        messageBus.register(mockMicroService);
+        messageBus.subscribeEvent(TestEvent.class, mockMicroService);
+        int tracked = messageBus.trackedFutureCount();
+
+        TestEvent event = new TestEvent();
+        assertTrue(messageBus.sendEventOneWay(event));
+        assertEquals(tracked, messageBus.trackedFutureCount());
+        assertEquals(event, messageBus.awaitMessage(mockMicroService));
+        assertFalse(messageBus.sendEventOneWay(new OrphanEvent()));
+        messageBus.unregister(mockMicroService);
+    }
+
+    /**
+     * @param: long timeout, TimeUnit unit - the expiry of an event's Future.
+     * @pre: The event is delivered to a subscribed MicroService that never completes it.
+     * @post: After the timeout the Future is resolved with null and no longer tracked by the bus.
+     */
+    @Test
+    void testSendEventWithTimeoutExpires() {
+        class TestEvent implements Event<String> {}
+        messageBus.register(mockMicroService);
+        messageBus.subscribeEvent(TestEvent.class, mockMicroService);
+        int tracked = messageBus.trackedFutureCount();
+
+        Future<String> future = messageBus.sendEvent(new TestEvent(), 50, TimeUnit.MILLISECONDS);
+        assertEquals(tracked + 1, messageBus.trackedFutureCount());
+        assertNull(future.get(2, TimeUnit.SECONDS));
+        assertTrue(future.isDone(), "The future should expire rather than time out the wait");
+        assertEquals(tracked, messageBus.trackedFutureCount());
+        messageBus.unregister(mockMicroService);
+    }
+
+    /**
+     * @param: Event Ping handled by a relay that then sends Pong to a sink; both handlers take a while.
+     * @pre: Quiescence tracking is enabled while the bus is idle; both services are running.
+     * @post: whenQuiescent() resolves only after the sink handled Pong, i.e. once everything the
+     *        Ping triggered has run to completion.
+     */
+    @Test
+    void testWhenQuiescentWaitsForTriggeredWork() throws InterruptedException {
+        class Ping implements Event<Void> {}
+        class Pong implements Event<Void> {}
+        class Stop implements Broadcast {}
+        java.util.concurrent.CountDownLatch ready = new java.util.concurrent.CountDownLatch(2);
+        java.util.concurrent.atomic.AtomicBoolean sinkDone = new java.util.concurrent.atomic.AtomicBoolean();
+        MicroService relay = new MicroService("QuiescenceRelay") {
+            @Override
+            protected void initialize() {
+                subscribeEvent(Ping.class, ping -> {
+                    sleep(50);
+                    sendEventOneWay(new Pong());
+                });
+                subscribeBroadcast(Stop.class, stop -> terminate());
+                ready.countDown();
+            }
+        };
+        MicroService sink = new MicroService("QuiescenceSink") {
+            @Override
+            protected void initialize() {
+                subscribeEvent(Pong.class, pong -> {
+                    sleep(50);
+                    sinkDone.set(true);
+                });
+                subscribeBroadcast(Stop.class, stop -> terminate());
+                ready.countDown();
+            }
+        };
+        configurator.enableQuiescenceTracking();
+        Thread relayThread = new Thread(relay);
+        Thread sinkThread = new Thread(sink);
+        relayThread.start();
+        sinkThread.start();
+        ready.await();
+
+        assertTrue(messageBus.sendEventOneWay(new Ping()));
+        Future<Void> quiescent = messageBus.whenQuiescent();
+        quiescent.get(5, TimeUnit.SECONDS);
+        assertTrue(quiescent.isDone());
+        assertTrue(sinkDone.get(), "The bus is not idle before the work Ping triggered is done");
+
+        messageBus.sendBroadcast(new Stop());
+        relayThread.join(2000);
+        sinkThread.join(2000);
+        assertFalse(relayThread.isAlive() || sinkThread.isAlive());
+    }
+
+    /**
+     * @param: Two broadcast types, one plain and one delivered through a ring, each with an
+     *         unfiltered subscriber and a subscriber filtering for even numbers.
+     * @pre: The four subscriptions are made before the numbers 1 to 4 are broadcast on both types.
+     * @post: The unfiltered subscribers receive all four broadcasts & the filtered ones only 2 and 4,
+     *        in send order, with nothing else queued for them.
+     */
+    @Test
+    void testBroadcastFilterSkipsRejectedBroadcasts() throws InterruptedException {
+        class Numbered implements Broadcast {
+            final int value;
+            Numbered(int value) { this.value = value; }
+        }
+        class PlainNumber extends Numbered { PlainNumber(int value) { super(value); } }
+        class RingNumber extends Numbered { RingNumber(int value) { super(value); } }
+        configurator.enableBroadcastRing(RingNumber.class, 8);
+        MicroService all = new MicroService("FilterAllSubscriber") {
+            @Override
+            protected void initialize() {}
+        };
+        MicroService even = new MicroService("FilterEvenSubscriber") {
+            @Override
+            protected void initialize() {}
+        };
+        BroadcastFilter<Numbered> evenOnly = b -> b.value % 2 == 0;
+        messageBus.subscribeBroadcast(PlainNumber.class, all);
+        messageBus.subscribeBroadcast(PlainNumber.class, even, evenOnly);
+        messageBus.subscribeBroadcast(RingNumber.class, all);
+        messageBus.subscribeBroadcast(RingNumber.class, even, evenOnly);
+
+        for (int i = 1; i <= 4; i++) {
+            messageBus.sendBroadcast(new PlainNumber(i));
+            messageBus.sendBroadcast(new RingNumber(i));
+        }
+
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, ((Numbered) messageBus.awaitMessage(all)).value);
+            assertEquals(i, ((Numbered) messageBus.awaitMessage(all)).value);
+        }
+        for (int i = 2; i <= 4; i += 2) {
+            assertEquals(i, ((PlainNumber) messageBus.awaitMessage(even)).value);
+            assertEquals(i, ((RingNumber) messageBus.awaitMessage(even)).value);
+        }
+        assertFalse(pollsAnother(even), "Rejected broadcasts are never queued");
+        messageBus.unregister(all);
+        messageBus.unregister(even);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // True if another message shows up for the service within a short wait.
+    private boolean pollsAnother(MicroService service) throws InterruptedException {
+        Thread taker = new Thread(() -> {
+            try {
+                messageBus.awaitMessage(service);
+            } catch (InterruptedException ignored) {
+            }
+        });
+        taker.start();
+        taker.join(200);
+        boolean received = !taker.isAlive();
+        taker.interrupt();
+        return received;
+    }
 }
\ No newline at end of file
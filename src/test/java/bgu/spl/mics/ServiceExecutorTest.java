@@ -0,0 +1,113 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServiceExecutorTest {
+
+    private static class Numbered implements Broadcast {
+        private final int number;
+
+        Numbered(int number) {
+            this.number = number;
+        }
+    }
+
+    private static class Stop implements Broadcast {}
+
+    /**
+     * Records the numbers it receives and terminates on {@link Stop}.
+     */
+    private static class Recorder extends MicroService {
+        private final List<Integer> received = new ArrayList<>();
+        private final CountDownLatch stopped;
+
+        Recorder(String name, CountDownLatch stopped) {
+            super(name);
+            this.stopped = stopped;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeBroadcast(Numbered.class, b -> received.add(b.number));
+            subscribeBroadcast(Stop.class, b -> {
+                terminate();
+                stopped.countDown();
+            });
+        }
+    }
+
+    /**
+     * @param: ExecutionMode.POOLED with a pool much smaller than the number of services.
+     * @pre: All services are subscribed once startAll() returns.
+     * @post: Every service receives every broadcast exactly once and in send order, and
+     *        awaitTermination() returns once all of them have terminated.
+     */
+    @Test
+    void testPooledServicesKeepPerServiceOrder() throws InterruptedException {
+        int servicesCount = 50;
+        int messages = 500;
+        CountDownLatch stopped = new CountDownLatch(servicesCount);
+        List<Recorder> services = new ArrayList<>();
+        for (int i = 0; i < servicesCount; i++)
+            services.add(new Recorder("PooledRecorder" + i, stopped));
+        ServiceExecutor executor = new ServiceExecutor(ExecutionMode.POOLED, 2);
+        executor.startAll(services);
+
+        MessageBusImpl bus = MessageBusImpl.getInstance();
+        for (int n = 0; n < messages; n++)
+            bus.sendBroadcast(new Numbered(n));
+        bus.sendBroadcast(new Stop());
+
+        assertTrue(stopped.await(10, TimeUnit.SECONDS), "All services should terminate");
+        executor.awaitTermination();
+        for (Recorder service : services) {
+            assertEquals(messages, service.received.size());
+            for (int n = 0; n < messages; n++)
+                assertEquals(n, (int) service.received.get(n));
+        }
+    }
+
+    /**
+     * @param: ExecutionMode.POOLED, checking a mailbox limit and a broadcast ring under each policy.
+     * @pre: None.
+     * @post: A BLOCK mailbox and a BLOCK ring are both refused with IllegalArgumentException;
+     *        every dropping policy is accepted for either.
+     */
+    @Test
+    void testPooledRefusesBlockingBackpressure() {
+        ServiceExecutor executor = new ServiceExecutor(ExecutionMode.POOLED, 1);
+        IllegalArgumentException mailbox = assertThrows(IllegalArgumentException.class,
+                () -> executor.checkBackpressure("The TrackedObjectEvent mailbox of FusionSlamService", BackpressurePolicy.BLOCK));
+        assertTrue(mailbox.getMessage().contains("FusionSlamService"));
+        IllegalArgumentException ring = assertThrows(IllegalArgumentException.class,
+                () -> executor.checkBackpressure("The TickBroadcast ring", BackpressurePolicy.BLOCK));
+        assertTrue(ring.getMessage().contains("TickBroadcast"));
+        for (BackpressurePolicy policy : BackpressurePolicy.values()) {
+            if (policy == BackpressurePolicy.BLOCK)
+                continue;
+            executor.checkBackpressure("The TrackedObjectEvent mailbox of FusionSlamService", policy);
+            executor.checkBackpressure("The TickBroadcast ring", policy);
+        }
+    }
+
+    /**
+     * @param: ExecutionMode.THREADS and ExecutionMode.VIRTUAL, checking BLOCK mailboxes and rings.
+     * @pre: None.
+     * @post: Each service has a thread of its own to wait on, so BLOCK is accepted in both modes.
+     */
+    @Test
+    void testThreadModesAllowBlockingBackpressure() {
+        for (ExecutionMode mode : new ExecutionMode[] {ExecutionMode.THREADS, ExecutionMode.VIRTUAL}) {
+            ServiceExecutor executor = new ServiceExecutor(mode, 1);
+            executor.checkBackpressure("The TrackedObjectEvent mailbox of FusionSlamService", BackpressurePolicy.BLOCK);
+            executor.checkBackpressure("The TickBroadcast ring", BackpressurePolicy.BLOCK);
+        }
+    }
+}
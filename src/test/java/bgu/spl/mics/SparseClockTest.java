@@ -0,0 +1,60 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.messages.TerminatedBroadcast;
+import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import bgu.spl.mics.application.objects.TickSchedule;
+import bgu.spl.mics.application.services.ClockMode;
+import bgu.spl.mics.application.services.TimeService;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SparseClockTest {
+
+    /**
+     * @param: A sparse clock with a duration of 20 ticks and a service that requested ticks 4 and
+     *         9, and asks for tick 12 while handling tick 9.
+     * @pre: The service is subscribed to ticks before the clock starts.
+     * @post: The service sees ticks 1, 4, 9, 12 and the final tick 20 only, and the runtime grows
+     *        by the full 20 ticks.
+     */
+    @Test
+    void testSparseClockSkipsUnrequestedTicks() throws InterruptedException {
+        TimeService clock = new TimeService(1, 20, ClockMode.SPARSE); // Resets the schedule
+        TickSchedule.getInstance().request(4);
+        TickSchedule.getInstance().request(9);
+        List<Integer> seen = new CopyOnWriteArrayList<>();
+        CountDownLatch subscribed = new CountDownLatch(1);
+        MicroService sensor = new MicroService("SparseClockSensor") {
+            @Override
+            protected void initialize() {
+                subscribeBroadcast(TickBroadcast.class, tick -> {
+                    seen.add(tick.getCurrentTick());
+                    if (tick.getCurrentTick() == 9)
+                        TickSchedule.getInstance().request(12);
+                });
+                subscribeBroadcast(TerminatedBroadcast.class, terminated -> terminate());
+                subscribed.countDown();
+            }
+        };
+        int runtimeBefore = StatisticalFolder.getInstance().getSystemRuntime();
+        Thread sensorThread = new Thread(sensor);
+        sensorThread.start();
+        assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+        Thread clockThread = new Thread(clock);
+        clockThread.start();
+        clockThread.join(10_000);
+        sensorThread.join(10_000);
+
+        assertFalse(clockThread.isAlive(), "The clock should stop after its duration");
+        assertEquals(Arrays.asList(1, 4, 9, 12, 20), seen);
+        assertEquals(20, StatisticalFolder.getInstance().getSystemRuntime() - runtimeBefore);
+    }
+}
@@ -0,0 +1,197 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.objects.*;
+import bgu.spl.mics.application.services.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class TickAllocationTest {
+    private static final int MEASURED_TICKS = 40_000;
+    private static final int DURATION = MEASURED_TICKS + 500;
+    // Every this many ticks the camera detects two landmarks, which the LiDAR tracks and FusionSLAM maps
+    private static final int FRAME_INTERVAL = 1000;
+    private static final String[] LANDMARKS = {"Wall_1", "Door_1"};
+    // Room for the one-off allocations of class loading and compilation during the first ticks
+    private static final long MAX_BYTES = 256 * 1024;
+    // What one detected frame may allocate on its way from the camera to FusionSLAM
+    private static final long MAX_BYTES_PER_FRAME = 4 * 1024;
+
+    /**
+     * @param: A camera detecting two landmarks every 1,000 ticks, a LiDAR worker with cloud points
+     *         for each of them, a pose for every tick and a TimeService ticking as fast as it can.
+     * @pre: All five services run on their own threads, and the four besides the clock have
+     *       subscribed before the first tick.
+     * @post: Across the five service threads, 40,000 ticks from the first one allocate less than a
+     *        fixed budget plus a budget per detected frame (ThreadMXBean allocated-bytes counters),
+     *        which one object per tick would exceed, and every frame of those ticks is detected,
+     *        tracked and sent to FusionSLAM.
+     */
+    @Test
+    void testSteadyStateTicksAllocateNothing(@TempDir Path dir) throws Exception {
+        com.sun.management.ThreadMXBean threadBean = threadBean();
+        assumeTrue(threadBean != null && threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        writeCameraData(dir.resolve("camera_data.json").toString());
+        writePoseData(dir.resolve("pose_data.json").toString());
+        FusionSlam.getInstance().setBasePath(dir.toString() + "/");
+
+        // Each service counts down once it has subscribed, so the first tick reaches all of them
+        CountDownLatch subscribed = new CountDownLatch(4);
+        List<MicroService> services = new ArrayList<>();
+        GPSIMU gpsimu = new GPSIMU(dir.resolve("pose_data.json").toString());
+        FusionSlam.getInstance().reservePoses(gpsimu.getPoses().size());
+        services.add(new FusionSlamService(FusionSlam.getInstance()) {
+            @Override
+            protected synchronized void initialize() {
+                super.initialize();
+                subscribed.countDown();
+            }
+        });
+        services.add(new PoseService(gpsimu) {
+            @Override
+            protected synchronized void initialize() {
+                super.initialize();
+                subscribed.countDown();
+            }
+        });
+        services.add(new CameraService(new Camera(1, 0, STATUS.UP, dir.resolve("camera_data.json").toString())) {
+            @Override
+            protected synchronized void initialize() {
+                super.initialize();
+                subscribed.countDown();
+            }
+        });
+        CloudPointIndex cloudPoints = cloudPoints();
+        LiDarWorkerTracker tracker = new LiDarWorkerTracker(1, 0, STATUS.UP, new ArrayList<>()) {
+            @Override
+            public List<TrackedObject> createTrackedObjects(StampedDetectedObjects stampedDetected) {
+                return createTrackedObjects(stampedDetected, cloudPoints); // The shared database only covers the sample file
+            }
+        };
+        services.add(new LiDarService("LiDar", tracker, 0) {
+            @Override
+            protected synchronized void initialize() {
+                super.initialize();
+                subscribed.countDown();
+            }
+        });
+        List<Thread> threads = new ArrayList<>();
+        for (MicroService service : services)
+            threads.add(new Thread(service));
+        threads.forEach(Thread::start);
+        assertTrue(subscribed.await(10, TimeUnit.SECONDS), "Services should initialize");
+        Thread clock = new Thread(new TimeService(0, DURATION));
+        threads.add(clock);
+
+        StatisticalFolder statistics = StatisticalFolder.getInstance();
+        int ticksBefore = statistics.getSystemRuntime(); // Earlier tests may have ticked the shared folder
+        clock.start();
+        awaitTick(statistics, ticksBefore + 1); // Past the clock's own start-up
+        int startTick = statistics.getSystemRuntime();
+        int trackedBefore = statistics.getNumTrackedObjects();
+        long[] before = allocatedBytes(threadBean, threads);
+        awaitTick(statistics, startTick + MEASURED_TICKS);
+        long[] after = allocatedBytes(threadBean, threads);
+        int ticks = statistics.getSystemRuntime() - startTick;
+        int tracked = statistics.getNumTrackedObjects() - trackedBefore;
+        int frames = MEASURED_TICKS / FRAME_INTERVAL;
+        long allocated = 0;
+        StringBuilder perService = new StringBuilder();
+        for (int i = 0; i < threads.size(); i++) {
+            allocated += after[i] - before[i];
+            String name = i < services.size() ? services.get(i).getName() : "TimeService";
+            perService.append(' ').append(name).append('=').append(after[i] - before[i]);
+        }
+
+        for (Thread thread : threads)
+            thread.join(10_000);
+        for (Thread thread : threads)
+            assertFalse(thread.isAlive(), "Services should terminate once the clock runs out");
+        assertTrue(tracked >= (frames - 1) * LANDMARKS.length,
+                "Only " + tracked + " objects were tracked over " + ticks + " ticks");
+        assertTrue(allocated < MAX_BYTES + frames * MAX_BYTES_PER_FRAME,
+                "Allocated " + allocated + " bytes over " + ticks + " ticks and " + frames + " frames:" + perService);
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) bean : null;
+    }
+
+    private static long[] allocatedBytes(com.sun.management.ThreadMXBean threadBean, List<Thread> threads) {
+        long[] bytes = new long[threads.size()];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = threadBean.getThreadAllocatedBytes(threads.get(i).getId());
+        return bytes;
+    }
+
+    private static void awaitTick(StatisticalFolder statistics, int tick) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (statistics.getSystemRuntime() < tick) {
+            assertTrue(System.currentTimeMillis() < deadline, "Clock stalled before tick " + tick);
+            Thread.sleep(1);
+        }
+    }
+
+    // The times the camera detects LANDMARKS at, with a last frame after the clock stops so the camera outlives it.
+    private static List<Integer> frameTimes() {
+        List<Integer> times = new ArrayList<>();
+        for (int time = 1; time <= DURATION; time += FRAME_INTERVAL)
+            times.add(time);
+        times.add(DURATION + 100);
+        return times;
+    }
+
+    private static void writeCameraData(String path) throws IOException {
+        try (FileWriter writer = new FileWriter(path)) {
+            writer.write("{\"camera1\": [");
+            for (int time : frameTimes()) {
+                if (time > 1)
+                    writer.write(",");
+                writer.write("{\"time\": " + time + ", \"detectedObjects\": [");
+                for (int i = 0; i < LANDMARKS.length; i++)
+                    writer.write((i > 0 ? "," : "") + "{\"id\": \"" + LANDMARKS[i] + "\", \"description\": \"Landmark\"}");
+                writer.write("]}");
+            }
+            writer.write("]}");
+        }
+    }
+
+    private static CloudPointIndex cloudPoints() {
+        List<StampedCloudPoints> recorded = new ArrayList<>();
+        for (int time : frameTimes()) {
+            for (int i = 0; i < LANDMARKS.length; i++) {
+                PointCloud points = new PointCloud(2);
+                points.add(i, 1.0, 0.1);
+                points.add(i + 0.5, 1.5, 0.1);
+                recorded.add(new StampedCloudPoints(LANDMARKS[i], time, points));
+            }
+        }
+        return new CloudPointIndex(recorded);
+    }
+
+    private static void writePoseData(String path) throws IOException {
+        try (FileWriter writer = new FileWriter(path)) {
+            writer.write("[");
+            for (int time = 1; time <= DURATION + 1; time++) {
+                if (time > 1)
+                    writer.write(",");
+                writer.write("{\"time\": " + time + ", \"x\": " + (time * 0.01) + ", \"y\": 0.5, \"yaw\": 1.5}");
+            }
+            writer.write("]");
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package bgu.spl.mics;
+import bgu.spl.mics.application.objects.Camera;
+import bgu.spl.mics.application.objects.CameraDataLoader;
+import bgu.spl.mics.application.objects.JsonRecordReader;
+import bgu.spl.mics.application.objects.ResidentRecords;
+import bgu.spl.mics.application.objects.STATUS;
+import bgu.spl.mics.application.objects.SensorPrefetcher;
+import bgu.spl.mics.application.objects.SensorWindow;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import bgu.spl.mics.application.objects.WindowedRecords;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+class WindowedRecordsTest {
+
+    private static final String CAMERA_DATA = "./src/test/resources/camera_data.json";
+
+    // A recording read from a list, standing in for a file
+    private static WindowedRecords.Source<int[]> source(List<int[]> records) {
+        return () -> {
+            Iterator<int[]> next = records.iterator();
+            return new WindowedRecords.Reader<int[]>() {
+                @Override
+                public int[] next() {
+                    return next.hasNext() ? next.next() : null;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        };
+    }
+
+    // {time, value}: one entry at each time in times, two at the even ones
+    private static List<int[]> recording(int... times) {
+        List<int[]> records = new ArrayList<>();
+        for (int time : times) {
+            records.add(new int[]{time, 0});
+            if (time % 2 == 0)
+                records.add(new int[]{time, 1});
+        }
+        return records;
+    }
+
+    /**
+     * @param: WindowedRecords windowed - a recording streamed through a window.
+     * @pre:
+     *       - The recording is in time order, with gaps between some of its times.
+     * @post:
+     *       - at(t) and nextTime(t) return what a ResidentRecords of the same recording returns, for every t.
+     */
+    @Test
+    void testMatchesResident() throws IOException {
+        List<int[]> records = recording(1, 2, 3, 7, 8, 12, 30);
+        ResidentRecords<int[]> resident = new ResidentRecords<>(records, record -> record[0]);
+        try (WindowedRecords<int[]> windowed = new WindowedRecords<>(source(records), record -> record[0], new SensorWindow(2, 3))) {
+            for (int time = -1; time <= 32; time++) {
+                assertEquals(resident.nextTime(time), windowed.nextTime(time), "nextTime(" + time + ")");
+                assertEquals(resident.at(time).size(), windowed.at(time).size(), "at(" + time + ")");
+            }
+        }
+    }
+
+    /**
+     * @param: int tick - the tick the window is moved to.
+     * @pre:
+     *       - Every time of the recording has been read.
+     * @post:
+     *       - Only the times within behind of the tick stay in memory.
+     *       - A time that was dropped is still returned, read again from the recording, and
+     *         every such read is counted.
+     *       - A time in memory is returned as the same unmodifiable list on every read.
+     */
+    @Test
+    void testAdvanceDropsTimesBehind() throws IOException {
+        List<int[]> records = recording(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        try (WindowedRecords<int[]> windowed = new WindowedRecords<>(source(records), record -> record[0], new SensorWindow(2, 20))) {
+            assertEquals(10, windowed.residentTimes());
+            SensorPrefetcher.getInstance().advance(8);
+            assertEquals(5, windowed.residentTimes()); // 6 to 10
+            assertEquals(0, windowed.rereads());
+            assertEquals(2, windowed.at(2).size());
+            assertEquals(1, windowed.at(3).size());
+            assertEquals(5, windowed.residentTimes());
+            assertEquals(4, windowed.nextTime(3));
+            assertEquals(3, windowed.rereads());
+            assertSame(windowed.at(8), windowed.at(8));
+            assertEquals(2, windowed.at(8).size());
+            assertThrows(UnsupportedOperationException.class, () -> windowed.at(8).clear());
+            assertEquals(3, windowed.rereads());
+        }
+    }
+
+    /**
+     * @param: List records - a recording with an entry earlier than the one before it.
+     * @pre:
+     *       - The out-of-order entry is past the first window.
+     * @post:
+     *       - Reading up to it throws, and so does every later read.
+     */
+    @Test
+    void testOutOfOrderRecordingFails() throws IOException {
+        List<int[]> records = recording(1, 2, 5, 4, 6);
+        try (WindowedRecords<int[]> windowed = new WindowedRecords<>(source(records), record -> record[0], new SensorWindow(0, 1))) {
+            assertEquals(2, windowed.at(2).size());
+            assertThrows(UncheckedIOException.class, () -> windowed.at(5));
+            assertThrows(UncheckedIOException.class, () -> windowed.nextTime(2));
+        }
+    }
+
+    /**
+     * @param: String filePath - the camera data file, streamed one frame at a time.
+     * @pre:
+     *       - The file holds the frames of camera1 under the key "camera1".
+     * @post:
+     *       - A Camera over the streamed frames reports the same objects at every tick as one over the loaded frames.
+     */
+    @Test
+    void testStreamedCameraMatchesLoaded() throws IOException {
+        Map<String, List<StampedDetectedObjects>> loaded = CameraDataLoader.load(CAMERA_DATA, Collections.singleton("camera1"));
+        Camera resident = new Camera(1, 0, STATUS.UP, loaded.get("camera1"));
+        try (WindowedRecords<StampedDetectedObjects> frames = new WindowedRecords<>(
+                JsonRecordReader.source(CAMERA_DATA, "camera1", StampedDetectedObjects.class),
+                StampedDetectedObjects::getTime, new SensorWindow(1, 2))) {
+            Camera streamed = new Camera(1, 0, STATUS.UP, frames);
+            for (int tick = 0; tick <= 40; tick++) {
+                SensorPrefetcher.getInstance().advance(tick);
+                assertEquals(resident.getDetectedObjects(tick).size(), streamed.getDetectedObjects(tick).size(), "tick " + tick);
+                assertEquals(resident.nextReportTick(tick), streamed.nextReportTick(tick), "tick " + tick);
+                assertEquals(resident.checkIfLeft(tick), streamed.checkIfLeft(tick), "tick " + tick);
+            }
+        }
+    }
+
+    /**
+     * @param: SensorWindow window - a window keeping fewer past ticks than the camera's frequency.
+     * @pre:
+     *       - The camera reports each frame 3 ticks after it was taken.
+     * @post:
+     *       - Widened to the frequency, the window answers every report from memory: the recording
+     *         is opened once, and never read again from its start.
+     */
+    @Test
+    void testWindowCoveringFrequencyNeverRereads() throws IOException {
+        int[] opened = {0};
+        WindowedRecords.Source<StampedDetectedObjects> file = JsonRecordReader.source(CAMERA_DATA, "camera1", StampedDetectedObjects.class);
+        SensorWindow window = new SensorWindow(0, 2).coveringBehind(3);
+        assertEquals(3, window.getBehind());
+        assertSame(window, window.coveringBehind(2));
+        try (WindowedRecords<StampedDetectedObjects> frames = new WindowedRecords<>(() -> {
+            opened[0]++;
+            return file.open();
+        }, StampedDetectedObjects::getTime, window)) {
+            Camera camera = new Camera(1, 3, STATUS.UP, frames);
+            for (int tick = 0; tick <= 40; tick++) {
+                SensorPrefetcher.getInstance().advance(tick);
+                camera.getDetectedObjects(tick);
+                camera.nextReportTick(tick);
+                camera.checkIfLeft(tick);
+            }
+            assertEquals(0, frames.rereads());
+        }
+        assertEquals(1, opened[0]);
+    }
+
+    /**
+     * @param: String key - a camera with no frames in the camera data file.
+     * @pre:
+     *       - The file has no "camera9" key.
+     * @post:
+     *       - Opening the recording throws an IOException naming the key.
+     */
+    @Test
+    void testMissingCameraKeyFails() {
+        IOException e = assertThrows(IOException.class, () -> new WindowedRecords<>(
+                JsonRecordReader.source(CAMERA_DATA, "camera9", StampedDetectedObjects.class),
+                StampedDetectedObjects::getTime, new SensorWindow(1, 2)));
+        assertTrue(e.getMessage().contains("camera9"));
+    }
+}
@@ -0,0 +1,104 @@
+package bgu.spl.mics.benchmarks;
+
+import bgu.spl.mics.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Throughput of a {@link MicroService} event loop on a synthetic burst of broadcasts.
+ * <p>
+ * "per-message" replays the previous loop: one {@link MessageBusImpl#awaitMessage(MicroService)}
+ * and one callback lookup per message. "batched" runs the real {@link MicroService#run()}, which
+ * drains up to a batch of messages per wakeup.
+ * A single producer thread sends all messages as fast as it can.
+ * <p>
+ * Run with: {@code java -cp target/classes:target/test-classes:<gson> bgu.spl.mics.benchmarks.BatchDrainBenchmark [messages]}
+ */
+public class BatchDrainBenchmark {
+
+    private static class Ping implements Broadcast {}
+
+    private static class Stop implements Broadcast {}
+
+    /**
+     * Counts received pings and terminates on {@link Stop}.
+     */
+    private static class Counter extends MicroService {
+        private final CountDownLatch ready;
+        private long received;
+
+        Counter(String name, CountDownLatch ready) {
+            super(name);
+            this.ready = ready;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeBroadcast(Ping.class, ping -> received++);
+            subscribeBroadcast(Stop.class, stop -> terminate());
+            ready.countDown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("messages=%d%n", messages);
+        for (int round = 0; round < 3; round++) {
+            double before = perMessage(messages);
+            double after = batched(messages);
+            System.out.printf("round %d: per-message %.2f Mmsg/s, batched %.2f Mmsg/s (x%.2f)%n",
+                    round, before, after, after / before);
+        }
+    }
+
+    private static double perMessage(int messages) throws Exception {
+        MessageBusImpl bus = MessageBusImpl.getInstance();
+        MicroService consumer = new Counter("per-message", new CountDownLatch(1));
+        Map<Class<? extends Message>, Callback<Message>> callbacks = new HashMap<>();
+        long[] received = new long[1];
+        callbacks.put(Ping.class, m -> received[0]++);
+        bus.register(consumer);
+        bus.subscribeBroadcast(Ping.class, consumer);
+        bus.subscribeBroadcast(Stop.class, consumer);
+
+        Thread loop = new Thread(() -> {
+            try {
+                while (true) {
+                    Message m = bus.awaitMessage(consumer);
+                    if (m instanceof Stop)
+                        break;
+                    Callback<Message> callback = callbacks.get(m.getClass());
+                    if (callback != null)
+                        callback.call(m);
+                }
+            } catch (InterruptedException ignored) {
+            }
+        });
+        loop.start();
+        double rate = produce(bus, messages, loop);
+        bus.unregister(consumer);
+        return rate;
+    }
+
+    private static double batched(int messages) throws Exception {
+        MessageBusImpl bus = MessageBusImpl.getInstance();
+        CountDownLatch ready = new CountDownLatch(1);
+        Thread loop = new Thread(new Counter("batched", ready));
+        loop.start();
+        ready.await();
+        return produce(bus, messages, loop);
+    }
+
+    private static double produce(MessageBus bus, int messages, Thread consumer) throws InterruptedException {
+        Ping ping = new Ping();
+        long begin = System.nanoTime();
+        for (int i = 0; i < messages; i++)
+            bus.sendBroadcast(ping);
+        bus.sendBroadcast(new Stop());
+        consumer.join();
+        long elapsed = System.nanoTime() - begin;
+        return messages / (elapsed / 1e9) / 1e6;
+    }
+}
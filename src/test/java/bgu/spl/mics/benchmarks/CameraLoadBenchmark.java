@@ -0,0 +1,109 @@
+package bgu.spl.mics.benchmarks;
+
+import bgu.spl.mics.application.objects.CameraDataLoader;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Startup cost of loading every camera's frames from one shared camera data file.
+ * <p>
+ * "per-camera" replays the previous loading: every camera parses the whole file into a tree and
+ * converts its own array. "streaming" is a single {@link CameraDataLoader} pass for all cameras.
+ * Both keep the loaded frames, as the cameras do. Peak heap is the sum of the heap pools' peak
+ * usage during the load, after a GC and a peak reset, so it includes the frames themselves.
+ * <p>
+ * Run with: {@code java -cp target/classes:target/test-classes:<gson> bgu.spl.mics.benchmarks.CameraLoadBenchmark [cameras] [framesPerCamera]}
+ */
+public class CameraLoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int cameras = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int framesPerCamera = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        File file = File.createTempFile("camera_data", ".json");
+        file.deleteOnExit();
+        write(file, cameras, framesPerCamera);
+        System.out.printf("cameras=%d frames/camera=%d file=%.1f MB%n", cameras, framesPerCamera, file.length() / 1e6);
+        List<String> keys = new ArrayList<>();
+        for (int id = 1; id <= cameras; id++)
+            keys.add("camera" + id);
+
+        for (int round = 0; round < 3; round++) {
+            long[] perCamera = measure(() -> perCamera(file.getPath(), keys));
+            long[] streaming = measure(() -> CameraDataLoader.load(file.getPath(), keys));
+            System.out.printf("round %d: per-camera %d ms, peak %d MB | streaming %d ms, peak %d MB%n",
+                    round, perCamera[0], perCamera[1] >> 20, streaming[0], streaming[1] >> 20);
+        }
+    }
+
+    private interface Load {
+        Map<String, List<StampedDetectedObjects>> run() throws IOException;
+    }
+
+    // {elapsed ms, peak heap bytes}
+    private static long[] measure(Load load) throws IOException {
+        List<MemoryPoolMXBean> heap = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                heap.add(pool);
+        }
+        System.gc();
+        heap.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long begin = System.nanoTime();
+        Map<String, List<StampedDetectedObjects>> frames = load.run();
+        long elapsed = (System.nanoTime() - begin) / 1_000_000;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heap)
+            peak += pool.getPeakUsage().getUsed();
+        if (frames.size() == 0)
+            throw new IllegalStateException("Nothing loaded");
+        return new long[]{elapsed, peak};
+    }
+
+    // What every Camera constructor used to do, once per camera.
+    private static Map<String, List<StampedDetectedObjects>> perCamera(String path, List<String> keys) throws IOException {
+        Gson gson = new Gson();
+        Map<String, List<StampedDetectedObjects>> frames = new HashMap<>();
+        for (String key : keys) {
+            try (FileReader reader = new FileReader(path)) {
+                JsonObject jsonObject = gson.fromJson(reader, JsonObject.class);
+                JsonArray stampedArray = jsonObject.getAsJsonArray(key);
+                frames.put(key, gson.fromJson(stampedArray, new TypeToken<List<StampedDetectedObjects>>() {}.getType()));
+            }
+        }
+        return frames;
+    }
+
+    private static void write(File file, int cameras, int framesPerCamera) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("{");
+            for (int id = 1; id <= cameras; id++) {
+                writer.write((id > 1 ? "," : "") + "\"camera" + id + "\":[");
+                for (int time = 1; time <= framesPerCamera; time++) {
+                    writer.write((time > 1 ? "," : "") + "{\"time\":" + time + ",\"detectedObjects\":[");
+                    for (int o = 0; o < 3; o++)
+                        writer.write((o > 0 ? "," : "") + "{\"id\":\"Object_" + id + "_" + time + "_" + o
+                                + "\",\"description\":\"A detected object\"}");
+                    writer.write("]}");
+                }
+                writer.write("]");
+            }
+            writer.write("}");
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package bgu.spl.mics.benchmarks;
+
+import bgu.spl.mics.application.objects.Camera;
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.STATUS;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Cost of a camera's per-tick frame lookup as the recording grows.
+ * <p>
+ * "scan" replays the previous lookup: a pass over the frame list for the first frame whose
+ * time + frequency is the tick. "indexed" calls {@link Camera#getFrame(int)}, which reads the
+ * frame from an array indexed by report tick. Lookups hit random ticks of the recording; the
+ * scan gets fewer of them on long recordings, since each one walks the list. "in order" is the
+ * indexed lookup over consecutive ticks, the way a camera service actually reads its frames.
+ * "next" calls {@link Camera#nextReportTick(int)} and {@link Camera#checkIfLeft(int)} at random
+ * ticks of a recording as long but holding only its first and last frames, so every lookup falls
+ * in one gap as wide as the recording.
+ * <p>
+ * A plain main like the other benchmarks here, since the build has no JMH setup: each figure is
+ * the mean of one timed loop after a warm-up round.
+ * <p>
+ * Run with: {@code java -cp target/classes:target/test-classes:<gson> bgu.spl.mics.benchmarks.CameraLookupBenchmark [maxFrames]}
+ */
+public class CameraLookupBenchmark {
+    private static final int FREQUENCY = 2;
+    private static final long SCAN_BUDGET = 200_000_000L; // Frames visited per scan measurement
+    private static final int INDEXED_LOOKUPS = 10_000_000;
+
+    private static int sink; // Keeps the lookups from being optimized away
+
+    public static void main(String[] args) {
+        int maxFrames = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("%10s %14s %16s %16s %14s%n", "frames", "scan ns/tick", "indexed ns/tick", "in order ns/tick", "next ns/tick");
+        for (int round = 0; round < 2; round++) { // The first round warms up both paths
+            for (int frames = 1_000; frames <= maxFrames; frames *= 10) {
+                List<StampedDetectedObjects> recording = recording(frames);
+                Camera camera = new Camera(1, FREQUENCY, STATUS.UP, recording);
+                double scan = scan(recording, frames);
+                double indexed = indexed(camera, frames);
+                double inOrder = inOrder(camera, frames);
+                double next = next(new Camera(1, FREQUENCY, STATUS.UP, gap(frames)), frames);
+                if (round > 0)
+                    System.out.printf("%10d %14.1f %16.1f %16.1f %14.1f%n", frames, scan, indexed, inOrder, next);
+            }
+        }
+        System.out.println(sink == 42 ? "" : " ");
+    }
+
+    private static List<StampedDetectedObjects> recording(int frames) {
+        List<DetectedObject> objects = Collections.singletonList(new DetectedObject("Wall_1", "Wall"));
+        List<StampedDetectedObjects> recording = new ArrayList<>(frames);
+        for (int time = 1; time <= frames; time++)
+            recording.add(new StampedDetectedObjects(time, objects));
+        return recording;
+    }
+
+    // The first and last frames of a recording of that many frames.
+    private static List<StampedDetectedObjects> gap(int frames) {
+        List<DetectedObject> objects = Collections.singletonList(new DetectedObject("Wall_1", "Wall"));
+        List<StampedDetectedObjects> recording = new ArrayList<>(2);
+        recording.add(new StampedDetectedObjects(1, objects));
+        recording.add(new StampedDetectedObjects(frames, objects));
+        return recording;
+    }
+
+    private static double scan(List<StampedDetectedObjects> recording, int frames) {
+        int lookups = (int) Math.max(100, SCAN_BUDGET / frames);
+        int[] ticks = randomTicks(lookups, frames);
+        long begin = System.nanoTime();
+        for (int tick : ticks) {
+            for (int i = 0; i < recording.size(); i++) {
+                StampedDetectedObjects stamped = recording.get(i);
+                if (stamped.getTime() + FREQUENCY == tick) {
+                    sink += stamped.getTime();
+                    break;
+                }
+            }
+        }
+        return (System.nanoTime() - begin) / (double) lookups;
+    }
+
+    private static double indexed(Camera camera, int frames) {
+        int[] ticks = randomTicks(INDEXED_LOOKUPS, frames);
+        long begin = System.nanoTime();
+        for (int tick : ticks)
+            sink += camera.getFrame(tick).getTime();
+        return (System.nanoTime() - begin) / (double) INDEXED_LOOKUPS;
+    }
+
+    private static double inOrder(Camera camera, int frames) {
+        long begin = System.nanoTime();
+        for (int i = 0; i < INDEXED_LOOKUPS; i++)
+            sink += camera.getFrame(1 + FREQUENCY + i % frames).getTime();
+        return (System.nanoTime() - begin) / (double) INDEXED_LOOKUPS;
+    }
+
+    private static double next(Camera camera, int frames) {
+        int lookups = (int) Math.max(100, SCAN_BUDGET / frames); // The walk over empty ticks took this long
+        int[] ticks = randomTicks(lookups, frames - 1);
+        long begin = System.nanoTime();
+        for (int tick : ticks)
+            sink += camera.checkIfLeft(tick) ? camera.nextReportTick(tick) : 0;
+        return (System.nanoTime() - begin) / (double) lookups;
+    }
+
+    private static int[] randomTicks(int count, int frames) {
+        int[] ticks = new int[count];
+        for (int i = 0; i < count; i++)
+            ticks[i] = 1 + FREQUENCY + ThreadLocalRandom.current().nextInt(frames);
+        return ticks;
+    }
+}
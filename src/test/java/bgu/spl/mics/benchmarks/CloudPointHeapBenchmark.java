@@ -0,0 +1,124 @@
+package bgu.spl.mics.benchmarks;
+
+import bgu.spl.mics.application.objects.CloudPoint;
+import bgu.spl.mics.application.objects.StampedCloudPoints;
+import bgu.spl.mics.application.objects.TrackedObject;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Retained heap of a large LiDAR recording, and of one tracked object made from every entry.
+ * <p>
+ * "boxed" replays the previous representation: the recording parsed into
+ * {@code List<List<Double>>}, and every tracked object holding its own {@code List<CloudPoint>}
+ * converted from it, with z dropped. "packed" is the recording parsed into
+ * {@link bgu.spl.mics.application.objects.PointCloud}s, with the tracked objects sharing them.
+ * Retained heap is the used heap after a GC with the data still reachable, less the used heap
+ * after a GC before loading.
+ * <p>
+ * Run with: {@code java -cp target/classes:target/test-classes:<gson> bgu.spl.mics.benchmarks.CloudPointHeapBenchmark [entries] [pointsPerEntry]}
+ */
+public class CloudPointHeapBenchmark {
+
+    /**
+     * The previous StampedCloudPoints, as Gson filled it.
+     */
+    private static class BoxedStampedCloudPoints {
+        private String id;
+        private int time;
+        private List<List<Double>> cloudPoints;
+    }
+
+    private interface Load {
+        Object run() throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int pointsPerEntry = args.length > 1 ? Integer.parseInt(args[1]) : 25;
+        File file = File.createTempFile("lidar_data", ".json");
+        file.deleteOnExit();
+        write(file, entries, pointsPerEntry);
+        System.out.printf("entries=%d points/entry=%d file=%.1f MB%n", entries, pointsPerEntry, file.length() / 1e6);
+        for (int round = 0; round < 2; round++) {
+            long boxedDatabase = retained(() -> boxed(file, false));
+            long boxedTracked = retained(() -> boxed(file, true));
+            long packedDatabase = retained(() -> packed(file, false));
+            long packedTracked = retained(() -> packed(file, true));
+            System.out.printf("round %d: database boxed %d MB, packed %d MB | with tracked objects boxed %d MB, packed %d MB%n",
+                    round, boxedDatabase >> 20, packedDatabase >> 20, boxedTracked >> 20, packedTracked >> 20);
+        }
+    }
+
+    private static long retained(Load load) throws IOException {
+        long before = usedAfterGc();
+        Object data = load.run();
+        long after = usedAfterGc();
+        if (data.hashCode() == 42)
+            System.out.print("");
+        return after - before;
+    }
+
+    private static long usedAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Object boxed(File file, boolean tracked) throws IOException {
+        List<BoxedStampedCloudPoints> database;
+        try (FileReader reader = new FileReader(file)) {
+            database = new Gson().fromJson(reader, new TypeToken<List<BoxedStampedCloudPoints>>() {}.getType());
+        }
+        if (!tracked)
+            return database;
+        List<Object> all = new ArrayList<>();
+        all.add(database);
+        for (BoxedStampedCloudPoints stamped : database) {
+            List<CloudPoint> converted = new ArrayList<>();
+            for (List<Double> point : stamped.cloudPoints) {
+                if (point.size() >= 2)
+                    converted.add(new CloudPoint(point.get(0), point.get(1)));
+            }
+            all.add(converted); // What each TrackedObject used to hold
+        }
+        return all;
+    }
+
+    private static Object packed(File file, boolean tracked) throws IOException {
+        List<StampedCloudPoints> database;
+        try (FileReader reader = new FileReader(file)) {
+            database = new Gson().fromJson(reader, new TypeToken<List<StampedCloudPoints>>() {}.getType());
+        }
+        if (!tracked)
+            return database;
+        List<Object> all = new ArrayList<>();
+        all.add(database);
+        for (StampedCloudPoints stamped : database)
+            all.add(new TrackedObject(stamped.getId(), stamped.getTime(), "An object", stamped.getCloudPoints()));
+        return all;
+    }
+
+    private static void write(File file, int entries, int pointsPerEntry) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("[");
+            for (int i = 0; i < entries; i++) {
+                writer.write((i > 0 ? "," : "") + "{\"id\":\"Object_" + (i % 8) + "\",\"time\":" + (1 + i / 8)
+                        + ",\"cloudPoints\":[");
+                for (int p = 0; p < pointsPerEntry; p++)
+                    writer.write((p > 0 ? "," : "") + "[" + (i * 0.001 + p) + "," + (p * 0.37 - i * 0.002) + ",0.104]");
+                writer.write("]}");
+            }
+            writer.write("]");
+        }
+    }
+}
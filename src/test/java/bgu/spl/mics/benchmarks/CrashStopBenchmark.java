@@ -0,0 +1,78 @@
+package bgu.spl.mics.benchmarks;
+
+import bgu.spl.mics.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Time from a crash notification to the last service stopping, with and without the control lane.
+ * <p>
+ * {@code services} services each get a backlog of {@code backlog} data broadcasts that take
+ * {@code workMicros} each to handle; then a crash broadcast is sent. "fifo" uses a plain
+ * broadcast that waits behind the backlog, "control" a {@link ControlMessage} that skips it.
+ * <p>
+ * Run with: {@code java -cp target/classes:target/test-classes:<gson> bgu.spl.mics.benchmarks.CrashStopBenchmark [services] [backlog] [workMicros]}
+ */
+public class CrashStopBenchmark {
+
+    private static class Data implements Broadcast {}
+
+    private static class FifoCrash implements Broadcast {}
+
+    private static class ControlCrash implements Broadcast, ControlMessage {}
+
+    /**
+     * Parks for the configured time on each data broadcast and terminates on either crash type.
+     */
+    private static class Worker extends MicroService {
+        private final long workNanos;
+        private final CountDownLatch ready;
+
+        Worker(String name, long workNanos, CountDownLatch ready) {
+            super(name);
+            this.workNanos = workNanos;
+            this.ready = ready;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeBroadcast(Data.class, data -> LockSupport.parkNanos(workNanos));
+            subscribeBroadcast(FifoCrash.class, crash -> terminate());
+            subscribeBroadcast(ControlCrash.class, crash -> terminate());
+            ready.countDown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int services = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int backlog = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        long workNanos = (args.length > 2 ? Long.parseLong(args[2]) : 50) * 1_000;
+        System.out.printf("services=%d backlog=%d work=%dus%n", services, backlog, workNanos / 1_000);
+        for (int round = 0; round < 3; round++) {
+            double fifo = crashToStop(new FifoCrash(), services, backlog, workNanos);
+            double control = crashToStop(new ControlCrash(), services, backlog, workNanos);
+            System.out.printf("round %d: fifo %8.2f ms, control %6.2f ms%n", round, fifo, control);
+        }
+    }
+
+    private static double crashToStop(Broadcast crash, int services, int backlog, long workNanos) throws Exception {
+        MessageBusImpl bus = MessageBusImpl.getInstance();
+        CountDownLatch ready = new CountDownLatch(services);
+        Thread[] threads = new Thread[services];
+        for (int i = 0; i < services; i++) {
+            threads[i] = new Thread(new Worker(crash.getClass().getSimpleName() + "-" + i, workNanos, ready));
+            threads[i].start();
+        }
+        ready.await();
+        Data data = new Data();
+        for (int i = 0; i < backlog; i++)
+            bus.sendBroadcast(data);
+
+        long begin = System.nanoTime();
+        bus.sendBroadcast(crash);
+        for (Thread thread : threads)
+            thread.join();
+        return (System.nanoTime() - begin) / 1e6;
+    }
+}
@@ -0,0 +1,110 @@
+package bgu.spl.mics.benchmarks;
+
+import bgu.spl.mics.*;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Event latency under each {@link DispatchPolicy} on a skewed workload.
+ * <p>
+ * Four workers subscribe to the same event type; three of them need {@code serviceMicros} per
+ * event and one needs four times as long. A producer sends events open-loop at a fixed rate
+ * (about 75% of the workers' combined capacity) and each worker records the time from send to
+ * the end of its handling. For {@link DispatchPolicy#WEIGHTED} the fast workers declare capacity
+ * 4 and the slow one 1. Service time is spent parked, so the workers do not compete for CPU.
+ * <p>
+ * Run with: {@code java -cp target/classes:target/test-classes:<gson> bgu.spl.mics.benchmarks.DispatchPolicyBenchmark [events] [serviceMicros]}
+ */
+public class DispatchPolicyBenchmark {
+
+    private static class Job implements Event<Void> {
+        private final int index;
+        private final long sentAt;
+
+        Job(int index, long sentAt) {
+            this.index = index;
+            this.sentAt = sentAt;
+        }
+    }
+
+    private static class Stop implements Broadcast {}
+
+    /**
+     * Handles each job by parking for its service time and recording the job's latency.
+     */
+    private static class Worker extends MicroService {
+        private final long serviceNanos;
+        private final long[] latencies;
+        private final CountDownLatch ready;
+
+        Worker(String name, long serviceNanos, long[] latencies, CountDownLatch ready) {
+            super(name);
+            this.serviceNanos = serviceNanos;
+            this.latencies = latencies;
+            this.ready = ready;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeEvent(Job.class, job -> {
+                LockSupport.parkNanos(serviceNanos);
+                latencies[job.index] = System.nanoTime() - job.sentAt;
+            });
+            subscribeBroadcast(Stop.class, stop -> terminate());
+            ready.countDown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 8_000;
+        long serviceNanos = (args.length > 1 ? Long.parseLong(args[1]) : 1_000) * 1_000;
+        // Capacity: three workers at 1/service, one at 1/(4*service) => 3.25 / service
+        long intervalNanos = (long) (serviceNanos / (3.25 * 0.75));
+        System.out.printf("events=%d service=%dus (slow worker x4) interval=%dus%n",
+                events, serviceNanos / 1_000, intervalNanos / 1_000);
+        for (DispatchPolicy policy : DispatchPolicy.values()) {
+            long[] latencies = run(policy, events, serviceNanos, intervalNanos);
+            Arrays.sort(latencies);
+            System.out.printf("%-13s p50 %8.2f ms  p99 %8.2f ms  max %8.2f ms%n", policy,
+                    percentile(latencies, 0.50), percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+        }
+    }
+
+    private static long[] run(DispatchPolicy policy, int events, long serviceNanos, long intervalNanos) throws Exception {
+        MessageBusImpl bus = MessageBusImpl.getInstance();
+        BusConfigurator configurator = BusConfigurator.of(bus);
+        configurator.setDispatchPolicy(Job.class, policy);
+        long[] latencies = new long[events];
+        CountDownLatch ready = new CountDownLatch(4);
+        Thread[] threads = new Thread[4];
+        for (int w = 0; w < threads.length; w++) {
+            boolean slow = w == threads.length - 1;
+            Worker worker = new Worker(policy + "-worker-" + w, slow ? 4 * serviceNanos : serviceNanos, latencies, ready);
+            configurator.setServiceCapacity(worker, slow ? 1 : 4);
+            threads[w] = new Thread(worker);
+            threads[w].start();
+        }
+        ready.await();
+
+        long next = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            long wait = next - System.nanoTime();
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+            bus.sendEvent(new Job(i, System.nanoTime()));
+            next += intervalNanos;
+        }
+        // Jobs already queued ahead of Stop are handled first, so joining waits for all of them
+        bus.sendBroadcast(new Stop());
+        for (Thread thread : threads)
+            thread.join();
+        return latencies;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
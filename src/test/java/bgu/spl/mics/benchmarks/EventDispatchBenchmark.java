@@ -0,0 +1,210 @@
+package bgu.spl.mics.benchmarks;
+
+import bgu.spl.mics.Event;
+import bgu.spl.mics.Future;
+import bgu.spl.mics.Message;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MicroService;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Contention benchmark for {@link MessageBusImpl#sendEvent(Event)}.
+ * <p>
+ * Compares the per-type lock-free round-robin dispatch against the previous implementation,
+ * which picked the receiver under one global monitor by polling and re-adding it to a
+ * {@link LinkedBlockingQueue}. Each sender thread fires events of its own type and one consumer
+ * per subscriber drains its mailbox.
+ * <p>
+ * Run with: {@code java -cp target/classes:target/test-classes:<gson> bgu.spl.mics.benchmarks.EventDispatchBenchmark [senders] [eventsPerSender]}
+ */
+public class EventDispatchBenchmark {
+    private static final int SUBSCRIBERS_PER_TYPE = 4;
+
+    private static class BenchEvent0 implements Event<Boolean> {}
+    private static class BenchEvent1 implements Event<Boolean> {}
+    private static class BenchEvent2 implements Event<Boolean> {}
+    private static class BenchEvent3 implements Event<Boolean> {}
+    private static class BenchEvent4 implements Event<Boolean> {}
+    private static class BenchEvent5 implements Event<Boolean> {}
+    private static class BenchEvent6 implements Event<Boolean> {}
+    private static class BenchEvent7 implements Event<Boolean> {}
+
+    /**
+     * A copy of the dispatch path that {@link MessageBusImpl#sendEvent(Event)} used before,
+     * kept here as the comparison baseline.
+     */
+    private static class LegacyDispatch {
+        private final Map<MicroService, BlockingQueue<Message>> queues = new ConcurrentHashMap<>();
+        private final Map<Class<? extends Message>, Queue<MicroService>> eventSubscribers = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Event<?>, Future<?>> eventFutureMap = new ConcurrentHashMap<>();
+
+        void register(MicroService m) {
+            queues.putIfAbsent(m, new LinkedBlockingQueue<>());
+        }
+
+        void subscribe(Class<? extends Message> type, MicroService m) {
+            eventSubscribers.computeIfAbsent(type, k -> new LinkedBlockingQueue<>()).add(m);
+        }
+
+        <T> Future<T> sendEvent(Event<T> e) {
+            MicroService ms;
+            synchronized (eventSubscribers) {
+                Queue<MicroService> queue = eventSubscribers.get(e.getClass());
+                if (queue == null || queue.isEmpty())
+                    return null;
+                ms = queue.poll();
+                queue.add(ms);
+            }
+            queues.get(ms).add(e);
+            Future<T> future = new Future<>();
+            eventFutureMap.put(e, future);
+            return future;
+        }
+
+        Message await(MicroService m) throws InterruptedException {
+            return queues.get(m).take();
+        }
+    }
+
+    private interface Bus {
+        void send(Event<Boolean> e);
+        Message await(MicroService m) throws InterruptedException;
+    }
+
+    private static class Idle extends MicroService {
+        Idle(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void initialize() {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int senders = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int perSender = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        System.out.printf("senders=%d eventsPerSender=%d subscribersPerType=%d%n", senders, perSender, SUBSCRIBERS_PER_TYPE);
+        for (int round = 0; round < 3; round++) {
+            double legacy = runLegacy(senders, perSender);
+            double current = runCurrent(senders, perSender);
+            System.out.printf("round %d: legacy %.2f Mevents/s, per-type CAS %.2f Mevents/s (x%.2f)%n",
+                    round, legacy, current, current / legacy);
+        }
+        System.exit(0);
+    }
+
+    private static double runLegacy(int senders, int perSender) throws Exception {
+        LegacyDispatch legacy = new LegacyDispatch();
+        List<MicroService> consumers = new ArrayList<>();
+        for (int t = 0; t < senders; t++) {
+            for (int i = 0; i < SUBSCRIBERS_PER_TYPE; i++) {
+                MicroService m = new Idle("legacy-" + t + "-" + i);
+                legacy.register(m);
+                legacy.subscribe(eventType(t), m);
+                consumers.add(m);
+            }
+        }
+        return run(senders, perSender, consumers, new Bus() {
+            public void send(Event<Boolean> e) { legacy.sendEvent(e); }
+            public Message await(MicroService m) throws InterruptedException { return legacy.await(m); }
+        });
+    }
+
+    private static double runCurrent(int senders, int perSender) throws Exception {
+        MessageBusImpl bus = MessageBusImpl.getInstance();
+        List<MicroService> consumers = new ArrayList<>();
+        for (int t = 0; t < senders; t++) {
+            for (int i = 0; i < SUBSCRIBERS_PER_TYPE; i++) {
+                MicroService m = new Idle("current-" + t + "-" + i);
+                bus.register(m);
+                bus.subscribeEvent(eventType(t), m);
+                consumers.add(m);
+            }
+        }
+        try {
+            return run(senders, perSender, consumers, new Bus() {
+                public void send(Event<Boolean> e) { bus.sendEvent(e); }
+                public Message await(MicroService m) throws InterruptedException { return bus.awaitMessage(m); }
+            });
+        } finally {
+            for (MicroService m : consumers)
+                bus.unregister(m);
+        }
+    }
+
+    private static double run(int senders, int perSender, List<MicroService> consumers, Bus bus) throws Exception {
+        long total = (long) senders * perSender;
+        CountDownLatch drained = new CountDownLatch((int) total);
+        List<Thread> consumerThreads = new ArrayList<>();
+        for (MicroService m : consumers) {
+            Thread t = new Thread(() -> {
+                try {
+                    while (true) {
+                        bus.await(m);
+                        drained.countDown();
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            });
+            t.setDaemon(true);
+            consumerThreads.add(t);
+            t.start();
+        }
+
+        CyclicBarrier start = new CyclicBarrier(senders + 1);
+        List<Thread> senderThreads = new ArrayList<>();
+        for (int s = 0; s < senders; s++) {
+            final int type = s;
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < perSender; i++)
+                        bus.send(newEvent(type));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            senderThreads.add(t);
+            t.start();
+        }
+        start.await();
+        long begin = System.nanoTime();
+        for (Thread t : senderThreads)
+            t.join();
+        drained.await();
+        long elapsed = System.nanoTime() - begin;
+        for (Thread t : consumerThreads)
+            t.interrupt();
+        return total / (elapsed / 1e9) / 1e6;
+    }
+
+    private static Class<? extends Event<Boolean>> eventType(int index) {
+        switch (index % 8) {
+            case 0: return BenchEvent0.class;
+            case 1: return BenchEvent1.class;
+            case 2: return BenchEvent2.class;
+            case 3: return BenchEvent3.class;
+            case 4: return BenchEvent4.class;
+            case 5: return BenchEvent5.class;
+            case 6: return BenchEvent6.class;
+            default: return BenchEvent7.class;
+        }
+    }
+
+    private static Event<Boolean> newEvent(int index) {
+        switch (index % 8) {
+            case 0: return new BenchEvent0();
+            case 1: return new BenchEvent1();
+            case 2: return new BenchEvent2();
+            case 3: return new BenchEvent3();
+            case 4: return new BenchEvent4();
+            case 5: return new BenchEvent5();
+            case 6: return new BenchEvent6();
+            default: return new BenchEvent7();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package bgu.spl.mics.benchmarks;
+
+import bgu.spl.mics.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Broadcast fan-out to many services under each {@link ExecutionMode}.
+ * <p>
+ * Starts {@code services} subscribers through a {@link ServiceExecutor}, sends {@code messages}
+ * broadcasts to all of them and reports the time until every service has handled them all,
+ * together with the peak number of live JVM threads.
+ * <p>
+ * Run with: {@code java -cp target/classes:target/test-classes:<gson> bgu.spl.mics.benchmarks.ExecutionModeBenchmark [services] [messages] [poolThreads]}
+ */
+public class ExecutionModeBenchmark {
+
+    private static class Ping implements Broadcast {}
+
+    private static class Stop implements Broadcast {}
+
+    /**
+     * Counts pings and terminates on {@link Stop}.
+     */
+    private static class Counter extends MicroService {
+        private long received;
+
+        Counter(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeBroadcast(Ping.class, ping -> received++);
+            subscribeBroadcast(Stop.class, stop -> terminate());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int services = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int messages = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        int poolThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        System.out.printf("services=%d messages=%d poolThreads=%d%n", services, messages, poolThreads);
+        for (int round = 0; round < 2; round++) {
+            for (ExecutionMode mode : ExecutionMode.values())
+                run(mode, services, messages, poolThreads);
+        }
+    }
+
+    private static void run(ExecutionMode mode, int services, int messages, int poolThreads) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        List<MicroService> counters = new ArrayList<>();
+        for (int i = 0; i < services; i++)
+            counters.add(new Counter(mode + "-" + i));
+        ServiceExecutor executor = new ServiceExecutor(mode, poolThreads);
+        executor.startAll(counters);
+        awaitSubscribed(services);
+
+        MessageBusImpl bus = MessageBusImpl.getInstance();
+        Ping ping = new Ping();
+        long begin = System.nanoTime();
+        for (int i = 0; i < messages; i++)
+            bus.sendBroadcast(ping);
+        bus.sendBroadcast(new Stop());
+        executor.awaitTermination();
+        long elapsed = System.nanoTime() - begin;
+        System.out.printf("%-8s %8.1f ms  %6.2f M deliveries/s  peak threads %d%n", mode, elapsed / 1e6,
+                (double) services * messages / (elapsed / 1e9) / 1e6, threads.getPeakThreadCount());
+    }
+
+    // Thread-per-service modes return from startAll() before the services subscribe; give them a moment.
+    private static void awaitSubscribed(int services) throws InterruptedException {
+        Thread.sleep(Math.max(200, services / 2));
+    }
+}
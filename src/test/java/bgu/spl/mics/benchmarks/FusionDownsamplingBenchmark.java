@@ -0,0 +1,87 @@
+package bgu.spl.mics.benchmarks;
+
+import bgu.spl.mics.application.objects.CloudDownsampler;
+import bgu.spl.mics.application.objects.FusionSlam;
+import bgu.spl.mics.application.objects.PointCloud;
+import bgu.spl.mics.application.objects.Pose;
+
+import java.util.Random;
+
+/**
+ * Cost of fusing dense LiDAR clouds, as recorded and after downsampling in the LiDAR worker.
+ * <p>
+ * Each cloud is a noisy scan of a 4 m wall with {@code points} points. Fusing it is what the
+ * fusion does with a tracked object that is already a landmark: transform the cloud to global
+ * coordinates, then merge it into the landmark's points. "down us" is the cost of downsampling
+ * the cloud in the worker, and "speedup" compares the fusion alone, raw against downsampled.
+ * <p>
+ * Run with: {@code java -cp target/classes:target/test-classes:<gson> bgu.spl.mics.benchmarks.FusionDownsamplingBenchmark [points]}
+ */
+public class FusionDownsamplingBenchmark {
+    private static final int CLOUDS = 64;
+    private static final int ROUNDS = 200;
+    private static final String[] IDS = new String[CLOUDS];
+
+    private static double sink;
+
+    public static void main(String[] args) {
+        int points = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        PointCloud[] clouds = new PointCloud[CLOUDS];
+        for (int c = 0; c < CLOUDS; c++)
+            IDS[c] = "Wall_" + c;
+        Random random = new Random(42);
+        for (int c = 0; c < CLOUDS; c++) {
+            clouds[c] = new PointCloud(points);
+            for (int p = 0; p < points; p++) // Along the wall, with 2 cm of noise across it
+                clouds[c].add(4.0 * p / points, 1 + random.nextGaussian() * 0.02, random.nextDouble() * 2);
+        }
+        Pose pose = new Pose(1.5f, -2f, 30f, 1);
+        PointCloud landmark = FusionSlam.getInstance().transformToGlobal(clouds[0], pose);
+
+        double raw = fuse(clouds, landmark, pose);
+        System.out.printf("%-24s %9s %9s %10s %9s %8s%n", "downsampling", "points", "kept %", "down us", "fuse us", "speedup");
+        System.out.printf("%-24s %9d %9.1f %10s %9.1f %8s%n", "none", points, 100.0, "-", raw, "1.0x");
+        CloudDownsampler[] downsamplers = {
+                new CloudDownsampler(0.05, 1, 0),
+                new CloudDownsampler(0.1, 1, 0),
+                new CloudDownsampler(0.25, 1, 0),
+                new CloudDownsampler(0, 0.25, 0),
+                new CloudDownsampler(0.05, 0.5, 0),
+        };
+        for (CloudDownsampler downsampler : downsamplers) {
+            PointCloud[] reduced = new PointCloud[CLOUDS];
+            double down = Double.MAX_VALUE;
+            for (int pass = 0; pass < 3; pass++) { // Best of three passes, as for the fusion
+                long begin = System.nanoTime();
+                for (int round = 0; round < ROUNDS; round++) {
+                    for (int c = 0; c < CLOUDS; c++)
+                        reduced[c] = downsampler.apply(clouds[c], IDS[c], round);
+                }
+                down = Math.min(down, (System.nanoTime() - begin) / 1e3 / ROUNDS / CLOUDS);
+            }
+            PointCloud reducedLandmark = FusionSlam.getInstance().transformToGlobal(reduced[0], pose);
+            double fused = fuse(reduced, reducedLandmark, pose);
+            System.out.printf("%-24s %9d %9.1f %10.1f %9.1f %7.1fx%n",
+                    "leaf " + downsampler.getLeafSize() + ", keep " + downsampler.getKeepRatio(), reduced[0].size(),
+                    100 * (1 - downsampler.getReduction()), down, fused, raw / fused);
+        }
+        System.out.println(sink == 42 ? "" : " ");
+    }
+
+    // Microseconds to transform a cloud and merge it into the landmark, best of three passes
+    private static double fuse(PointCloud[] clouds, PointCloud landmark, Pose pose) {
+        FusionSlam fusion = FusionSlam.getInstance();
+        double best = Double.MAX_VALUE;
+        for (int pass = 0; pass < 3; pass++) {
+            long begin = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++) {
+                for (PointCloud cloud : clouds) {
+                    PointCloud merged = fusion.mergeCoordinates(landmark, fusion.transformToGlobal(cloud, pose));
+                    sink += merged.getX(merged.size() - 1);
+                }
+            }
+            best = Math.min(best, (System.nanoTime() - begin) / 1e3 / ROUNDS / clouds.length);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,118 @@
+package bgu.spl.mics.benchmarks;
+
+import bgu.spl.mics.application.objects.LiDarDataBase;
+import bgu.spl.mics.application.objects.StampedCloudPoints;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read throughput of the LiDAR database with 1 to 16 concurrent LiDAR workers.
+ * <p>
+ * Every worker repeatedly looks up the cloud points of a frame's objects at a random time.
+ * "locked" goes through a synchronized accessor, as every database accessor used to, so the
+ * workers take turns on one monitor. "lock-free" calls
+ * {@link LiDarDataBase#getCloudPoints(String, int)} on the immutable database directly. Scaling
+ * needs as many cores as workers; on fewer cores the counts flatten out once they are all busy.
+ * <p>
+ * Run with: {@code java -cp target/classes:target/test-classes:<gson> bgu.spl.mics.benchmarks.LiDarScalingBenchmark [maxWorkers] [millis]}
+ */
+public class LiDarScalingBenchmark {
+    private static final int TIMES = 10_000;
+    private static final int OBJECTS = 8;
+
+    /**
+     * The previous access path: one monitor around every lookup.
+     */
+    private static class LockedAccess {
+        private final LiDarDataBase database;
+
+        LockedAccess(LiDarDataBase database) {
+            this.database = database;
+        }
+
+        synchronized StampedCloudPoints getCloudPoints(String id, int time) {
+            return database.getCloudPoints(id, time);
+        }
+    }
+
+    private interface Lookup {
+        StampedCloudPoints get(String id, int time);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maxWorkers = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 1_000;
+        File file = File.createTempFile("lidar_data", ".json");
+        file.deleteOnExit();
+        write(file);
+        LiDarDataBase database = LiDarDataBase.getInstance(file.getPath());
+        LockedAccess locked = new LockedAccess(database);
+        System.out.printf("cores=%d entries=%d%n", Runtime.getRuntime().availableProcessors(), TIMES * OBJECTS);
+        System.out.printf("%8s %18s %18s%n", "workers", "locked Mlookups/s", "lock-free Mlookups/s");
+        run(1, millis / 2, locked::getCloudPoints); // Warm-up
+        run(1, millis / 2, database::getCloudPoints);
+        for (int workers = 1; workers <= maxWorkers; workers *= 2) {
+            double withLock = run(workers, millis, locked::getCloudPoints);
+            double lockFree = run(workers, millis, database::getCloudPoints);
+            System.out.printf("%8d %18.2f %18.2f%n", workers, withLock, lockFree);
+        }
+    }
+
+    private static double run(int workers, long millis, Lookup lookup) throws InterruptedException {
+        String[] ids = new String[OBJECTS];
+        for (int o = 0; o < OBJECTS; o++)
+            ids[o] = "Object_" + o;
+        AtomicLong lookups = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long done = 0;
+                int found = 0;
+                while (System.nanoTime() < deadline[0]) {
+                    int time = 1 + ThreadLocalRandom.current().nextInt(TIMES);
+                    for (String id : ids) {
+                        if (lookup.get(id, time) != null)
+                            found++;
+                    }
+                    done += OBJECTS;
+                }
+                lookups.addAndGet(done + (found < 0 ? 1 : 0));
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        deadline[0] = System.nanoTime() + millis * 1_000_000;
+        start.countDown(); // Publishes the deadline to the workers
+        for (Thread thread : threads)
+            thread.join();
+        return lookups.get() / (millis / 1e3) / 1e6;
+    }
+
+    private static void write(File file) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("[");
+            for (int t = 1; t <= TIMES; t++) {
+                for (int o = 0; o < OBJECTS; o++) {
+                    writer.write((t > 1 || o > 0 ? "," : "") + "{\"id\":\"Object_" + o + "\",\"time\":" + t
+                            + ",\"cloudPoints\":[[1.0,2.0,0.1],[1.5,2.5,0.1]]}");
+                }
+            }
+            writer.write("]");
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package bgu.spl.mics.benchmarks;
+
+import bgu.spl.mics.application.objects.*;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Startup cost of the LiDAR database on recordings of growing length, and the cost of tracking
+ * a frame afterwards.
+ * <p>
+ * "json" is what the database does with the JSON file: parse it whole with Gson and index it.
+ * "mapped" opens the binary file written by {@link MappedCloudPoints#convert}; the conversion is
+ * a one-off and is timed separately. Both are timed warm, with the files in the page cache, as
+ * on a second run over the same recording. Heap is the used heap retained after a GC.
+ * <p>
+ * Run with: {@code java -cp target/classes:target/test-classes:<gson> bgu.spl.mics.benchmarks.LiDarStartupBenchmark [maxEntries]}
+ */
+public class LiDarStartupBenchmark {
+    private static final int OBJECTS = 8;
+    private static final int POINTS = 25;
+    private static final int FRAMES = 20_000;
+
+    private static int sink;
+
+    private interface Open {
+        CloudPointLookup run() throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maxEntries = args.length > 0 ? Integer.parseInt(args[0]) : 400_000;
+        LiDarWorkerTracker tracker = new LiDarWorkerTracker(1, 0, STATUS.UP, new ArrayList<>());
+        System.out.printf("%9s %8s %8s | %9s %8s %8s | %10s %9s | %12s %12s%n", "entries", "json MB", "bin MB",
+                "json ms", "heap MB", "us/frame", "convert ms", "mapped ms", "heap MB", "us/frame");
+        for (int entries = 25_000; entries <= maxEntries; entries *= 4) {
+            File json = File.createTempFile("lidar_data", ".json");
+            File binary = File.createTempFile("lidar_data", ".bin");
+            json.deleteOnExit();
+            binary.deleteOnExit();
+            write(json, entries);
+            long begin = System.nanoTime();
+            MappedCloudPoints.convert(json.getPath(), binary.getPath());
+            long convert = (System.nanoTime() - begin) / 1_000_000;
+
+            double[] loaded = null;
+            double[] mapped = null;
+            for (int round = 0; round < 3; round++) { // Keeps the fastest round of each
+                loaded = best(loaded, measure(tracker, entries, () -> {
+                    try (FileReader reader = new FileReader(json)) {
+                        List<StampedCloudPoints> cloudPoints = new Gson().fromJson(reader,
+                                new TypeToken<List<StampedCloudPoints>>() {}.getType());
+                        return new CloudPointIndex(cloudPoints);
+                    }
+                }));
+                mapped = best(mapped, measure(tracker, entries, () -> MappedCloudPoints.open(binary.getPath())));
+            }
+            System.out.printf("%9d %8.1f %8.1f | %9.0f %8.0f %8.2f | %10d %9.2f | %12.1f %12.2f%n", entries,
+                    json.length() / 1e6, binary.length() / 1e6, loaded[0], loaded[1], loaded[2], convert,
+                    mapped[0], mapped[1], mapped[2]);
+            json.delete();
+            binary.delete();
+        }
+        System.out.println(sink == 42 ? "" : " ");
+    }
+
+    // {open ms, retained heap MB, tracking us/frame}
+    private static double[] measure(LiDarWorkerTracker tracker, int entries, Open open) throws IOException {
+        long before = usedAfterGc();
+        long begin = System.nanoTime();
+        CloudPointLookup lookup = open.run();
+        double opened = (System.nanoTime() - begin) / 1e6;
+        double heap = (usedAfterGc() - before) / 1e6;
+        int times = entries / OBJECTS;
+        begin = System.nanoTime();
+        for (int f = 0; f < FRAMES; f++)
+            sink += tracker.createTrackedObjects(frame(1 + ThreadLocalRandom.current().nextInt(times)), lookup).size();
+        return new double[]{opened, heap, (System.nanoTime() - begin) / 1e3 / FRAMES};
+    }
+
+    private static double[] best(double[] best, double[] next) {
+        if (best == null)
+            return next;
+        for (int i = 0; i < best.length; i++)
+            best[i] = Math.min(best[i], next[i]);
+        return best;
+    }
+
+    private static long usedAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static StampedDetectedObjects frame(int time) {
+        List<DetectedObject> objects = new ArrayList<>();
+        for (int o = 0; o < OBJECTS; o++)
+            objects.add(new DetectedObject("Object_" + o, "An object"));
+        return new StampedDetectedObjects(time, objects);
+    }
+
+    private static void write(File file, int entries) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("[");
+            for (int i = 0; i < entries; i++) {
+                writer.write((i > 0 ? "," : "") + "{\"id\":\"Object_" + (i % OBJECTS) + "\",\"time\":" + (1 + i / OBJECTS)
+                        + ",\"cloudPoints\":[");
+                for (int p = 0; p < POINTS; p++)
+                    writer.write((p > 0 ? "," : "") + "[" + (i * 0.001 + p) + "," + (p * 0.37 - i * 0.002) + ",0.104]");
+                writer.write("]}");
+            }
+            writer.write("]");
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package bgu.spl.mics.benchmarks;
+
+import bgu.spl.mics.application.objects.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Cost of tracking one camera frame against LiDAR recordings of growing length.
+ * <p>
+ * "scan" replays the previous createTrackedObjects: for every detected object, a copy of the
+ * whole database and a scan of it for the frame's time and the object's id. "indexed" calls
+ * {@link LiDarWorkerTracker#createTrackedObjects(StampedDetectedObjects, CloudPointIndex)}, which
+ * looks each object up in the (time, id) index. Every recorded time holds {@link #OBJECTS} ids,
+ * and every frame detects all of them.
+ * <p>
+ * Run with: {@code java -cp target/classes:target/test-classes:<gson> bgu.spl.mics.benchmarks.LiDarTrackingBenchmark [maxEntries]}
+ */
+public class LiDarTrackingBenchmark {
+    private static final int OBJECTS = 8;
+    private static final long SCAN_BUDGET = 100_000_000L; // Entries visited per scan measurement
+
+    private static int sink;
+
+    public static void main(String[] args) {
+        int maxEntries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        LiDarWorkerTracker tracker = new LiDarWorkerTracker(1, 0, STATUS.UP, new ArrayList<>());
+        System.out.printf("%10s %16s %16s%n", "entries", "scan us/frame", "indexed us/frame");
+        for (int round = 0; round < 2; round++) { // The first round warms up both paths
+            for (int entries = 1_000; entries <= maxEntries; entries *= 10) {
+                List<StampedCloudPoints> recording = recording(entries);
+                CloudPointIndex index = new CloudPointIndex(recording);
+                int times = entries / OBJECTS;
+                double scan = scan(recording, times, (int) Math.max(20, SCAN_BUDGET / entries / OBJECTS));
+                double indexed = indexed(tracker, index, times, 200_000);
+                if (round > 0)
+                    System.out.printf("%10d %16.2f %16.2f%n", entries, scan, indexed);
+            }
+        }
+        System.out.println(sink == 42 ? "" : " ");
+    }
+
+    private static List<StampedCloudPoints> recording(int entries) {
+        List<StampedCloudPoints> recording = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            PointCloud cloud = new PointCloud(2);
+            cloud.add(1.0, 2.0, 0.1);
+            cloud.add(1.5, 2.5, 0.1);
+            recording.add(new StampedCloudPoints("Object_" + (i % OBJECTS), 1 + i / OBJECTS, cloud));
+        }
+        return recording;
+    }
+
+    private static StampedDetectedObjects frame(int time) {
+        List<DetectedObject> objects = new ArrayList<>();
+        for (int o = OBJECTS - 1; o >= 0; o--)
+            objects.add(new DetectedObject("Object_" + o, "An object"));
+        return new StampedDetectedObjects(time, objects);
+    }
+
+    // The previous createTrackedObjects, with getCloudPoints() copying the database per object.
+    private static double scan(List<StampedCloudPoints> recording, int times, int frames) {
+        long begin = System.nanoTime();
+        for (int f = 0; f < frames; f++) {
+            StampedDetectedObjects stampedDetected = frame(1 + ThreadLocalRandom.current().nextInt(times));
+            for (DetectedObject o : stampedDetected.getDetectedObjects()) {
+                for (StampedCloudPoints cp : new ArrayList<>(recording)) {
+                    if (stampedDetected.getTime() == cp.getTime() && o.getId().equals(cp.getId())) {
+                        sink += cp.getCloudPoints().size();
+                        break;
+                    }
+                }
+            }
+        }
+        return (System.nanoTime() - begin) / 1e3 / frames;
+    }
+
+    private static double indexed(LiDarWorkerTracker tracker, CloudPointIndex index, int times, int frames) {
+        long begin = System.nanoTime();
+        for (int f = 0; f < frames; f++)
+            sink += tracker.createTrackedObjects(frame(1 + ThreadLocalRandom.current().nextInt(times)), index).size();
+        return (System.nanoTime() - begin) / 1e3 / frames;
+    }
+}
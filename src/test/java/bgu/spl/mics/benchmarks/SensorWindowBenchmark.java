@@ -0,0 +1,120 @@
+package bgu.spl.mics.benchmarks;
+
+import bgu.spl.mics.application.objects.*;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Memory held by the LiDAR data while a run walks through it, loaded whole or streamed through a
+ * {@link SensorWindow}, on recordings of growing length.
+ * <p>
+ * "resident" parses the JSON file whole and indexes it, as the database does without a window.
+ * "windowed" streams it through a {@link WindowedRecords}, moved by the {@link SensorPrefetcher}
+ * one tick at a time as the clock does. Both walk every tick and track a frame at each. Heap is
+ * the used heap after a GC: at startup, and the most seen at any of 20 points along the walk.
+ * <p>
+ * Run with: {@code java -cp target/classes:target/test-classes:<gson> bgu.spl.mics.benchmarks.SensorWindowBenchmark [maxEntries] [behind] [readAhead]}
+ */
+public class SensorWindowBenchmark {
+    private static final int OBJECTS = 8;
+    private static final int POINTS = 25;
+    private static final int SAMPLES = 20;
+
+    private static int sink;
+
+    private interface Open {
+        CloudPointLookup run() throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maxEntries = args.length > 0 ? Integer.parseInt(args[0]) : 400_000;
+        SensorWindow window = new SensorWindow(args.length > 1 ? Integer.parseInt(args[1]) : 8,
+                args.length > 2 ? Integer.parseInt(args[2]) : 20);
+        LiDarWorkerTracker tracker = new LiDarWorkerTracker(1, 0, STATUS.UP, new ArrayList<>());
+        System.out.printf("%9s %8s | %9s %10s %10s %8s | %9s %10s %10s %8s%n", "entries", "json MB",
+                "open ms", "start MB", "peak MB", "walk ms", "open ms", "start MB", "peak MB", "walk ms");
+        for (int entries = 25_000; entries <= maxEntries; entries *= 4) {
+            File json = File.createTempFile("lidar_data", ".json");
+            json.deleteOnExit();
+            write(json, entries);
+            double[] resident = measure(tracker, entries, () -> {
+                try (FileReader reader = new FileReader(json)) {
+                    List<StampedCloudPoints> cloudPoints = new Gson().fromJson(reader,
+                            new TypeToken<List<StampedCloudPoints>>() {}.getType());
+                    return new CloudPointIndex(cloudPoints);
+                }
+            });
+            WindowedRecords<?>[] opened = new WindowedRecords<?>[1];
+            double[] windowed = measure(tracker, entries, () -> {
+                WindowedRecords<StampedCloudPoints> records = new WindowedRecords<>(
+                        JsonRecordReader.source(json.getPath(), StampedCloudPoints.class),
+                        StampedCloudPoints::getTime, window);
+                opened[0] = records;
+                return new WindowedCloudPoints(records);
+            });
+            opened[0].close();
+            System.out.printf("%9d %8.1f | %9.0f %10.1f %10.1f %8.0f | %9.0f %10.1f %10.1f %8.0f%n", entries,
+                    json.length() / 1e6, resident[0], resident[1], resident[2], resident[3],
+                    windowed[0], windowed[1], windowed[2], windowed[3]);
+            json.delete();
+        }
+        System.out.println(sink == 42 ? "" : " ");
+    }
+
+    // {open ms, startup heap MB, peak heap MB, walk ms without the samples}
+    private static double[] measure(LiDarWorkerTracker tracker, int entries, Open open) throws IOException {
+        long before = usedAfterGc();
+        long begin = System.nanoTime();
+        CloudPointLookup lookup = open.run();
+        double opened = (System.nanoTime() - begin) / 1e6;
+        double start = (usedAfterGc() - before) / 1e6;
+        double peak = start;
+        long walk = 0;
+        int times = entries / OBJECTS;
+        for (int tick = 1; tick <= times; tick++) {
+            begin = System.nanoTime();
+            SensorPrefetcher.getInstance().advance(tick);
+            sink += tracker.createTrackedObjects(frame(tick), lookup).size();
+            walk += System.nanoTime() - begin;
+            if (tick % (times / SAMPLES) == 0)
+                peak = Math.max(peak, (usedAfterGc() - before) / 1e6);
+        }
+        return new double[]{opened, start, peak, walk / 1e6};
+    }
+
+    private static long usedAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static StampedDetectedObjects frame(int time) {
+        List<DetectedObject> objects = new ArrayList<>();
+        for (int o = 0; o < OBJECTS; o++)
+            objects.add(new DetectedObject("Object_" + o, "An object"));
+        return new StampedDetectedObjects(time, objects);
+    }
+
+    private static void write(File file, int entries) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("[");
+            for (int i = 0; i < entries; i++) {
+                writer.write((i > 0 ? "," : "") + "{\"id\":\"Object_" + (i % OBJECTS) + "\",\"time\":" + (1 + i / OBJECTS)
+                        + ",\"cloudPoints\":[");
+                for (int p = 0; p < POINTS; p++)
+                    writer.write((p > 0 ? "," : "") + "[" + (i * 0.001 + p) + "," + (p * 0.37 - i * 0.002) + ",0.104]");
+                writer.write("]}");
+            }
+            writer.write("]");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package bgu.spl.mics.benchmarks;
+
+import bgu.spl.mics.*;
+import bgu.spl.mics.application.messages.TickBroadcast;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Wakeups of many low-frequency sensors on a tick stream, with and without a tick filter.
+ * <p>
+ * Every sensor only has work on one tick in {@code period}, at its own phase. "unfiltered"
+ * subscribes to every tick and checks the tick in its callback, as the services used to.
+ * "filtered" subscribes with {@link TickBroadcast#every(int, int)}, so the bus only queues the
+ * ticks it has work for. Ticks are paced like a virtual clock: the next one is sent once the
+ * bus is quiescent, so wakeups are not merged by batching.
+ * <p>
+ * Run with: {@code java -cp target/classes:target/test-classes:<gson> bgu.spl.mics.benchmarks.TickFilterBenchmark [sensors] [ticks] [period]}
+ */
+public class TickFilterBenchmark {
+
+    private static class Stop implements Broadcast {}
+
+    /**
+     * Counts the ticks it is handed and the ones it has work for; terminates on {@link Stop}.
+     */
+    private static class Sensor extends MicroService {
+        private final int period;
+        private final int phase;
+        private final boolean filtered;
+        private final CountDownLatch ready;
+        private long wakeups;
+        private long work;
+
+        Sensor(String name, int period, int phase, boolean filtered, CountDownLatch ready) {
+            super(name);
+            this.period = period;
+            this.phase = phase;
+            this.filtered = filtered;
+            this.ready = ready;
+        }
+
+        @Override
+        protected void initialize() {
+            if (filtered) {
+                subscribeBroadcast(TickBroadcast.class, TickBroadcast.every(period, phase), tick -> {
+                    wakeups++;
+                    work++;
+                });
+            } else {
+                subscribeBroadcast(TickBroadcast.class, tick -> {
+                    wakeups++;
+                    if (tick.getCurrentTick() >= phase && (tick.getCurrentTick() - phase) % period == 0)
+                        work++;
+                });
+            }
+            subscribeBroadcast(Stop.class, stop -> terminate());
+            ready.countDown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sensors = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int period = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        System.out.printf("sensors=%d ticks=%d period=%d%n", sensors, ticks, period);
+        for (int round = 0; round < 3; round++) {
+            run("unfiltered", sensors, ticks, period, false);
+            run("filtered", sensors, ticks, period, true);
+        }
+    }
+
+    private static void run(String label, int sensors, int ticks, int period, boolean filtered) throws Exception {
+        MessageBusImpl bus = MessageBusImpl.getInstance();
+        BusConfigurator.of(bus).enableQuiescenceTracking(); // The bus is idle between runs
+        CountDownLatch ready = new CountDownLatch(sensors);
+        List<Sensor> services = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < sensors; i++) {
+            Sensor sensor = new Sensor(label + "-" + i, period, 1 + i % period, filtered, ready);
+            services.add(sensor);
+            threads.add(new Thread(sensor));
+        }
+        threads.forEach(Thread::start);
+        ready.await();
+
+        long begin = System.nanoTime();
+        for (int t = 1; t <= ticks; t++) {
+            bus.sendBroadcast(new TickBroadcast(t));
+            bus.whenQuiescent().get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        bus.sendBroadcast(new Stop());
+        for (Thread thread : threads)
+            thread.join();
+
+        long wakeups = 0;
+        long work = 0;
+        for (Sensor sensor : services) {
+            wakeups += sensor.wakeups;
+            work += sensor.work;
+        }
+        System.out.printf("%-10s wakeups=%d useful=%d time=%.1f ms (%.1f us/tick)%n",
+                label, wakeups, work, elapsed / 1e6, elapsed / 1e3 / ticks);
+    }
+}